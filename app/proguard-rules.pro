@@ -1,4 +1,5 @@
 -dontobfuscate
 
 -keep class org.transdroid.core.gui.log.ErrorLogEntry { *; }
+-keep class org.transdroid.core.app.settings.ServerLastStat { *; }
 -dontwarn javax.persistence.**
@@ -48,6 +48,18 @@ public class Call {
 	 * @see XMLRPCClient
 	 */
 	public String getXML() throws XMLRPCException {
+		return createXML().toString();
+	}
+
+	/**
+	 * Build the xml tree of the method call, which may be written directly to
+	 * the request rather than converted to a String first.
+	 *
+	 * @return The xml tree representing this call.
+	 * @throws XMLRPCException Will be thrown whenever the xml representation cannot
+	 * 		be build without errors.
+	 */
+	SimpleXMLCreator createXML() throws XMLRPCException {
 
 		SimpleXMLCreator creator = new SimpleXMLCreator();
 
@@ -67,7 +79,7 @@ public class Call {
 			}
 		}
 
-		return creator.toString();
+		return creator;
 	}
 
 	/**
@@ -0,0 +1,91 @@
+package de.timroes.axmlrpc;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.protocol.HTTP;
+
+import de.timroes.axmlrpc.xmlcreator.SimpleXMLCreator;
+
+/**
+ * The request body of a call, which writes the xml of the call directly to the
+ * connection rather than building it as a String first. This way large
+ * parameters, such as files, are streamed to the server.
+ * The length of the body is determined up front by writing the xml once
+ * without keeping it, as not every server accepts a chunked request.
+ */
+class CallEntity extends AbstractHttpEntity {
+
+	private final SimpleXMLCreator xml;
+	private long length = -1;
+
+	/**
+	 * Create a new request body for the xml of a call.
+	 *
+	 * @param xml The xml tree of the call.
+	 */
+	CallEntity(SimpleXMLCreator xml) {
+		this.xml = xml;
+	}
+
+	public boolean isRepeatable() {
+		return true;
+	}
+
+	public boolean isStreaming() {
+		return false;
+	}
+
+	public synchronized long getContentLength() {
+		if(length < 0) {
+			CountingOutputStream counter = new CountingOutputStream();
+			try {
+				writeTo(counter);
+				length = counter.count;
+			} catch(IOException ex) {
+				// Let the actual writing report the problem
+				return -1;
+			}
+		}
+		return length;
+	}
+
+	public InputStream getContent() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeTo(out);
+		return new ByteArrayInputStream(out.toByteArray());
+	}
+
+	public void writeTo(OutputStream out) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out, HTTP.UTF_8));
+		xml.write(writer);
+		writer.flush();
+	}
+
+	/**
+	 * An output stream that only counts the bytes written to it.
+	 */
+	private static class CountingOutputStream extends OutputStream {
+
+		private long count = 0;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+
+	}
+
+}
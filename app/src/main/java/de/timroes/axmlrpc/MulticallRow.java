@@ -0,0 +1,123 @@
+package de.timroes.axmlrpc;
+
+/**
+ * A single row of a multicall response, as handed to a {@link MulticallRowHandler}.
+ * Integer and boolean values are kept as primitive longs and string values as
+ * strings, so no boxing or casting is needed to read the columns.
+ * Only one instance is used for all rows of a response.
+ */
+public class MulticallRow {
+
+	private long[] longs = new long[16];
+	private String[] strings = new String[16];
+	private boolean[] isString = new boolean[16];
+	private int columnCount;
+	private int rowIndex;
+
+	void reset(int rowIndex) {
+		this.rowIndex = rowIndex;
+		this.columnCount = 0;
+	}
+
+	void addLong(long value) {
+		ensureCapacity();
+		longs[columnCount] = value;
+		strings[columnCount] = null;
+		isString[columnCount] = false;
+		columnCount++;
+	}
+
+	void addString(String value) {
+		ensureCapacity();
+		longs[columnCount] = 0;
+		strings[columnCount] = value;
+		isString[columnCount] = true;
+		columnCount++;
+	}
+
+	private void ensureCapacity() {
+		if(columnCount == longs.length) {
+			int size = longs.length * 2;
+			long[] newLongs = new long[size];
+			String[] newStrings = new String[size];
+			boolean[] newIsString = new boolean[size];
+			System.arraycopy(longs, 0, newLongs, 0, columnCount);
+			System.arraycopy(strings, 0, newStrings, 0, columnCount);
+			System.arraycopy(isString, 0, newIsString, 0, columnCount);
+			longs = newLongs;
+			strings = newStrings;
+			isString = newIsString;
+		}
+	}
+
+	private void checkColumn(int column) {
+		if(column < 0 || column >= columnCount) {
+			throw new IndexOutOfBoundsException("Column " + column + " requested, but row has "
+					+ columnCount + " columns.");
+		}
+	}
+
+	/**
+	 * @return The zero-based index of this row in the response.
+	 */
+	public int getRowIndex() {
+		return rowIndex;
+	}
+
+	/**
+	 * @return The number of columns (values) in this row.
+	 */
+	public int getColumnCount() {
+		return columnCount;
+	}
+
+	/**
+	 * @param column The zero-based column index.
+	 * @return Whether the value was sent as string (rather than as integer or boolean).
+	 */
+	public boolean isString(int column) {
+		checkColumn(column);
+		return isString[column];
+	}
+
+	/**
+	 * Returns the value of a column as long. A string value is parsed (ignoring
+	 * surrounding whitespace).
+	 *
+	 * @param column The zero-based column index.
+	 * @return The integer value; booleans are returned as 1 or 0.
+	 * @throws NumberFormatException Thrown if a string value is not a number.
+	 */
+	public long getLong(int column) {
+		checkColumn(column);
+		if(isString[column]) {
+			return Long.parseLong(strings[column].trim());
+		}
+		return longs[column];
+	}
+
+	/**
+	 * Returns the value of a column as int, truncating larger values.
+	 *
+	 * @see #getLong(int)
+	 */
+	public int getInt(int column) {
+		return (int) getLong(column);
+	}
+
+	/**
+	 * Returns the value of a column as string. Integer values are formatted in
+	 * decimal notation.
+	 *
+	 * @param column The zero-based column index.
+	 * @return The string value.
+	 */
+	public String getString(int column) {
+		checkColumn(column);
+		if(isString[column]) {
+			return strings[column];
+		}
+		return Long.toString(longs[column]);
+	}
+
+}
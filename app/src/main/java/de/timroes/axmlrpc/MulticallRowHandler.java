@@ -0,0 +1,24 @@
+package de.timroes.axmlrpc;
+
+/**
+ * The MulticallRowHandler interface must be implemented by a listener for a
+ * multicall to a server method, i.e. a call that returns an array of rows
+ * (arrays) with simple values, such as rTorrent's d.multicall2.
+ * The rows are handed to the listener one by one while the response is still
+ * being parsed, so the full response never needs to be held in memory.
+ *
+ * @param <E> The type of exception the handler may throw.
+ */
+public interface MulticallRowHandler<E extends Exception> {
+
+	/**
+	 * This callback is called for every row in the response.
+	 * Any exception thrown will abort the parsing and is rethrown unchanged
+	 * by the call.
+	 *
+	 * @param row The row; this object is reused for the next row, so its values
+	 * 		should not be retained after returning.
+	 */
+	public void onRow(MulticallRow row) throws E;
+
+}
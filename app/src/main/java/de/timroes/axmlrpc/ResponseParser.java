@@ -55,6 +55,25 @@ public class ResponseParser {
 	 * @throws XMLRPCServerException Will be thrown, if the server returns an error.
 	 */
 	public Object parse(InputStream response, HttpEntity entity) throws XMLRPCException {
+		return parse(response, entity, null);
+	}
+
+	/**
+	 * The given InputStream must contain the xml response from an xmlrpc server.
+	 * If a row handler is given, the result must be an array of arrays with simple
+	 * (integer, boolean or string) values, which are streamed to the row handler
+	 * row by row instead of being deserialized to an object.
+	 *
+	 * @param response The InputStream of the server response.
+	 * @param rowHandler The handler to receive the rows of a multicall result, or null.
+	 * @return The returned object, or the number of rows if a row handler was given.
+	 * @throws XMLRPCException Will be thrown whenever something fails.
+	 * @throws XMLRPCServerException Will be thrown, if the server returns an error.
+	 * @throws E Will be thrown (unchanged) if the row handler threw it.
+	 */
+	@SuppressWarnings("unchecked")
+	public <E extends Exception> Object parse(InputStream response, HttpEntity entity, MulticallRowHandler<E> rowHandler)
+			throws XMLRPCException, E {
 		try {
 			XmlPullParser pullParser = XmlPullParserFactory.newInstance().newPullParser();
 			pullParser.setInput(response, "UTF-8");
@@ -71,7 +90,8 @@ public class ResponseParser {
 				pullParser.nextTag(); // TAG_VALUE (<value>)
 				// no parser.require() here since its called in XMLRPCSerializer.deserialize() below
 				// deserialize result
-				Object obj = SerializerHandler.deserialize(pullParser);
+				Object obj = rowHandler == null ? SerializerHandler.deserialize(pullParser)
+						: parseMulticallRows(pullParser, rowHandler);
 				consumeHttpEntity(response, entity);
 				return obj;
 			} else if (tag.equals(XMLRPCClient.FAULT)) {
@@ -94,9 +114,154 @@ public class ResponseParser {
 			throw new XMLRPCException("Error parsing response.", ex);
 		} catch(XMLRPCServerException e) {
 			throw e;
+		} catch (RowHandlerException ex) {
+			consumeHttpEntity(response, entity);
+			throw (E) ex.getCause();
 		} catch (Exception ex) {
 			consumeHttpEntity(response, entity);
 			throw new XMLRPCException("Error getting result from server.", ex);
 		}
 	}
+
+	/**
+	 * Parses an array of arrays from the parser, which must be positioned on the
+	 * opening value tag, and hands each inner array as a row to the row handler.
+	 *
+	 * @return The number of rows parsed.
+	 */
+	private Integer parseMulticallRows(XmlPullParser parser, MulticallRowHandler<?> rowHandler) throws Exception {
+		parser.require(XmlPullParser.START_TAG, null, SerializerHandler.TAG_VALUE);
+		beginArray(parser);
+		MulticallRow row = new MulticallRow();
+		int[] textHolder = new int[2];
+		int rows = 0;
+		while (parser.getEventType() == XmlPullParser.START_TAG) {
+			parser.require(XmlPullParser.START_TAG, null, SerializerHandler.TAG_VALUE);
+			beginArray(parser);
+			row.reset(rows);
+			while (parser.getEventType() == XmlPullParser.START_TAG) {
+				parseMulticallValue(parser, row, textHolder);
+			}
+			endArray(parser);
+			try {
+				rowHandler.onRow(row);
+			} catch (Exception e) {
+				throw new RowHandlerException(e);
+			}
+			rows++;
+		}
+		endArray(parser);
+		return rows;
+	}
+
+	/**
+	 * Moves from the opening value tag of an array to the first value inside of it
+	 * (or to the closing data tag if the array is empty).
+	 */
+	private void beginArray(XmlPullParser parser) throws XmlPullParserException, IOException {
+		parser.nextTag();
+		parser.require(XmlPullParser.START_TAG, null, SerializerHandler.TYPE_ARRAY);
+		parser.nextTag();
+		parser.require(XmlPullParser.START_TAG, null, SerializerHandler.TAG_DATA);
+		parser.nextTag();
+	}
+
+	/**
+	 * Moves from the closing data tag of an array past the closing value tag around it.
+	 */
+	private void endArray(XmlPullParser parser) throws XmlPullParserException, IOException {
+		parser.require(XmlPullParser.END_TAG, null, SerializerHandler.TAG_DATA);
+		parser.nextTag();
+		parser.require(XmlPullParser.END_TAG, null, SerializerHandler.TYPE_ARRAY);
+		parser.nextTag();
+		parser.require(XmlPullParser.END_TAG, null, SerializerHandler.TAG_VALUE);
+		parser.nextTag();
+	}
+
+	/**
+	 * Reads a single simple value into the row and moves the parser to the next tag.
+	 * A value without type tag is read as string.
+	 */
+	private void parseMulticallValue(XmlPullParser parser, MulticallRow row, int[] textHolder)
+			throws XmlPullParserException, IOException {
+		parser.require(XmlPullParser.START_TAG, null, SerializerHandler.TAG_VALUE);
+		String text = "";
+		int event = parser.next();
+		if (event == XmlPullParser.TEXT) {
+			text = parser.getText();
+			event = parser.next();
+		}
+		if (event == XmlPullParser.END_TAG) {
+			// Untyped value, such as <value>text</value>
+			row.addString(text);
+			parser.nextTag();
+			return;
+		}
+		if (!text.trim().isEmpty()) {
+			throw new IOException("Unexpected text before the type of a multicall row value");
+		}
+		parser.require(XmlPullParser.START_TAG, null, null);
+		String type = parser.getName();
+		if (type.equals(SerializerHandler.TYPE_INT) || type.equals(SerializerHandler.TYPE_INT2)
+				|| type.equals(SerializerHandler.TYPE_LONG) || type.equals(SerializerHandler.TYPE_BOOLEAN)) {
+			row.addLong(parseLongText(parser, textHolder));
+		} else if (type.equals(SerializerHandler.TYPE_STRING) || type.equals(SerializerHandler.TYPE_DOUBLE)) {
+			row.addString(parser.nextText());
+		} else {
+			throw new IOException("Cannot stream <" + type + "> values in a multicall row");
+		}
+		parser.require(XmlPullParser.END_TAG, null, type);
+		parser.nextTag();
+		parser.require(XmlPullParser.END_TAG, null, SerializerHandler.TAG_VALUE);
+		parser.nextTag();
+	}
+
+	/**
+	 * Parses the text of the current element as long, directly from the parser's
+	 * character buffer, and moves the parser to the closing tag of the element.
+	 */
+	private long parseLongText(XmlPullParser parser, int[] startAndLength) throws XmlPullParserException, IOException {
+		if (parser.next() != XmlPullParser.TEXT) {
+			// Empty element
+			return 0;
+		}
+		char[] text = parser.getTextCharacters(startAndLength);
+		int i = startAndLength[0];
+		int end = i + startAndLength[1];
+		while (i < end && Character.isWhitespace(text[i])) {
+			i++;
+		}
+		while (end > i && Character.isWhitespace(text[end - 1])) {
+			end--;
+		}
+		boolean negative = i < end && text[i] == '-';
+		if (negative || (i < end && text[i] == '+')) {
+			i++;
+		}
+		if (i == end) {
+			throw new NumberFormatException("Empty number");
+		}
+		long value = 0;
+		for (; i < end; i++) {
+			int digit = text[i] - '0';
+			if (digit < 0 || digit > 9) {
+				throw new NumberFormatException("Invalid number: " + new String(text, startAndLength[0], startAndLength[1]));
+			}
+			value = value * 10 + digit;
+		}
+		parser.next();
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Carries an exception of the row handler up to the parse method, such
+	 * that it can be rethrown unchanged rather than being wrapped as parse error.
+	 */
+	private static class RowHandlerException extends RuntimeException {
+		private static final long serialVersionUID = 5125542300519683417L;
+		RowHandlerException(Exception cause) {
+			super(cause);
+		}
+	}
+
 }
@@ -10,9 +10,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.params.ClientPNames;
-import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.protocol.HTTP;
 
 import de.timroes.axmlrpc.serializer.SerializerHandler;
 
@@ -211,6 +209,30 @@ public class XMLRPCClient {
 		}
 	}
 
+	/**
+	 * Call a remote procedure on the server that returns an array of rows, where
+	 * every row is an array of simple (integer, boolean or string) values, such as
+	 * a multicall. Instead of building the full result as nested Object arrays,
+	 * the rows are streamed to the row handler while the response is parsed.
+	 * This method will block until all rows were handled (or an error occurred).
+	 *
+	 * @param rowHandler The handler that receives every row of the result.
+	 * @param method A method name to call.
+	 * @param params An array of parameters for the method.
+	 * @return The number of rows received.
+	 * @throws XMLRPCException Will be thrown if an error occurred during the call.
+	 * @throws E Will be thrown (unchanged) if the row handler threw it.
+	 */
+	public <E extends Exception> int callMulticall(MulticallRowHandler<E> rowHandler, String method, Object... params)
+			throws XMLRPCException, E {
+		try {
+			return (Integer) new Caller().call(method, params, rowHandler);
+		} catch (CancelException e) {
+			// Should not happen as this is not an async call
+			throw new XMLRPCException("Background thread was explicitly cancelled, but not started asynchronously.");
+		}
+	}
+
 	/**
 	 * Asynchronously call a remote procedure on the server. The method must be
 	 * described by a method  name. If the method requires parameters, this must
@@ -374,6 +396,24 @@ public class XMLRPCClient {
 		 * @throws CancelException WIll be thrown if the async execution is explicitly cancelled.
 		 */
 		public Object call(String methodName, Object[] params) throws XMLRPCException, CancelException {
+			return call(methodName, params, null);
+		}
+
+		/**
+		 * Call a remote procedure on the server, optionally streaming the rows of
+		 * the result to a row handler.
+		 *
+		 * @param methodName A method name to call.
+		 * @param params An array of parameters for the method.
+		 * @param rowHandler The handler for the rows of a multicall result, or null
+		 * 		to return the deserialized result.
+		 * @return The result of the server, or the number of rows if a row handler was given.
+		 * @throws XMLRPCException Will be thrown if an error occurred during the call.
+		 * @throws CancelException WIll be thrown if the async execution is explicitly cancelled.
+		 * @throws E Will be thrown (unchanged) if the row handler threw it.
+		 */
+		public <E extends Exception> Object call(String methodName, Object[] params, MulticallRowHandler<E> rowHandler)
+				throws XMLRPCException, CancelException, E {
 
 			try {
 
@@ -385,7 +425,7 @@ public class XMLRPCClient {
 				post.getParams().setParameter(ClientPNames.HANDLE_REDIRECTS, false);
 				post.setHeader(CONTENT_TYPE, TYPE_XML);
 				post.setHeader(HOST, hostname);
-				StringEntity entity = new StringEntity(c.getXML(), HTTP.UTF_8);
+				CallEntity entity = new CallEntity(c.createXML());
 				entity.setContentType(TYPE_XML);
 				post.setEntity(entity);
 
@@ -428,7 +468,7 @@ public class XMLRPCClient {
 						// Set new location, disconnect current connection and request to new location.
 						String oldURL = url;
 						url = newLocation;
-						Object forwardedResult = call(methodName, params);
+						Object forwardedResult = call(methodName, params, rowHandler);
 
 						// In case of temporary forward, restore original URL again for next call.
 						if(temporaryForward) {
@@ -455,7 +495,7 @@ public class XMLRPCClient {
 						throw new XMLRPCException("The Content-Type of the response must be text/xml.");
 				}
 
-				return responseParser.parse(istream, entity);
+				return responseParser.parse(istream, entity, rowHandler);
 
 			} catch(SocketTimeoutException ex) {
 				throw new XMLRPCTimeoutException("The XMLRPC call timed out.");
@@ -0,0 +1,65 @@
+package de.timroes.axmlrpc.serializer;
+
+import de.timroes.axmlrpc.xmlcreator.XmlElement;
+import de.timroes.base64.Base64;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+
+/**
+ * An xml element with the base64 encoded content of a file as its text
+ * content. The file is read and encoded in small chunks only while the element
+ * is written, so its content is never held in memory as a whole.
+ */
+class Base64FileElement extends XmlElement {
+
+	// A multiple of 3 bytes (so chunks encode without padding) that encodes to
+	// whole lines of 72 characters (so line breaks match encoding all at once)
+	private static final int CHUNK_SIZE = 54 * 64;
+
+	private final File file;
+
+	/**
+	 * Create a new xml element for the content of a file.
+	 *
+	 * @param name The name of the xml element.
+	 * @param file The file to encode as content.
+	 */
+	Base64FileElement(String name, File file) {
+		super(name);
+		this.file = file;
+	}
+
+	@Override
+	protected boolean hasContent() {
+		return file.length() > 0;
+	}
+
+	@Override
+	protected void writeContent(Writer writer) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] chunk = new byte[CHUNK_SIZE];
+			int filled = 0;
+			int read;
+			while((read = in.read(chunk, filled, chunk.length - filled)) != -1) {
+				filled += read;
+				if(filled == chunk.length) {
+					writer.write(Base64.encode(chunk));
+					filled = 0;
+				}
+			}
+			if(filled > 0) {
+				byte[] last = new byte[filled];
+				System.arraycopy(chunk, 0, last, 0, filled);
+				writer.write(Base64.encode(last));
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+}
@@ -4,6 +4,8 @@ import de.timroes.axmlrpc.XMLUtil;
 import de.timroes.axmlrpc.xmlcreator.XmlElement;
 import de.timroes.base64.Base64;
 
+import java.io.File;
+
 /**
  *
  * @author Tim Roes
@@ -11,6 +13,13 @@ import de.timroes.base64.Base64;
 public class Base64Serializer implements Serializer {
 
 	public XmlElement serialize(Object object) {
+		if(object instanceof File) {
+			// Encode the file content only while writing the call
+			return new Base64FileElement(SerializerHandler.TYPE_BASE64, (File)object);
+		} else if(object instanceof byte[]) {
+			return XMLUtil.makeXmlTag(SerializerHandler.TYPE_BASE64,
+					Base64.encode((byte[])object));
+		}
 		return XMLUtil.makeXmlTag(SerializerHandler.TYPE_BASE64,
 				Base64.encode((Byte[])object));
 	}
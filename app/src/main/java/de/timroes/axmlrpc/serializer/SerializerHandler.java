@@ -5,6 +5,7 @@ import de.timroes.axmlrpc.XMLRPCException;
 import de.timroes.axmlrpc.xmlcreator.XmlElement;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.StringReader;
 import java.math.BigDecimal;
@@ -245,15 +246,9 @@ public class SerializerHandler {
 			s = datetime;
 		} else if (object instanceof Map) {
 			s = struct;
-		} else if(object instanceof byte[]) {
-			byte[] old = (byte[])object;
-			Byte[] boxed = new Byte[old.length];
-			for(int i = 0; i < boxed.length; i++) {
-				boxed[i] = new Byte(old[i]);
-			}
-			object = boxed;
-			s = base64;
-		} else if(object instanceof Byte[]) {
+		} else if(object instanceof byte[] || object instanceof Byte[]
+				|| object instanceof File) {
+			// A file is sent as its (base64 encoded) content
 			s = base64;
 		} else if(object instanceof Iterable<?> || object instanceof Object[]) {
 			s = array;
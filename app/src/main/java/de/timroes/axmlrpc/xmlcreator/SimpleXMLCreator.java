@@ -1,5 +1,8 @@
 package de.timroes.axmlrpc.xmlcreator;
 
+import java.io.IOException;
+import java.io.Writer;
+
 /**
  * This is a very simple xml creator. It allows creating an xml document
  * containing multiple xml tags. No attributes are supported.
@@ -19,6 +22,17 @@ public class SimpleXMLCreator {
 		this.root = element;
 	}
 
+	/**
+	 * Write the string representation of the xml tree.
+	 *
+	 * @param writer The writer to write the xml tree to.
+	 * @throws IOException Will be thrown if the xml tree could not be written.
+	 */
+	public void write(Writer writer) throws IOException {
+		writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		root.write(writer);
+	}
+
 	/**
 	 * Return the string representation of the xml tree.
 	 * @return String representation of the xml tree.
@@ -1,5 +1,8 @@
 package de.timroes.axmlrpc.xmlcreator;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -45,29 +48,73 @@ public class XmlElement {
 	}
 
 	/**
-	 * Return a string representation of this xml element.
+	 * Whether this xml element has text content, in which case its children
+	 * won't be used. May be overridden together with {@link #writeContent(Writer)}
+	 * for content that is not held in memory.
 	 *
-	 * @return String representation of xml element.
+	 * @return True if there is text content to write.
 	 */
-	@Override
-	public String toString() {
-		StringBuilder builder = new StringBuilder();
-		if(content != null && content.length() > 0) {
-			builder.append("\n<").append(name).append(">")
-					.append(content)
-					.append("</").append(name).append(">\n");
-			return builder.toString();
+	protected boolean hasContent() {
+		return content != null && content.length() > 0;
+	}
+
+	/**
+	 * Write the text content of this xml element.
+	 *
+	 * @param writer The writer to write the content to.
+	 * @throws IOException Will be thrown if the content could not be written.
+	 */
+	protected void writeContent(Writer writer) throws IOException {
+		writer.write(content);
+	}
+
+	/**
+	 * Write the string representation of this xml element, without building
+	 * it in memory first.
+	 *
+	 * @param writer The writer to write the xml element to.
+	 * @throws IOException Will be thrown if the xml element could not be written.
+	 */
+	public void write(Writer writer) throws IOException {
+		if(hasContent()) {
+			writer.write("\n<");
+			writer.write(name);
+			writer.write(">");
+			writeContent(writer);
+			writer.write("</");
+			writer.write(name);
+			writer.write(">\n");
 		} else if(children.size() > 0) {
-			builder.append("\n<").append(name).append(">");
+			writer.write("\n<");
+			writer.write(name);
+			writer.write(">");
 			for(XmlElement x : children) {
-				builder.append(x.toString());
+				x.write(writer);
 			}
-			builder.append("</").append(name).append(">\n");
-			return builder.toString();
+			writer.write("</");
+			writer.write(name);
+			writer.write(">\n");
 		} else {
-			builder.append("\n<").append(name).append("/>\n");
-			return builder.toString();
+			writer.write("\n<");
+			writer.write(name);
+			writer.write("/>\n");
+		}
+	}
+
+	/**
+	 * Return a string representation of this xml element.
+	 *
+	 * @return String representation of xml element.
+	 */
+	@Override
+	public String toString() {
+		StringWriter writer = new StringWriter();
+		try {
+			write(writer);
+		} catch(IOException ex) {
+			throw new IllegalStateException(ex);
 		}
+		return writer.toString();
 	}
 
 }
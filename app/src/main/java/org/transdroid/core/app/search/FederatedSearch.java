@@ -0,0 +1,293 @@
+/*
+ * Copyright 2010-2024 Eric Kok et al.
+ *
+ * Transdroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Transdroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.transdroid.core.app.search;
+
+import android.os.CancellationSignal;
+
+import org.transdroid.core.app.search.SearchHelper.SearchSortOrder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Searches all in-app search sites at once. Sites are queried concurrently, each with its own timeout, and their
+ * results are merged as soon as a site answers. The same torrent found on multiple sites (as recognised by the info
+ * hash in its magnet link or otherwise by its normalised name) is only listed once, using the result with the most
+ * seeders. A federated search is used once and can be cancelled from any thread.
+ */
+public class FederatedSearch {
+
+    private static final int MAX_PARALLEL_SEARCHES = 4;
+    private static final long SITE_SEARCH_TIMEOUT = 30 * 1000; // 30 seconds
+    private static final Pattern INFO_HASH = Pattern.compile("xt=urn:btih:([0-9a-zA-Z]{32,40})");
+    private static final Pattern NON_ALPHANUMERIC = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final String BASE32_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567";
+
+    private final SearchHelper searchHelper;
+    private final Map<String, SearchResult> merged = new LinkedHashMap<>();
+    private final Map<String, Integer> mergedSeeders = new LinkedHashMap<>();
+    private volatile boolean cancelled = false;
+    private List<SiteSearch> searches = Collections.emptyList();
+
+    public FederatedSearch(SearchHelper searchHelper) {
+        this.searchHelper = searchHelper;
+    }
+
+    /**
+     * Searches all given sites for a query, blocking until all sites answered or timed out. This method is synchronous
+     * and should always be called in a background thread.
+     *
+     * @param query    The search query to pass to every torrent site
+     * @param sites    The in-app search sites to query
+     * @param sortBy   The sort order to request from the torrent sites and to apply to the merged results
+     * @param listener Receives the merged results every time another site answered
+     * @return The merged results of all sites that answered in time
+     */
+    public ArrayList<SearchResult> search(String query, List<SearchSite> sites, SearchSortOrder sortBy,
+                                          Listener listener) {
+
+        if (sites == null || sites.isEmpty() || cancelled) {
+            return new ArrayList<>();
+        }
+
+        BlockingQueue<SiteSearch> answered = new LinkedBlockingQueue<>();
+        List<SiteSearch> started = new ArrayList<>();
+        for (SearchSite site : sites) {
+            started.add(new SiteSearch(site, query, sortBy, answered));
+        }
+        synchronized (this) {
+            searches = started;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(started.size(), MAX_PARALLEL_SEARCHES));
+        for (SiteSearch search : started) {
+            search.start(executor);
+        }
+        // No new work will be added; the pool threads end once all searches are done (or cancelled)
+        executor.shutdown();
+
+        // Merge the results of every site as soon as it answers, until all sites answered or timed out
+        Set<SiteSearch> pending = new LinkedHashSet<>(started);
+        ArrayList<SearchResult> results = new ArrayList<>();
+        try {
+            while (!pending.isEmpty() && !cancelled) {
+                SiteSearch search = answered.poll(getNextDeadline(pending), TimeUnit.MILLISECONDS);
+                if (search != null) {
+                    if (pending.remove(search) && search.results != null) {
+                        results = merge(search.results, sortBy);
+                        listener.onResults(results, started.size() - pending.size(), started.size());
+                    }
+                    continue;
+                }
+                // Give up on the sites that are taking too long
+                long now = System.currentTimeMillis();
+                List<SiteSearch> timedOut = new ArrayList<>();
+                for (SiteSearch running : pending) {
+                    if (running.startedAt != 0 && now - running.startedAt >= SITE_SEARCH_TIMEOUT) {
+                        running.cancel();
+                        timedOut.add(running);
+                    }
+                }
+                if (!timedOut.isEmpty()) {
+                    pending.removeAll(timedOut);
+                    listener.onResults(results, started.size() - pending.size(), started.size());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (SiteSearch search : pending) {
+            search.cancel();
+        }
+        return results;
+
+    }
+
+    /**
+     * Stops all site searches that are still running. Results that are already merged are kept.
+     */
+    public void cancel() {
+        cancelled = true;
+        synchronized (this) {
+            for (SiteSearch search : searches) {
+                search.cancel();
+            }
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    private long getNextDeadline(Set<SiteSearch> pending) {
+        // Searches that are still queued did not start their timeout yet
+        long next = SITE_SEARCH_TIMEOUT;
+        long now = System.currentTimeMillis();
+        for (SiteSearch search : pending) {
+            long started = search.startedAt;
+            if (started != 0) {
+                next = Math.min(next, started + SITE_SEARCH_TIMEOUT - now);
+            }
+        }
+        return Math.max(next, 0);
+    }
+
+    private ArrayList<SearchResult> merge(List<SearchResult> siteResults, SearchSortOrder sortBy) {
+        for (SearchResult result : siteResults) {
+            String key = getDuplicateKey(result);
+            int seeders = parseCount(result.getSeeders());
+            Integer known = mergedSeeders.get(key);
+            if (known == null || seeders > known) {
+                // Replacing a value keeps the position of the earlier result in the (combined order) list
+                merged.put(key, result);
+                mergedSeeders.put(key, seeders);
+            }
+        }
+        ArrayList<SearchResult> results = new ArrayList<>(merged.values());
+        if (sortBy == SearchSortOrder.BySeeders) {
+            Collections.sort(results, (a, b) -> Integer.compare(parseCount(b.getSeeders()), parseCount(a.getSeeders())));
+        }
+        return results;
+    }
+
+    static String getDuplicateKey(SearchResult result) {
+        if (result.getTorrentUrl() != null) {
+            Matcher matcher = INFO_HASH.matcher(result.getTorrentUrl());
+            if (matcher.find()) {
+                String hash = matcher.group(1);
+                if (hash.length() == 32) {
+                    hash = base32ToHex(hash);
+                }
+                if (hash != null && hash.length() == 40) {
+                    return "hash:" + hash.toLowerCase(Locale.US);
+                }
+            }
+        }
+        String name = result.getName() == null ? "" : result.getName();
+        return "name:" + NON_ALPHANUMERIC.matcher(name.toLowerCase(Locale.US)).replaceAll(" ").trim();
+    }
+
+    private static String base32ToHex(String base32) {
+        StringBuilder hex = new StringBuilder(40);
+        long buffer = 0;
+        int bits = 0;
+        for (char c : base32.toUpperCase(Locale.US).toCharArray()) {
+            int value = BASE32_ALPHABET.indexOf(c);
+            if (value < 0) {
+                return null;
+            }
+            buffer = (buffer << 5) | value;
+            bits += 5;
+            while (bits >= 4) {
+                bits -= 4;
+                hex.append(Character.forDigit((int) ((buffer >> bits) & 0xF), 16));
+            }
+        }
+        return hex.toString();
+    }
+
+    private static int parseCount(String count) {
+        if (count == null) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(count.replace(",", "").replace(".", "").trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Receives the merged results of a federated search while it is running.
+     */
+    public interface Listener {
+
+        /**
+         * Called on the searching thread every time a site answered or was given up on.
+         *
+         * @param results  The merged results of all sites that answered so far
+         * @param answered The number of sites that answered or timed out so far
+         * @param total    The number of sites that are searched
+         */
+        void onResults(ArrayList<SearchResult> results, int answered, int total);
+
+    }
+
+    /**
+     * Searches a single site on a pool thread, with a timeout that starts counting only once the search is actually
+     * running (and not while it is still queued).
+     */
+    private class SiteSearch implements Runnable {
+
+        private final SearchSite site;
+        private final String query;
+        private final SearchSortOrder sortBy;
+        private final BlockingQueue<SiteSearch> answered;
+        private final CancellationSignal cancellationSignal = new CancellationSignal();
+        private volatile long startedAt = 0;
+        private volatile List<SearchResult> results;
+        private Future<?> future;
+
+        SiteSearch(SearchSite site, String query, SearchSortOrder sortBy, BlockingQueue<SiteSearch> answered) {
+            this.site = site;
+            this.query = query;
+            this.sortBy = sortBy;
+            this.answered = answered;
+        }
+
+        synchronized void start(ExecutorService executor) {
+            this.future = executor.submit(this);
+        }
+
+        @Override
+        public void run() {
+            startedAt = System.currentTimeMillis();
+            try {
+                if (!cancellationSignal.isCanceled()) {
+                    results = searchHelper.search(query, site, sortBy, cancellationSignal);
+                }
+            } catch (RuntimeException e) {
+                // The search module failed for this site; simply no results from it
+                results = null;
+            }
+            answered.offer(this);
+        }
+
+        synchronized void cancel() {
+            // Cancels the content provider query (if it supports it) and frees the pool thread if it was still queued
+            cancellationSignal.cancel();
+            if (future != null) {
+                future.cancel(true);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2010-2024 Eric Kok et al.
+ *
+ * Transdroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Transdroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.transdroid.core.app.search;
+
+import org.transdroid.core.gui.lists.SimpleListItem;
+import org.transdroid.core.gui.search.SearchSetting;
+
+/**
+ * Represents the option to search all available in-app search sites at once, using a {@link FederatedSearch}.
+ */
+public class FederatedSearchSite implements SimpleListItem, SearchSetting {
+
+    public static final String KEY = "federated";
+
+    private final String name;
+
+    public FederatedSearchSite(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String getKey() {
+        return KEY;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getBaseUrl() {
+        // Not a single site, so there is no favicon to show
+        return null;
+    }
+
+}
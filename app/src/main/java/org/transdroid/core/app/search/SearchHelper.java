@@ -20,6 +20,8 @@ import android.content.ContentProviderClient;
 import android.content.Context;
 import android.database.Cursor;
 import android.net.Uri;
+import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
 
 import org.androidannotations.annotations.EBean;
 import org.androidannotations.annotations.EBean.Scope;
@@ -109,16 +111,36 @@ public class SearchHelper {
      * there is no internet connection
      */
     public ArrayList<SearchResult> search(String query, SearchSite site, SearchSortOrder sortBy) {
+        return search(query, site, sortBy, null);
+    }
+
+    /**
+     * Queries the Torrent Search module to search for torrents on the web, which may be cancelled while the site is
+     * queried. This method is synchronous and should always be called in a background thread.
+     *
+     * @param query              The search query to pass to the torrent site
+     * @param site               The site to search, or null to use the Torrent Search package's default
+     * @param sortBy             The sort order to request from the torrent site, if supported
+     * @param cancellationSignal A signal to cancel the search with, or null
+     * @return A list of torrent search results as POJOs, or null if the Torrent Search package is not installed, there
+     * is no internet connection or the search was cancelled
+     */
+    public ArrayList<SearchResult> search(String query, SearchSite site, SearchSortOrder sortBy,
+                                          CancellationSignal cancellationSignal) {
 
         // Try to query the TorrentSearchProvider to search for torrents on the web
         Uri uri = Uri.parse("content://org.transdroid.search.torrentsearchprovider/search/" + query);
         Cursor cursor;
-        if (site == null) {
-            // If no explicit site was supplied, rely on the Torrent Search package's default
-            cursor = context.getContentResolver().query(uri, null, null, null, sortBy.name());
-        } else {
-            cursor = context.getContentResolver().query(uri, null, "SITE = ?", new String[]{site.getKey()},
-                    sortBy.name());
+        try {
+            if (site == null) {
+                // If no explicit site was supplied, rely on the Torrent Search package's default
+                cursor = context.getContentResolver().query(uri, null, null, null, sortBy.name(), cancellationSignal);
+            } else {
+                cursor = context.getContentResolver().query(uri, null, "SITE = ?", new String[]{site.getKey()},
+                        sortBy.name(), cancellationSignal);
+            }
+        } catch (OperationCanceledException e) {
+            return null;
         }
         if (cursor == null) {
             // The content provider could not load any content (for example when there is no connection)
@@ -126,12 +148,13 @@ public class SearchHelper {
         }
         if (cursor.moveToFirst()) {
             ArrayList<SearchResult> results = new ArrayList<>();
+            String privateSource = site != null && site.isPrivate() ? site.getKey() : null;
             do {
                 // Read the cursor fields into the SearchResult object
                 results.add(new SearchResult(cursor.getInt(CURSOR_SEARCH_ID), cursor.getString(CURSOR_SEARCH_NAME),
                         cursor.getString(CURSOR_SEARCH_TORRENTURL), cursor.getString(CURSOR_SEARCH_DETAILSURL), cursor
                         .getString(CURSOR_SEARCH_SIZE), cursor.getLong(CURSOR_SEARCH_ADDED), cursor
-                        .getString(CURSOR_SEARCH_SEEDERS), cursor.getString(CURSOR_SEARCH_LEECHERS)));
+                        .getString(CURSOR_SEARCH_SEEDERS), cursor.getString(CURSOR_SEARCH_LEECHERS), privateSource));
             } while (cursor.moveToNext());
             cursor.close();
             return results;
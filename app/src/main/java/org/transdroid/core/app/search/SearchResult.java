@@ -45,9 +45,19 @@ public class SearchResult implements Parcelable {
     private final Date addedOn;
     private final String seeders;
     private final String leechers;
+    private final String privateSource;
 
     public SearchResult(int id, String name, String torrentUrl, String detailsUrl, String size, long addedOnTime,
                         String seeders, String leechers) {
+        this(id, name, torrentUrl, detailsUrl, size, addedOnTime, seeders, leechers, null);
+    }
+
+    /**
+     * @param privateSource The key of the private site that this result was found on (which is needed to download its
+     *                      torrent file), or null if it came from a public site
+     */
+    public SearchResult(int id, String name, String torrentUrl, String detailsUrl, String size, long addedOnTime,
+                        String seeders, String leechers, String privateSource) {
         this.id = id;
         this.name = name;
         this.torrentUrl = torrentUrl;
@@ -56,6 +66,7 @@ public class SearchResult implements Parcelable {
         this.addedOn = (addedOnTime == -1L) ? null : new Date(addedOnTime);
         this.seeders = seeders;
         this.leechers = leechers;
+        this.privateSource = privateSource;
     }
 
     public SearchResult(Parcel in) {
@@ -68,6 +79,7 @@ public class SearchResult implements Parcelable {
         addedOn = addedOnIn == -1 ? null : new Date(addedOnIn);
         seeders = in.readString();
         leechers = in.readString();
+        privateSource = in.readString();
     }
 
     public int getId() {
@@ -102,6 +114,10 @@ public class SearchResult implements Parcelable {
         return leechers;
     }
 
+    public String getPrivateSource() {
+        return privateSource;
+    }
+
     @Override
     public int describeContents() {
         return 0;
@@ -117,6 +133,7 @@ public class SearchResult implements Parcelable {
         out.writeLong(addedOn == null ? -1 : addedOn.getTime());
         out.writeString(seeders);
         out.writeString(leechers);
+        out.writeString(privateSource);
     }
 
 }
@@ -23,15 +23,23 @@ import android.text.TextUtils;
 
 import androidx.preference.PreferenceManager;
 
+import com.j256.ormlite.dao.Dao;
+import com.j256.ormlite.stmt.DeleteBuilder;
+
 import org.androidannotations.annotations.Bean;
 import org.androidannotations.annotations.EBean;
 import org.androidannotations.annotations.EBean.Scope;
 import org.androidannotations.annotations.RootContext;
+import org.androidannotations.ormlite.annotations.OrmLiteDao;
 import org.json.JSONArray;
 import org.json.JSONException;
+import org.json.JSONObject;
+import org.transdroid.R;
+import org.transdroid.core.app.search.FederatedSearchSite;
 import org.transdroid.core.app.search.SearchHelper;
 import org.transdroid.core.app.search.SearchHelper.SearchSortOrder;
 import org.transdroid.core.app.search.SearchSite;
+import org.transdroid.core.gui.log.DatabaseHelper;
 import org.transdroid.core.gui.navigation.NavigationFilter;
 import org.transdroid.core.gui.navigation.StatusType;
 import org.transdroid.core.gui.search.SearchSetting;
@@ -42,13 +50,20 @@ import org.transdroid.daemon.OS;
 import org.transdroid.daemon.TorrentsSortBy;
 
 import java.security.InvalidParameterException;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * Singleton object to access all application settings, including stored servers, web search sites and RSS feeds.
+ * Singleton object to access all application settings, including stored servers, web search sites and RSS feeds. The
+ * stored servers, web search sites and RSS feeds are read into an immutable snapshot once, which is handed out to all
+ * (background) readers until any of these settings change.
  *
  * @author Eric Kok
  */
@@ -57,15 +72,95 @@ public class ApplicationSettings {
 
     public static final int DEFAULTSERVER_LASTUSED = -2;
     public static final int DEFAULTSERVER_ASKONADD = -1;
+    private static final String[] SNAPSHOT_KEY_PREFIXES = {"server_", "seedbox_", "websearch_", "rssfeed_"};
+    private static final String SERVER_LASTSTATS_KEY_PREFIX = "server_laststats_";
 
     @RootContext
     protected Context context;
     @Bean
     protected SearchHelper searchHelper;
+    @OrmLiteDao(helper = DatabaseHelper.class)
+    protected Dao<ServerLastStat, Integer> serverLastStatDao;
+    private final AtomicReference<SettingsSnapshot> snapshot = new AtomicReference<>();
+    private final AtomicInteger snapshotGeneration = new AtomicInteger();
     private SharedPreferences prefs;
+    // Strongly referenced, as the shared preferences only keep a weak reference to its listeners
+    private final SharedPreferences.OnSharedPreferenceChangeListener snapshotInvalidator = (sharedPreferences, key) -> {
+        if (key == null) {
+            // All preferences were cleared
+            invalidateSnapshot();
+            return;
+        }
+        if (key.startsWith(SERVER_LASTSTATS_KEY_PREFIX)) {
+            // Written after every server check, but not part of the server settings
+            return;
+        }
+        for (String prefix : SNAPSHOT_KEY_PREFIXES) {
+            if (key.startsWith(prefix)) {
+                invalidateSnapshot();
+                return;
+            }
+        }
+    };
 
     protected ApplicationSettings(Context context) {
         prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        prefs.registerOnSharedPreferenceChangeListener(snapshotInvalidator);
+    }
+
+    /**
+     * Returns the current snapshot of all stored servers, web search sites and RSS feeds, reading it from the shared
+     * preferences only if these changed since the last call. Never blocks other readers.
+     */
+    private SettingsSnapshot getSnapshot() {
+        SettingsSnapshot current = snapshot.get();
+        if (current != null) {
+            return current;
+        }
+        int generation = snapshotGeneration.get();
+        SettingsSnapshot read = readSnapshot();
+        snapshot.compareAndSet(null, read);
+        if (snapshotGeneration.get() != generation) {
+            // The settings changed while we were reading them; the next call should read them again
+            snapshot.compareAndSet(read, null);
+        }
+        return read;
+    }
+
+    /**
+     * Discards the current snapshot of the stored servers, web search sites and RSS feeds, which will be read again
+     * from the shared preferences on first access. Called automatically when the preferences change, but also called
+     * directly after our own writes, as the change listener is notified asynchronously when using apply().
+     */
+    private void invalidateSnapshot() {
+        snapshotGeneration.incrementAndGet();
+        snapshot.set(null);
+    }
+
+    private SettingsSnapshot readSnapshot() {
+        List<ServerSetting> normalServers = new ArrayList<>();
+        int maxNormalServer = readMaxNormalServer();
+        for (int i = 0; i <= maxNormalServer; i++) {
+            normalServers.add(getNormalServerSetting(i));
+        }
+        List<ServerSetting> seedboxServers = new ArrayList<>();
+        int maxOfAllServers = maxNormalServer;
+        for (SeedboxProvider provider : SeedboxProvider.values()) {
+            int offset = maxOfAllServers + 1;
+            seedboxServers.addAll(provider.getSettings().getAllServerSettings(prefs, offset));
+            maxOfAllServers += provider.getSettings().getMaxSeedboxOrder(prefs) + 1;
+        }
+        List<WebsearchSetting> websearches = new ArrayList<>();
+        int maxWebsearch = readMaxWebsearch();
+        for (int i = 0; i <= maxWebsearch; i++) {
+            websearches.add(getWebsearchSetting(i));
+        }
+        List<RssfeedSetting> rssfeeds = new ArrayList<>();
+        int maxRssfeed = readMaxRssfeed();
+        for (int i = 0; i <= maxRssfeed; i++) {
+            rssfeeds.add(getRssfeedSetting(i));
+        }
+        return new SettingsSnapshot(normalServers, seedboxServers, maxOfAllServers, websearches, rssfeeds);
     }
 
     /**
@@ -74,11 +169,7 @@ public class ApplicationSettings {
      * @return A list of all stored server settings objects
      */
     public List<ServerSetting> getAllServerSettings() {
-        List<ServerSetting> all = new ArrayList<>(getNormalServerSettings());
-        for (SeedboxProvider provider : SeedboxProvider.values()) {
-            all.addAll(provider.getSettings().getAllServerSettings(prefs, all.size()));
-        }
-        return all;
+        return getSnapshot().getAllServers();
     }
 
     /**
@@ -87,11 +178,7 @@ public class ApplicationSettings {
      * @return The zero-based order number (index) of the last stored server settings
      */
     public int getMaxOfAllServers() {
-        int max = getMaxNormalServer();
-        for (SeedboxProvider provider : SeedboxProvider.values()) {
-            max += provider.getSettings().getMaxSeedboxOrder(prefs) + 1;
-        }
-        return max;
+        return getSnapshot().getMaxOfAllServers();
     }
 
     /**
@@ -103,18 +190,15 @@ public class ApplicationSettings {
      * @return The server settings object, loaded from shared preferences
      */
     public ServerSetting getServerSetting(int order) {
-        int max = getMaxNormalServer() + 1;
-        if (order < max) {
-            return getNormalServerSetting(order);
+        SettingsSnapshot current = getSnapshot();
+        if (order >= 0 && order <= current.getMaxNormalServer()) {
+            return current.getNormalServers().get(order);
         }
-        for (SeedboxProvider provider : SeedboxProvider.values()) {
-            int offset = max;
-            max += provider.getSettings().getMaxSeedboxOrder(prefs) + 1;
-            if (order < max) {
-                return provider.getSettings().getServerSetting(prefs, offset, order - offset);
-            }
+        ServerSetting seedbox = current.getServer(order);
+        if (seedbox != null) {
+            return seedbox;
         }
-        return null;
+        return order < 0 ? getNormalServerSetting(order) : null;
     }
 
     /**
@@ -123,11 +207,7 @@ public class ApplicationSettings {
      * @return A list of all stored server settings objects
      */
     public List<ServerSetting> getNormalServerSettings() {
-        List<ServerSetting> servers = new ArrayList<>();
-        for (int i = 0; i <= getMaxNormalServer(); i++) {
-            servers.add(getNormalServerSetting(i));
-        }
-        return Collections.unmodifiableList(servers);
+        return getSnapshot().getNormalServers();
     }
 
     /**
@@ -136,6 +216,10 @@ public class ApplicationSettings {
      * @return The zero-based order number (index) of the last stored normal server settings
      */
     public int getMaxNormalServer() {
+        return getSnapshot().getMaxNormalServer();
+    }
+
+    private int readMaxNormalServer() {
         for (int i = 0; true; i++) {
             if (prefs.getString("server_type_" + i, null) == null || prefs.getString("server_address_" + i, null) == null)
                 return i - 1;
@@ -214,7 +298,7 @@ public class ApplicationSettings {
 
         // Copy all settings higher than the supplied order number to the previous spot
         Editor edit = prefs.edit();
-        int max = getMaxNormalServer();
+        int max = readMaxNormalServer();
         for (int i = order; i < max; i++) {
             edit.putString("server_name_" + i, prefs.getString("server_name_" + (i + 1), null));
             edit.putString("server_type_" + i, prefs.getString("server_type_" + (i + 1), null));
@@ -275,6 +359,7 @@ public class ApplicationSettings {
         }
 
         edit.apply();
+        invalidateSnapshot();
 
     }
 
@@ -403,11 +488,7 @@ public class ApplicationSettings {
      * @return A list of all stored web search site settings objects
      */
     public List<WebsearchSetting> getWebsearchSettings() {
-        List<WebsearchSetting> websearches = new ArrayList<>();
-        for (int i = 0; i <= getMaxWebsearch(); i++) {
-            websearches.add(getWebsearchSetting(i));
-        }
-        return Collections.unmodifiableList(websearches);
+        return getSnapshot().getWebsearches();
     }
 
     /**
@@ -416,6 +497,10 @@ public class ApplicationSettings {
      * @return The zero-based order number (index) of the last stored web search site
      */
     public int getMaxWebsearch() {
+        return getSnapshot().getWebsearches().size() - 1;
+    }
+
+    private int readMaxWebsearch() {
         for (int i = 0; true; i++) {
             if (prefs.getString("websearch_baseurl_" + i, null) == null)
                 return i - 1;
@@ -449,7 +534,7 @@ public class ApplicationSettings {
 
         // Copy all settings higher than the supplied order number to the previous spot
         Editor edit = prefs.edit();
-        int max = getMaxWebsearch();
+        int max = readMaxWebsearch();
         for (int i = order; i < max; i++) {
             edit.putString("websearch_name_" + i, prefs.getString("websearch_name_" + (i + 1), null));
             edit.putString("websearch_baseurl_" + i, prefs.getString("websearch_baseurl_" + (i + 1), null));
@@ -461,6 +546,7 @@ public class ApplicationSettings {
         edit.remove("websearch_baseurl_" + max);
         edit.remove("websearch_cookies_" + max);
         edit.apply();
+        invalidateSnapshot();
 
     }
 
@@ -470,11 +556,7 @@ public class ApplicationSettings {
      * @return A list of all stored RSS feed settings objects
      */
     public List<RssfeedSetting> getRssfeedSettings() {
-        List<RssfeedSetting> rssfeeds = new ArrayList<>();
-        for (int i = 0; i <= getMaxRssfeed(); i++) {
-            rssfeeds.add(getRssfeedSetting(i));
-        }
-        return Collections.unmodifiableList(rssfeeds);
+        return getSnapshot().getRssfeeds();
     }
 
     /**
@@ -483,6 +565,10 @@ public class ApplicationSettings {
      * @return The zero-based order number (index) of the last stored RSS feed
      */
     public int getMaxRssfeed() {
+        return getSnapshot().getRssfeeds().size() - 1;
+    }
+
+    private int readMaxRssfeed() {
         for (int i = 0; true; i++) {
             if (prefs.getString("rssfeed_url_" + i, null) == null)
                 return i - 1;
@@ -522,7 +608,7 @@ public class ApplicationSettings {
 
         // Copy all settings higher than the supplied order number to the previous spot
         Editor edit = prefs.edit();
-        int max = getMaxRssfeed();
+        int max = readMaxRssfeed();
         for (int i = order; i < max; i++) {
             edit.putString("rssfeed_name_" + i, prefs.getString("rssfeed_name_" + (i + 1), null));
             edit.putString("rssfeed_url_" + i, prefs.getString("rssfeed_url_" + (i + 1), null));
@@ -544,6 +630,7 @@ public class ApplicationSettings {
         edit.remove("rssfeed_lastviewed_" + max);
         edit.remove("rssfeed_lastvieweditemurl_" + max);
         edit.apply();
+        invalidateSnapshot();
 
     }
 
@@ -564,6 +651,7 @@ public class ApplicationSettings {
         edit.putLong("rssfeed_lastviewed_" + order, lastViewed.getTime());
         edit.putString("rssfeed_lastvieweditemurl_" + order, lastViewedItemUrl);
         edit.apply();
+        invalidateSnapshot();
     }
 
     /**
@@ -622,13 +710,19 @@ public class ApplicationSettings {
     }
 
     /**
-     * Returns the list of all available in-app search sites as well as all web searches that the user configured.
+     * Returns the list of all available in-app search sites as well as all web searches that the user configured. If
+     * multiple in-app search sites are available, the option to search all of them at once is listed first.
      *
-     * @return A list of search settings, all of which are either a {@link SearchSite} or {@link WebsearchSetting}
+     * @return A list of search settings, all of which are either a {@link FederatedSearchSite}, {@link SearchSite} or
+     * {@link WebsearchSetting}
      */
     public List<SearchSetting> getSearchSettings() {
         List<SearchSetting> all = new ArrayList<>();
-        all.addAll(searchHelper.getAvailableSites());
+        List<SearchSite> sites = searchHelper.getAvailableSites();
+        if (sites != null && sites.size() > 1) {
+            all.add(new FederatedSearchSite(context.getString(R.string.search_allsites)));
+        }
+        all.addAll(sites);
         all.addAll(getWebsearchSettings());
         return Collections.unmodifiableList(all);
     }
@@ -654,6 +748,11 @@ public class ApplicationSettings {
             return null;
         }
 
+        if (lastKey.equals(FederatedSearchSite.KEY) && allsites != null && allsites.size() > 1) {
+            // The user last searched all in-app search sites at once
+            return new FederatedSearchSite(context.getString(R.string.search_allsites));
+        }
+
         int lastWebsearch = -1;
         if (lastKey.startsWith(WebsearchSetting.KEY_PREFIX)) {
             try {
@@ -708,31 +807,110 @@ public class ApplicationSettings {
     }
 
     /**
-     * Returns the statistics of this server as it was last seen by the background server checker service.
+     * Returns the statistics of the torrents that were last seen on the supplied server by the background server
+     * checker service, indexed by the torrents' unique ids.
      *
-     * @param server The server for which to retrieved the statistics from the stored preferences
-     * @return A JSON array of JSON objects, each which represent a since torrent
+     * @param server The server for which to retrieve the last statistics
+     * @return A map of torrent unique ids to their last seen stats, or null if the server was never checked before
+     * @throws SQLException Thrown when the stats could not be read from the database, in which case they should also
+     *                      not be stored again
      */
-    public JSONArray getServerLastStats(ServerSetting server) {
-        String lastStats = prefs.getString(server.getUniqueIdentifier(), null);
-        if (lastStats == null)
+    public Map<String, ServerLastStat> getServerLastStats(ServerSetting server) throws SQLException {
+        String serverKey = server.getUniqueIdentifier();
+        Map<String, ServerLastStat> lastStats = new HashMap<>();
+        for (ServerLastStat stat : serverLastStatDao.queryForEq(ServerLastStat.SERVER, serverKey)) {
+            lastStats.put(stat.getTorrent(), stat);
+        }
+        if (!lastStats.isEmpty() || prefs.getBoolean(SERVER_LASTSTATS_KEY_PREFIX + serverKey, false)) {
+            return lastStats;
+        }
+
+        // Never stored in the database: fall back to statistics stored in the old JSON format, if any
+        String legacyStats = prefs.getString(serverKey, null);
+        if (legacyStats == null)
             return null;
         try {
-            return new JSONArray(lastStats);
+            JSONArray legacy = new JSONArray(legacyStats);
+            for (int i = 0; i < legacy.length(); i++) {
+                JSONObject stat = legacy.getJSONObject(i);
+                boolean done = stat.getBoolean("done");
+                lastStats.put(stat.getString("id"),
+                        new ServerLastStat(serverKey, stat.getString("id"), done, done ? 1F : 0F));
+            }
+            return lastStats;
         } catch (JSONException e) {
             return null;
         }
     }
 
     /**
-     * Stores the now-last seen statistics of the supplied server by the background server checker service to the
-     * internal stored preferences.
+     * Stores the now-last seen statistics of the supplied server by the background server checker service. Only the
+     * torrents that are new, have changed or have disappeared since the last stats are written to the database.
      *
-     * @param server    The server to which the statistics apply to
-     * @param lastStats A JSON array of JSON objects that each represent a single seen torrent
+     * @param server       The server to which the statistics apply to
+     * @param lastStats    The statistics as earlier returned by {@link #getServerLastStats(ServerSetting)}, or null
+     * @param currentStats The statistics of the currently seen torrents, indexed by their unique ids
+     * @throws SQLException Thrown when the stats could not be written, in which case none of the changes are stored
+     */
+    public void setServerLastStats(ServerSetting server, final Map<String, ServerLastStat> lastStats,
+                                   final Map<String, ServerLastStat> currentStats) throws SQLException {
+        final String serverKey = server.getUniqueIdentifier();
+        serverLastStatDao.callBatchTasks(() -> {
+            for (ServerLastStat current : currentStats.values()) {
+                ServerLastStat last = lastStats == null ? null : lastStats.get(current.getTorrent());
+                if (last == null || last.getId() == null) {
+                    serverLastStatDao.create(current);
+                } else if (current.differsFrom(last)) {
+                    current.setId(last.getId());
+                    serverLastStatDao.update(current);
+                }
+            }
+            if (lastStats != null) {
+                List<Integer> removed = new ArrayList<>();
+                for (ServerLastStat last : lastStats.values()) {
+                    if (last.getId() != null && !currentStats.containsKey(last.getTorrent())) {
+                        removed.add(last.getId());
+                    }
+                }
+                if (!removed.isEmpty()) {
+                    serverLastStatDao.deleteIds(removed);
+                }
+            }
+            return null;
+        });
+        // Mark as stored (also if no torrents were seen) and clean up any stats in the old JSON format
+        prefs.edit().putBoolean(SERVER_LASTSTATS_KEY_PREFIX + serverKey, true).remove(serverKey).apply();
+    }
+
+    /**
+     * Removes the last seen statistics of servers that are no longer configured, for example because the server was
+     * removed or its address was changed. Runs database queries, so should not be called on the UI thread.
      */
-    public void setServerLastStats(ServerSetting server, JSONArray lastStats) {
-        prefs.edit().putString(server.getUniqueIdentifier(), lastStats.toString()).apply();
+    public void removeOrphanedServerLastStats() {
+        List<String> serverKeys = new ArrayList<>();
+        for (ServerSetting server : getAllServerSettings()) {
+            if (server.getUniqueIdentifier() != null) {
+                serverKeys.add(server.getUniqueIdentifier());
+            }
+        }
+        try {
+            DeleteBuilder<ServerLastStat, Integer> db = serverLastStatDao.deleteBuilder();
+            if (!serverKeys.isEmpty()) {
+                db.setWhere(db.where().notIn(ServerLastStat.SERVER, serverKeys));
+            }
+            serverLastStatDao.delete(db.prepare());
+        } catch (SQLException e) {
+            // Harmless; the stats are removed the next time a server is removed
+            return;
+        }
+        Editor edit = prefs.edit();
+        for (String key : prefs.getAll().keySet()) {
+            if (key.startsWith(SERVER_LASTSTATS_KEY_PREFIX)
+                    && !serverKeys.contains(key.substring(SERVER_LASTSTATS_KEY_PREFIX.length()))) {
+                edit.remove(key);
+            }
+        }
+        edit.apply();
     }
 
 	/**
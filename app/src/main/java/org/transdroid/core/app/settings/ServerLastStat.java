@@ -0,0 +1,83 @@
+/*
+ * Copyright 2010-2024 Eric Kok et al.
+ *
+ * Transdroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Transdroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.transdroid.core.app.settings;
+
+import com.j256.ormlite.field.DatabaseField;
+import com.j256.ormlite.table.DatabaseTable;
+
+/**
+ * Represents the state of a single torrent as last seen on some server by the background server checker.
+ */
+@DatabaseTable(tableName = "ServerLastStat")
+public class ServerLastStat {
+
+    public static final String SERVER = "server";
+    public static final String TORRENT = "torrent";
+
+    @DatabaseField(generatedId = true)
+    private Integer id;
+    @DatabaseField(columnName = SERVER, uniqueCombo = true, index = true)
+    private String server;
+    @DatabaseField(columnName = TORRENT, uniqueCombo = true)
+    private String torrent;
+    @DatabaseField
+    private boolean done;
+    @DatabaseField
+    private float progress;
+
+    public ServerLastStat() {
+    }
+
+    public ServerLastStat(String server, String torrent, boolean done, float progress) {
+        this.server = server;
+        this.torrent = torrent;
+        this.done = done;
+        this.progress = progress;
+    }
+
+    Integer getId() {
+        return id;
+    }
+
+    void setId(Integer id) {
+        this.id = id;
+    }
+
+    public String getServer() {
+        return server;
+    }
+
+    public String getTorrent() {
+        return torrent;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    public float getProgress() {
+        return progress;
+    }
+
+    /**
+     * Whether this stat differs from some earlier stat of the same torrent, in which case it needs to be persisted
+     */
+    boolean differsFrom(ServerLastStat other) {
+        return done != other.done || Float.compare(progress, other.progress) != 0;
+    }
+
+}
@@ -217,6 +217,8 @@ public class SettingsPersistence {
             editor.putBoolean("system_dormantasinactive", json.getBoolean("system_dormantasinactive"));
         if (json.has("system_autorefresh"))
             editor.putString("system_autorefresh", json.getString("system_autorefresh"));
+        if (json.has("system_maxconnections"))
+            editor.putString("system_maxconnections", json.getString("system_maxconnections"));
         if (json.has("system_checkupdates"))
             editor.putBoolean("system_checkupdates", json.getBoolean("system_checkupdates"));
         if (json.has("system_usedarktheme"))
@@ -365,6 +367,7 @@ public class SettingsPersistence {
         json.put("alarm_adwnotifications", prefs.getBoolean("notifications_adwnotify", false));
         json.put("system_dormantasinactive", prefs.getBoolean("system_dormantasinactive", false));
         json.put("system_autorefresh", prefs.getString("system_autorefresh", "0"));
+        json.put("system_maxconnections", prefs.getString("system_maxconnections", "4"));
         json.put("system_usedarktheme", prefs.getBoolean("system_usedarktheme", false));
         json.put("system_checkupdates", prefs.getBoolean("system_checkupdates", true));
 
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2010-2024 Eric Kok et al.
+ *
+ * Transdroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Transdroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.transdroid.core.app.settings;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable copy of all stored servers (normal and seedbox), web search sites and RSS feeds, as read from the
+ * shared preferences at one moment. Used by {@link ApplicationSettings} to hand out the settings without probing the
+ * preferences on every call.
+ */
+class SettingsSnapshot {
+
+    private final List<ServerSetting> normalServers;
+    private final List<ServerSetting> allServers;
+    private final int maxOfAllServers;
+    private final List<WebsearchSetting> websearches;
+    private final List<RssfeedSetting> rssfeeds;
+
+    /**
+     * @param normalServers   The normal (non-seedbox) servers, in order
+     * @param seedboxServers  The seedbox servers, in order and numbered after the normal servers
+     * @param maxOfAllServers The order number of the last server, normal or seedbox
+     * @param websearches     The web search sites, in order
+     * @param rssfeeds        The RSS feeds, in order
+     */
+    SettingsSnapshot(List<ServerSetting> normalServers, List<ServerSetting> seedboxServers, int maxOfAllServers,
+                     List<WebsearchSetting> websearches, List<RssfeedSetting> rssfeeds) {
+        List<ServerSetting> all = new ArrayList<>(normalServers.size() + seedboxServers.size());
+        all.addAll(normalServers);
+        all.addAll(seedboxServers);
+        this.normalServers = Collections.unmodifiableList(new ArrayList<>(normalServers));
+        this.allServers = Collections.unmodifiableList(all);
+        this.maxOfAllServers = maxOfAllServers;
+        this.websearches = Collections.unmodifiableList(new ArrayList<>(websearches));
+        this.rssfeeds = Collections.unmodifiableList(new ArrayList<>(rssfeeds));
+    }
+
+    List<ServerSetting> getNormalServers() {
+        return normalServers;
+    }
+
+    List<ServerSetting> getAllServers() {
+        return allServers;
+    }
+
+    int getMaxNormalServer() {
+        return normalServers.size() - 1;
+    }
+
+    int getMaxOfAllServers() {
+        return maxOfAllServers;
+    }
+
+    /**
+     * Returns the normal or seedbox server with the given order number, or null if no such server is stored
+     */
+    ServerSetting getServer(int order) {
+        for (ServerSetting server : allServers) {
+            if (server.getOrder() == order) {
+                return server;
+            }
+        }
+        return null;
+    }
+
+    List<WebsearchSetting> getWebsearches() {
+        return websearches;
+    }
+
+    List<RssfeedSetting> getRssfeeds() {
+        return rssfeeds;
+    }
+
+}
@@ -56,6 +56,16 @@ public class SystemSettings {
         return Integer.parseInt(prefs.getString("system_autorefresh", "0")) * 1000;
     }
 
+    /**
+     * Returns the number of connections that may be kept open to a single server, which limits how many requests are
+     * made to it at the same time. Changes only take effect after a restart of the app.
+     *
+     * @return The maximum number of simultaneous connections to a server
+     */
+    public int getMaxConnectionsPerServer() {
+        return Integer.parseInt(prefs.getString("system_maxconnections", "4"));
+    }
+
     public boolean checkForUpdates() {
         return prefs.getBoolean("system_checkupdates", true);
     }
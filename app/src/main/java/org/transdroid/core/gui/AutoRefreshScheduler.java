@@ -0,0 +1,183 @@
+/*
+ * Copyright 2010-2024 Eric Kok et al.
+ *
+ * Transdroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Transdroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.transdroid.core.gui;
+
+import android.os.SystemClock;
+
+import org.transdroid.core.gui.log.Log;
+import org.transdroid.daemon.Torrent;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically refreshes the torrents of the current server, on a single background thread so that refreshes never
+ * overlap. The delay between refreshes adapts to the server: it is shortened while torrents are downloading, grows
+ * when nothing changed or the refresh failed and is never shorter than a few times the measured round-trip time.
+ */
+public class AutoRefreshScheduler {
+
+    private static final long MIN_INTERVAL = 1000; // 1 second
+    private static final float BACKOFF_FACTOR = 1.5F;
+    private static final int MAX_BACKOFF = 4; // Times the configured interval
+    private static final int SLOW_SERVER_FACTOR = 4; // Times the average round-trip time
+
+    private final Log log;
+    private final long interval;
+    private final Refresher refresher;
+    private final ScheduledExecutorService executor;
+    private ScheduledFuture<?> nextRefresh;
+
+    // Guarded by this scheduler; the generation changes on every reset, so older refreshes can be ignored
+    private int generation = 0;
+    private boolean stopped = false;
+    private long delay;
+    private long averageRoundTrip = -1;
+    private boolean hasFingerprint = false;
+    private int lastFingerprint;
+
+    /**
+     * @param log       The logger to write the refresh timings to
+     * @param interval  The refresh interval as configured by the user, in milliseconds
+     * @param refresher The synchronous refresh to run periodically
+     */
+    public AutoRefreshScheduler(Log log, long interval, Refresher refresher) {
+        this.log = log;
+        this.interval = interval;
+        this.refresher = refresher;
+        this.delay = interval;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "AutoRefresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public synchronized void start() {
+        schedule(interval);
+    }
+
+    /**
+     * Stops refreshing. A refresh that is currently running is not interrupted (which would make it fail and report an
+     * error), but no further refresh is scheduled after it.
+     */
+    public synchronized void stop() {
+        stopped = true;
+        if (nextRefresh != null) {
+            nextRefresh.cancel(false);
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Forgets the timings and torrent state of the previous server and schedules the next refresh after the
+     * configured interval. Should be called when switching to another server.
+     */
+    public synchronized void reset() {
+        generation++;
+        delay = interval;
+        averageRoundTrip = -1;
+        hasFingerprint = false;
+        schedule(interval);
+    }
+
+    private synchronized void schedule(long delay) {
+        if (nextRefresh != null) {
+            nextRefresh.cancel(false);
+        }
+        try {
+            nextRefresh = executor.schedule(this::refresh, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Already stopped
+        }
+    }
+
+    private void refresh() {
+
+        int startGeneration;
+        synchronized (this) {
+            startGeneration = generation;
+        }
+        long start = SystemClock.elapsedRealtime();
+        List<Torrent> torrents = refresher.refresh();
+        long roundTrip = SystemClock.elapsedRealtime() - start;
+
+        synchronized (this) {
+            if (stopped || generation != startGeneration) {
+                // Stopped, or reset for another server during the refresh
+                return;
+            }
+            // Smooth the round-trip time so a single slow response does not stall the refreshes
+            averageRoundTrip = averageRoundTrip < 0 ? roundTrip : (3 * averageRoundTrip + roundTrip) / 4;
+            long next = Math.max(nextDelay(torrents), SLOW_SERVER_FACTOR * averageRoundTrip);
+            log.d(this, "Refresh took " + roundTrip + " ms (average " + averageRoundTrip + " ms); next refresh in " +
+                    next + " ms");
+            schedule(next);
+        }
+
+    }
+
+    private long nextDelay(List<Torrent> torrents) {
+
+        if (torrents == null) {
+            // The refresh failed: try again, but less often
+            delay = Math.min((long) (delay * BACKOFF_FACTOR), MAX_BACKOFF * interval);
+            return delay;
+        }
+
+        int fingerprint = 1;
+        boolean downloading = false;
+        for (Torrent torrent : torrents) {
+            // Transferred byte counts change on every poll while anything is seeding, so only whole percentages of
+            // progress are compared
+            fingerprint = 31 * fingerprint + (torrent.getUniqueID() == null ? 0 : torrent.getUniqueID().hashCode());
+            fingerprint = 31 * fingerprint + torrent.getStatusCode().ordinal();
+            fingerprint = 31 * fingerprint + (int) (torrent.getPartDone() * 100);
+            downloading |= torrent.getRateDownload() > 0;
+        }
+        boolean changed = !hasFingerprint || fingerprint != lastFingerprint;
+        hasFingerprint = true;
+        lastFingerprint = fingerprint;
+
+        if (downloading) {
+            // Follow active downloads more closely
+            delay = Math.max(interval / 2, Math.min(interval, MIN_INTERVAL));
+        } else if (changed) {
+            delay = interval;
+        } else {
+            delay = Math.min((long) (delay * BACKOFF_FACTOR), MAX_BACKOFF * interval);
+        }
+        return delay;
+
+    }
+
+    public interface Refresher {
+
+        /**
+         * Refreshes the torrents, blocking until the refresh is complete.
+         *
+         * @return The retrieved torrents, or null if the refresh failed
+         */
+        List<Torrent> refresh();
+
+    }
+
+}
@@ -21,7 +21,6 @@ import android.app.SearchManager;
 import android.content.ContentResolver;
 import android.content.Intent;
 import android.net.Uri;
-import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
 import android.view.Menu;
@@ -69,6 +68,7 @@ import org.transdroid.core.app.settings.SystemSettings;
 import org.transdroid.core.app.settings.WebsearchSetting;
 import org.transdroid.core.gui.lists.LocalTorrent;
 import org.transdroid.core.gui.lists.SimpleListItem;
+import org.transdroid.core.gui.lists.TorrentListCache;
 import org.transdroid.core.gui.log.Log;
 import org.transdroid.core.gui.log.LogUncaughtExceptionHandler;
 import org.transdroid.core.gui.navigation.FilterListAdapter;
@@ -210,9 +210,12 @@ public class TorrentsActivity extends AppCompatActivity implements TorrentTasksE
     private ActionBarDrawerToggle drawerToggle;
     private MenuItem searchMenu = null;
     private IDaemonAdapter currentConnection = null;
+    private ServerSetting currentServer = null;
+    // Whether torrents were retrieved from the current server yet, rather than only shown from the cached list
+    private boolean hasRetrievedTorrents = false;
 
-    // Auto refresh task
-    private AsyncTask<Void, Void, Void> autoRefreshTask;
+    // Auto refresh scheduler
+    private AutoRefreshScheduler autoRefreshScheduler;
 
     /**
      * Handles item selections on the dedicated list of filter items
@@ -332,6 +335,7 @@ public class TorrentsActivity extends AppCompatActivity implements TorrentTasksE
         } else {
             // Resume after instead of fully loading the torrents list; create connection and set action bar title
             ServerSetting lastUsed = applicationSettings.getLastUsedServer();
+            currentServer = lastUsed;
             currentConnection = lastUsed.getServerAdapter(connectivityHelper.getConnectedNetworkName(), this);
             serverSelectionView.updateCurrentServer(currentConnection);
             serverSelectionView.updateCurrentFilter(currentFilter);
@@ -375,6 +379,7 @@ public class TorrentsActivity extends AppCompatActivity implements TorrentTasksE
         if (currentConnection == null) {
             filterSelected(lastUsed, true);
         } else {
+            currentServer = lastUsed;
             currentConnection = lastUsed.getServerAdapter(connectivityHelper.getConnectedNetworkName(), this);
         }
 
@@ -395,41 +400,26 @@ public class TorrentsActivity extends AppCompatActivity implements TorrentTasksE
 
     public void startAutoRefresh() {
         // Check if already running
-        if (autoRefreshTask != null || stopRefresh || systemSettings.getRefreshIntervalMilliseconds() == 0) {
+        if (autoRefreshScheduler != null || stopRefresh || systemSettings.getRefreshIntervalMilliseconds() == 0) {
             return;
         }
 
-        autoRefreshTask = new AsyncTask<Void, Void, Void>() {
-            @Override
-            protected Void doInBackground(Void... params) {
-                while (!isCancelled()) {
-                    try {
-                        Thread.sleep(systemSettings.getRefreshIntervalMilliseconds());
-                    } catch (InterruptedException e) {
-                        // Ignore
-                    }
-                    // Just in case it was cancelled during sleep
-                    if (isCancelled()) {
-                        return null;
-                    }
-
-                    refreshTorrents();
-                    if (Daemon.supportsStats(currentConnection.getType())) {
-                        getAdditionalStats();
-                    }
-                }
-                return null;
+        // Refreshes run one after the other on the scheduler's own thread
+        autoRefreshScheduler = new AutoRefreshScheduler(log, systemSettings.getRefreshIntervalMilliseconds(), () -> {
+            List<Torrent> torrents = retrieveTorrents();
+            if (torrents != null && Daemon.supportsStats(currentConnection.getType())) {
+                retrieveAdditionalStats();
             }
-
-        };
-        autoRefreshTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+            return torrents;
+        });
+        autoRefreshScheduler.start();
     }
 
     public void stopAutoRefresh() {
-        if (autoRefreshTask != null) {
-            autoRefreshTask.cancel(true);
+        if (autoRefreshScheduler != null) {
+            autoRefreshScheduler.stop();
         }
-        autoRefreshTask = null;
+        autoRefreshScheduler = null;
     }
 
     @Override
@@ -558,7 +548,11 @@ public class TorrentsActivity extends AppCompatActivity implements TorrentTasksE
             }
 
             // Update connection to the newly selected server and refresh
+            currentServer = server;
             currentConnection = server.getServerAdapter(connectivityHelper.getConnectedNetworkName(), this);
+            if (autoRefreshScheduler != null) {
+                autoRefreshScheduler.reset();
+            }
             applicationSettings.setLastUsedServer(server);
             serverSelectionView.updateCurrentServer(currentConnection);
             if (forceNewConnection) {
@@ -573,7 +567,10 @@ public class TorrentsActivity extends AppCompatActivity implements TorrentTasksE
                 fragmentDetails.setCurrentServerSettings(server);
             }
             updateFragmentVisibility(true);
+            hasRetrievedTorrents = false;
             refreshScreen();
+            // Meanwhile, show the torrents that were last retrieved from this server
+            loadCachedTorrents(server);
             return;
 
         }
@@ -889,19 +886,58 @@ public class TorrentsActivity extends AppCompatActivity implements TorrentTasksE
 
     @Background
     protected void refreshTorrents() {
+        retrieveTorrents();
+    }
+
+    /**
+     * Retrieves and shows the torrents of the current server, blocking until the retrieval completes.
+     *
+     * @return The retrieved torrents, or null if the retrieval failed or the server was changed in the mean time
+     */
+    protected List<Torrent> retrieveTorrents() {
+        ServerSetting startServer = currentServer;
         String startConnectionId = currentConnection.getSettings().getIdString();
         DaemonTaskResult result = RetrieveTask.create(currentConnection).execute(log);
         if (!startConnectionId.equals(currentConnection.getSettings().getIdString())) {
             // During the command execution the user changed the server, so we are no longer interested in the result
-            return;
+            return null;
         }
         if (result instanceof RetrieveTaskSuccessResult) {
-            onTorrentsRetrieved(((RetrieveTaskSuccessResult) result).getTorrents(), ((RetrieveTaskSuccessResult) result).getLabels());
+            List<Torrent> torrents = ((RetrieveTaskSuccessResult) result).getTorrents();
+            List<org.transdroid.daemon.Label> labels = ((RetrieveTaskSuccessResult) result).getLabels();
+            if (startServer != null) {
+                // Store the torrents before they are shown, after which they may be changed in place
+                TorrentListCache.getInstance(this).put(startServer, torrents, labels);
+            }
+            onTorrentsRetrieved(torrents, labels);
+            return torrents;
         } else {
             onCommunicationError((DaemonTaskFailureResult) result, true);
+            return null;
         }
     }
 
+    @Background
+    protected void loadCachedTorrents(ServerSetting server) {
+        TorrentListCache.Snapshot snapshot = TorrentListCache.getInstance(this).get(server);
+        if (snapshot != null) {
+            onCachedTorrentsLoaded(server, snapshot);
+        }
+    }
+
+    @UiThread
+    protected void onCachedTorrentsLoaded(ServerSetting server, TorrentListCache.Snapshot snapshot) {
+        if (hasRetrievedTorrents || !server.equals(currentServer)) {
+            // Fresh torrents are already shown or the user selected another server in the mean time
+            return;
+        }
+        lastNavigationLabels =
+                Label.convertToNavigationLabels(snapshot.getLabels(), getResources().getString(R.string.labels_unlabeled));
+        fragmentTorrents.updateIsLoading(false);
+        fragmentTorrents.updateTorrents(new ArrayList<>(snapshot.getTorrents()), lastNavigationLabels);
+        navigationListAdapter.updateLabels(lastNavigationLabels);
+    }
+
     @Background
     public void refreshTorrentDetails(Torrent torrent) {
         if (!Daemon.supportsFineDetails(currentConnection.getType())) {
@@ -940,6 +976,13 @@ public class TorrentsActivity extends AppCompatActivity implements TorrentTasksE
 
     @Background
     protected void getAdditionalStats() {
+        retrieveAdditionalStats();
+    }
+
+    /**
+     * Retrieves and shows the additional server statistics, blocking until the retrieval completes.
+     */
+    protected void retrieveAdditionalStats() {
         String startConnectionId = currentConnection.getSettings().getIdString();
         DaemonTaskResult result = GetStatsTask.create(currentConnection).execute(log);
         if (!startConnectionId.equals(currentConnection.getSettings().getIdString())) {
@@ -1295,6 +1338,7 @@ public class TorrentsActivity extends AppCompatActivity implements TorrentTasksE
     @UiThread
     protected void onTorrentsRetrieved(List<Torrent> torrents, List<org.transdroid.daemon.Label> labels) {
 
+        hasRetrievedTorrents = true;
         lastNavigationLabels = Label.convertToNavigationLabels(labels, getResources().getString(R.string.labels_unlabeled));
 
         // Report the newly retrieved list of torrents to the torrents fragment
@@ -44,8 +44,10 @@ import org.androidannotations.annotations.ViewById;
 import org.transdroid.R;
 import org.transdroid.core.app.settings.ApplicationSettings;
 import org.transdroid.core.app.settings.SystemSettings;
+import org.transdroid.core.gui.lists.TorrentView;
 import org.transdroid.core.gui.lists.TorrentsAdapter;
 import org.transdroid.core.gui.lists.TorrentsAdapter_;
+import org.transdroid.core.gui.lists.TorrentsDiff;
 import org.transdroid.core.gui.navigation.Label;
 import org.transdroid.core.gui.navigation.NavigationFilter;
 import org.transdroid.core.gui.navigation.RefreshableActivity;
@@ -58,7 +60,6 @@ import org.transdroid.daemon.TorrentsComparator;
 import org.transdroid.daemon.TorrentsSortBy;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Iterator;
 import java.util.Locale;
 
@@ -363,30 +364,52 @@ public class TorrentsFragment extends Fragment implements OnLabelPickedListener
             return;
         }
 
-        // Filter the list of torrents to show according to navigation and text filters
-        ArrayList<Torrent> filteredTorrents = new ArrayList<>(torrents);
-        if (currentNavigationFilter != null) {
-            // Remove torrents that do not match the selected navigation filter
-            for (Iterator<Torrent> torrentIter = filteredTorrents.iterator(); torrentIter.hasNext(); ) {
-                if (!currentNavigationFilter.matches(torrentIter.next(), systemSettings.treatDormantAsInactive())) {
-                    torrentIter.remove();
-                }
+        // Filter the list of torrents to show according to navigation and text filters, in a single pass
+        TorrentsAdapter adapter = torrentsList == null ? null : (TorrentsAdapter) torrentsList.getAdapter();
+        String textFilter = currentTextFilter == null ? null : currentTextFilter.toLowerCase(Locale.getDefault());
+        boolean dormantAsInactive = systemSettings.treatDormantAsInactive();
+        // Start from the currently shown order, such that sorting only needs to move the torrents that changed place
+        Torrent[] shown = new Torrent[adapter == null ? 0 : adapter.getCount()];
+        ArrayList<Torrent> added = new ArrayList<>();
+        for (Torrent torrent : torrents) {
+            if (currentNavigationFilter != null && !currentNavigationFilter.matches(torrent, dormantAsInactive)) {
+                // Does not match the selected navigation filter
+                continue;
+            }
+            if (textFilter != null && !torrent.getName().toLowerCase(Locale.getDefault()).contains(textFilter)) {
+                // Does not contain the text filter string
+                continue;
+            }
+            int position = adapter == null ? -1 : adapter.getPosition(torrent.getUniqueID());
+            if (position >= 0 && position < shown.length && shown[position] == null) {
+                shown[position] = torrent;
+            } else {
+                added.add(torrent);
             }
         }
-        if (currentTextFilter != null) {
-            // Remove torrents that do not contain the text filter string
-            for (Iterator<Torrent> torrentIter = filteredTorrents.iterator(); torrentIter.hasNext(); ) {
-                if (!torrentIter.next().getName().toLowerCase(Locale.getDefault()).contains(currentTextFilter.toLowerCase(Locale.getDefault()))) {
-                    torrentIter.remove();
-                }
+        ArrayList<Torrent> filteredTorrents = new ArrayList<>(torrents.size());
+        for (Torrent torrent : shown) {
+            if (torrent != null) {
+                filteredTorrents.add(torrent);
             }
         }
-
-        // Sort the list of filtered torrents
-        Collections.sort(filteredTorrents, new TorrentsComparator(daemonType, this.currentSortOrder, this.currentSortDescending));
-
-        if (torrentsList != null && torrentsList.getAdapter() != null) {
-            ((TorrentsAdapter) torrentsList.getAdapter()).update(filteredTorrents);
+        filteredTorrents.addAll(added);
+
+        // Sort the list of filtered torrents; as the list is mostly in order already this takes about linear time
+        new TorrentsComparator(daemonType, this.currentSortOrder, this.currentSortDescending).sort(filteredTorrents);
+
+        if (adapter != null) {
+            TorrentsDiff diff = adapter.update(filteredTorrents);
+            if (!diff.isStructural()) {
+                // The list was not invalidated, so only bind the visible rows again of which the torrent changed
+                int first = torrentsList.getFirstVisiblePosition();
+                for (int i = 0; i < torrentsList.getChildCount(); i++) {
+                    View row = torrentsList.getChildAt(i);
+                    if (diff.isChanged(first + i) && row instanceof TorrentView) {
+                        ((TorrentView) row).bind(adapter.getItem(first + i));
+                    }
+                }
+            }
         }
         updateViewVisibility();
     }
@@ -21,12 +21,26 @@ import android.app.Application;
 import androidx.annotation.NonNull;
 import androidx.work.Configuration;
 
+import org.androidannotations.annotations.Bean;
 import org.androidannotations.annotations.EApplication;
+import org.transdroid.core.app.settings.SystemSettings;
 import org.transdroid.core.gui.log.Log;
+import org.transdroid.daemon.util.HttpTransport;
 
 @EApplication
 public class TransdroidApp extends Application implements Configuration.Provider {
 
+    @Bean
+    protected SystemSettings systemSettings;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        HttpTransport.initialise(this);
+        HttpTransport.configure(HttpTransport.DEFAULT_MAX_TOTAL_CONNECTIONS, systemSettings.getMaxConnectionsPerServer(),
+                HttpTransport.DEFAULT_IDLE_TIMEOUT);
+    }
+
     @NonNull
     @Override
     public Configuration getWorkManagerConfiguration() {
@@ -24,6 +24,7 @@ import android.widget.BaseAdapter;
 
 import org.transdroid.R;
 import org.transdroid.core.gui.navigation.FilterSeparatorView_;
+import org.transdroid.daemon.PieceStates;
 import org.transdroid.daemon.Torrent;
 import org.transdroid.daemon.TorrentFile;
 
@@ -157,7 +158,7 @@ public class DetailsAdapter extends MergeAdapter {
         }
     }
 
-    public void updatePieces(List<Integer> pieces) {
+    public void updatePieces(PieceStates pieces) {
         if (pieces == null || pieces.isEmpty()) {
             piecesSeparatorAdapter.setViewEnabled(false);
             piecesSeparatorAdapter.setViewVisibility(View.GONE);
@@ -6,19 +6,27 @@ import android.graphics.Paint;
 import android.view.View;
 
 import org.transdroid.R;
-
-import java.util.ArrayList;
-import java.util.List;
+import org.transdroid.daemon.PieceStates;
 
 class PiecesMapView extends View {
 
+    private static final byte BUCKET_NONE = 0;
+    private static final byte BUCKET_DOWNLOADING = 1;
+    private static final byte BUCKET_DONE = 2;
+    private static final byte BUCKET_PARTIAL = 3;
+
     private final float scale = getContext().getResources().getDisplayMetrics().density;
     private final int MINIMUM_HEIGHT = (int) (25 * scale);
     private final int MINIMUM_PIECE_WIDTH = (int) (2 * scale);
     private final Paint downloadingPaint = new Paint();
     private final Paint donePaint = new Paint();
     private final Paint partialDonePaint = new Paint();
-    private ArrayList<Integer> pieces = null;
+    private PieceStates pieces = null;
+
+    // Bucket summaries of the pieces, which are only recalculated when the pieces or the view width change
+    private byte[] buckets = new byte[0];
+    private int bucketCount = 0;
+    private int bucketsWidth = -1;
 
     public PiecesMapView(Context context) {
         super(context);
@@ -31,8 +39,9 @@ class PiecesMapView extends View {
         partialDonePaint.setColor(getResources().getColor(R.color.file_low));
     }
 
-    public void setPieces(List<Integer> pieces) {
-        this.pieces = new ArrayList<>(pieces);
+    public void setPieces(PieceStates pieces) {
+        this.pieces = pieces;
+        this.bucketsWidth = -1;
         invalidate();
     }
 
@@ -47,100 +56,97 @@ class PiecesMapView extends View {
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
 
-        if (this.pieces == null) {
+        if (this.pieces == null || this.pieces.isEmpty()) {
             return;
         }
 
         int height = getHeight();
         int width = getWidth();
+        if (width != bucketsWidth) {
+            calculateBuckets(width);
+        }
+        if (bucketCount == 0) {
+            return;
+        }
 
-        // downscale
-        ArrayList<Integer> piecesScaled;
-        int pieceWidth;
+        // Draw the downscaled pieces, with consecutive buckets of the same state as a single rectangle
+        float bucketWidth = (float) width / bucketCount;
+        int start = 0;
+        for (int i = 1; i <= bucketCount; i++) {
+            if (i < bucketCount && buckets[i] == buckets[start]) {
+                continue;
+            }
+            Paint paint = getPaint(buckets[start]);
+            if (paint != null) {
+                canvas.drawRect(start * bucketWidth, 0, i * bucketWidth, height, paint);
+            }
+            start = i;
+        }
+    }
 
-        pieceWidth = MINIMUM_PIECE_WIDTH;
-        piecesScaled = new ArrayList<>();
+    private void calculateBuckets(int width) {
+        bucketsWidth = width;
+        int pieceCount = this.pieces.size();
 
-        int bucketCount = (int) Math.ceil((double) width / (double) pieceWidth);
-        int bucketSize = (int) Math.floor((double) this.pieces.size() / (double) bucketCount);
+        // Downscale to buckets of at least the minimum width, but never use more buckets than there are pieces
+        bucketCount = Math.min((int) Math.ceil((double) width / (double) Math.max(MINIMUM_PIECE_WIDTH, 1)), pieceCount);
+        if (buckets.length < bucketCount) {
+            buckets = new byte[bucketCount];
+        }
 
         // loop buckets
         for (int i = 0; i < bucketCount; i++) {
 
-            // Get segment of pieces that fall into bucket
-            int start = i * bucketSize;
-
-            // If this is the last bucket, throw the remainder of the pieces array into it
-            int end = (i == bucketCount - 1) ? this.pieces.size() : (i + 1) * bucketSize;
-
-            ArrayList<Integer> bucket = new ArrayList<>(this.pieces.subList(start, end));
+            // Get segment of pieces that fall into bucket, spreading the remainder evenly over the buckets
+            int start = (int) ((long) i * pieceCount / bucketCount);
+            int end = (int) ((long) (i + 1) * pieceCount / bucketCount);
 
             int doneCount = 0;
-            int downloadingCount = 0;
+            boolean downloading = false;
 
             // loop pieces in bucket
-            for (int j = 0; j < bucket.size(); j++) {
-                // Count downloading pieces
-                if (bucket.get(j) == 1) {
-                    downloadingCount++;
+            for (int j = start; j < end; j++) {
+                int state = this.pieces.get(j);
+                // If a piece is downloading show bucket as downloading
+                if (state == PieceStates.DOWNLOADING) {
+                    downloading = true;
+                    break;
                 }
                 // Count finished pieces
-                else if (bucket.get(j) == 2) {
+                else if (state == PieceStates.DOWNLOADED) {
                     doneCount++;
                 }
             }
 
-            int state;
-            // If a piece is downloading show bucket as downloading
-            if (downloadingCount > 0) {
-                state = 1;
+            if (downloading) {
+                buckets[i] = BUCKET_DOWNLOADING;
             }
             // If all pieces are done, show bucket as done
-            else if (doneCount == bucket.size()) {
-                state = 2;
+            else if (doneCount == end - start) {
+                buckets[i] = BUCKET_DONE;
             }
             // Some done pieces, show bucket as partially done
             else if (doneCount > 0) {
-                state = 3;
+                buckets[i] = BUCKET_PARTIAL;
             }
             // bucket is not downloaded
             else {
-                state = 0;
+                buckets[i] = BUCKET_NONE;
             }
-
-            piecesScaled.add(state);
-        }
-
-        StringBuilder scaledPiecesString = new StringBuilder();
-        for (int s : piecesScaled) {
-            scaledPiecesString.append(s);
         }
+    }
 
-        // Draw downscaled peices
-        for (int i = 0; i < piecesScaled.size(); i++) {
-            int piece = piecesScaled.get(i);
-
-            if (piece == 0) {
-                continue;
-            }
-
-            Paint paint = new Paint();
-            switch (piece) {
-                case 1:
-                    paint = downloadingPaint;
-                    break;
-                case 2:
-                    paint = donePaint;
-                    break;
-                case 3:
-                    paint = partialDonePaint;
-                    break;
-            }
-            int x = i * pieceWidth;
-
-            canvas.drawRect(x, 0, x + pieceWidth, height, paint);
+    private Paint getPaint(byte bucket) {
+        switch (bucket) {
+            case BUCKET_DOWNLOADING:
+                return downloadingPaint;
+            case BUCKET_DONE:
+                return donePaint;
+            case BUCKET_PARTIAL:
+                return partialDonePaint;
+            default:
+                return null;
         }
     }
 
 }
-
@@ -0,0 +1,433 @@
+/*
+ * Copyright 2010-2024 Eric Kok et al.
+ *
+ * Transdroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Transdroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.transdroid.core.gui.lists;
+
+import android.content.Context;
+
+import org.transdroid.core.app.settings.ServerSetting;
+import org.transdroid.daemon.Daemon;
+import org.transdroid.daemon.Label;
+import org.transdroid.daemon.Torrent;
+import org.transdroid.daemon.TorrentStatus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * On-disk store of the torrents and labels that were last retrieved from every server, such that the torrents screen
+ * and the widgets can show them directly after a cold start or when the server is unreachable. Snapshots are written
+ * asynchronously after a successful retrieval and read back memory-mapped. The binary format stores every distinct
+ * string (such as a label or download directory) only once and all numbers as variable length integers.
+ */
+public class TorrentListCache {
+
+    private static final int FORMAT_VERSION = 2;
+    private static final int MAX_STRING_LENGTH = 4 * 1024 * 1024;
+    private static final int FLAG_SEQUENTIAL_DOWNLOAD = 1;
+    private static final int FLAG_FIRST_LAST_PIECE_DOWNLOAD = 2;
+    private static TorrentListCache instance;
+
+    private final File directory;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "TorrentListCacheWriter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<String, byte[]> pendingWrites = new HashMap<>();
+
+    private TorrentListCache(File directory) {
+        this.directory = directory;
+    }
+
+    public static synchronized TorrentListCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new TorrentListCache(new File(context.getCacheDir(), "torrentlists"));
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the torrents and labels that were last stored for a server.
+     *
+     * @param server The server settings
+     * @return The last stored snapshot, or null if nothing was stored (yet) or the stored copy could not be read
+     */
+    public Snapshot get(ServerSetting server) {
+        String key = server.getUniqueIdentifier();
+        if (key == null) {
+            return null;
+        }
+        byte[] pending;
+        synchronized (pendingWrites) {
+            // Not yet on disk, but already the latest
+            pending = pendingWrites.get(key);
+        }
+        if (pending != null) {
+            try {
+                return readSnapshot(ByteBuffer.wrap(pending), key);
+            } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+                return null;
+            }
+        }
+        File file = getFile(key);
+        if (!file.exists()) {
+            return null;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            FileChannel channel = in.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return readSnapshot(buffer, key);
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            // Corrupt or incompatible; simply no longer use it
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Stores the freshly retrieved torrents and labels of a server in the background. The torrents are encoded on the
+     * calling thread, so the caller should not let them be changed concurrently (such as with the torrent mimic
+     * methods) until this returns. If multiple lists are stored for the same server before the first one was written,
+     * only the latest is written.
+     *
+     * @param server   The server settings
+     * @param torrents The retrieved torrents
+     * @param labels   The retrieved labels, or null if the server does not support labels
+     */
+    public void put(ServerSetting server, List<Torrent> torrents, List<Label> labels) {
+        final String key = server.getUniqueIdentifier();
+        if (key == null) {
+            return;
+        }
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        try {
+            writeSnapshot(new Encoder(encoded), new Snapshot(new Date(), torrents,
+                    labels == null ? Collections.emptyList() : labels), key);
+        } catch (IOException e) {
+            // Never happens for an in-memory stream
+            return;
+        }
+        boolean schedule;
+        synchronized (pendingWrites) {
+            // If a write for this server is already scheduled, it will simply pick up this newer snapshot
+            schedule = pendingWrites.put(key, encoded.toByteArray()) == null;
+        }
+        if (schedule) {
+            writer.execute(() -> writePending(key));
+        }
+    }
+
+    private void writePending(String key) {
+        byte[] latest;
+        synchronized (pendingWrites) {
+            latest = pendingWrites.get(key);
+        }
+        write(key, latest);
+        synchronized (pendingWrites) {
+            if (pendingWrites.get(key) == latest) {
+                pendingWrites.remove(key);
+                return;
+            }
+        }
+        // A newer snapshot came in while writing, which is still pending
+        writer.execute(() -> writePending(key));
+    }
+
+    private void write(String key, byte[] snapshot) {
+        if (!directory.exists() && !directory.mkdirs()) {
+            return;
+        }
+        File file = getFile(key);
+        File temp = new File(directory, file.getName() + ".tmp");
+        try (OutputStream out = new FileOutputStream(temp)) {
+            out.write(snapshot);
+        } catch (IOException e) {
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+        }
+    }
+
+    private File getFile(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            StringBuilder name = new StringBuilder();
+            for (byte b : digest.digest(key.getBytes("UTF-8"))) {
+                name.append(String.format("%02x", b));
+            }
+            return new File(directory, name.toString());
+        } catch (NoSuchAlgorithmException | IOException e) {
+            return new File(directory, Integer.toHexString(key.hashCode()));
+        }
+    }
+
+    private static void writeSnapshot(Encoder out, Snapshot snapshot, String key) throws IOException {
+
+        // Collect all distinct strings first, such that repeated labels, directories, etc. are only stored once
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        for (Label label : snapshot.getLabels()) {
+            addString(strings, label.getName());
+        }
+        for (Torrent torrent : snapshot.getTorrents()) {
+            addString(strings, torrent.getHash());
+            addString(strings, torrent.getName());
+            addString(strings, torrent.getLocationDir());
+            addString(strings, torrent.getLabelName());
+            addString(strings, torrent.getError());
+            addString(strings, torrent.getDaemon() == null ? null : torrent.getDaemon().name());
+        }
+
+        out.writeVarLong(FORMAT_VERSION);
+        out.writeString(key);
+        out.writeVarLong(snapshot.getRetrieved().getTime());
+        out.writeVarLong(strings.size());
+        for (String string : strings.keySet()) {
+            out.writeString(string);
+        }
+        out.writeVarLong(snapshot.getLabels().size());
+        for (Label label : snapshot.getLabels()) {
+            out.writeVarLong(getString(strings, label.getName()));
+            out.writeVarLong(label.getCount());
+        }
+        out.writeVarLong(snapshot.getTorrents().size());
+        for (Torrent torrent : snapshot.getTorrents()) {
+            out.writeVarLong(torrent.getId());
+            out.writeVarLong(getString(strings, torrent.getHash()));
+            out.writeVarLong(getString(strings, torrent.getName()));
+            out.writeVarLong(torrent.getStatusCode() == null ? -1 : torrent.getStatusCode().getCode());
+            out.writeVarLong(getString(strings, torrent.getLocationDir()));
+            out.writeVarLong(torrent.getRateDownload());
+            out.writeVarLong(torrent.getRateUpload());
+            out.writeVarLong(torrent.getSeedersConnected());
+            out.writeVarLong(torrent.getSeedersKnown());
+            out.writeVarLong(torrent.getLeechersConnected());
+            out.writeVarLong(torrent.getLeechersKnown());
+            out.writeVarLong(torrent.getEta());
+            out.writeVarLong(torrent.getDownloadedEver());
+            out.writeVarLong(torrent.getUploadedEver());
+            out.writeVarLong(torrent.getTotalSize());
+            out.writeFloat(torrent.getPartDone());
+            out.writeFloat(torrent.getAvailability());
+            out.writeVarLong(getString(strings, torrent.getLabelName()));
+            out.writeVarLong(torrent.getDateAdded() == null ? -1 : torrent.getDateAdded().getTime());
+            out.writeVarLong(torrent.getDateDone() == null ? -1 : torrent.getDateDone().getTime());
+            out.writeVarLong(getString(strings, torrent.getError()));
+            out.writeVarLong(getString(strings, torrent.getDaemon() == null ? null : torrent.getDaemon().name()));
+            out.writeVarLong((torrent.isSequentiallyDownloading() ? FLAG_SEQUENTIAL_DOWNLOAD : 0) |
+                    (torrent.isDownloadingFirstLastPieceFirst() ? FLAG_FIRST_LAST_PIECE_DOWNLOAD : 0));
+        }
+
+    }
+
+    private static Snapshot readSnapshot(ByteBuffer in, String key) throws IOException {
+
+        if (readVarLong(in) != FORMAT_VERSION || !key.equals(readString(in))) {
+            return null;
+        }
+        Date retrieved = new Date(readVarLong(in));
+        String[] strings = new String[readCount(in)];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = readString(in);
+        }
+
+        int labelCount = readCount(in);
+        List<Label> labels = new ArrayList<>(labelCount);
+        for (int i = 0; i < labelCount; i++) {
+            labels.add(new Label(readString(in, strings), (int) readVarLong(in)));
+        }
+
+        int torrentCount = readCount(in);
+        List<Torrent> torrents = new ArrayList<>(torrentCount);
+        for (int i = 0; i < torrentCount; i++) {
+            Torrent.Builder torrent = new Torrent.Builder()
+                    .setId(readVarLong(in))
+                    .setHash(readString(in, strings))
+                    .setName(readString(in, strings));
+            int status = (int) readVarLong(in);
+            torrent.setStatusCode(status == -1 ? null : TorrentStatus.getStatus(status))
+                    .setLocationDir(readString(in, strings))
+                    .setRateDownload((int) readVarLong(in))
+                    .setRateUpload((int) readVarLong(in))
+                    .setSeedersConnected((int) readVarLong(in))
+                    .setSeedersKnown((int) readVarLong(in))
+                    .setLeechersConnected((int) readVarLong(in))
+                    .setLeechersKnown((int) readVarLong(in))
+                    .setEta((int) readVarLong(in))
+                    .setDownloadedEver(readVarLong(in))
+                    .setUploadedEver(readVarLong(in))
+                    .setTotalSize(readVarLong(in))
+                    .setPartDone(in.getFloat())
+                    .setAvailable(in.getFloat())
+                    .setLabel(readString(in, strings))
+                    .setDateAdded(readDate(in))
+                    .setRealDateDone(readDate(in))
+                    .setError(readString(in, strings));
+            String daemon = readString(in, strings);
+            int flags = (int) readVarLong(in);
+            torrents.add(torrent.setDaemon(daemon == null ? null : Daemon.valueOf(daemon))
+                    .setSequentialDownload((flags & FLAG_SEQUENTIAL_DOWNLOAD) != 0)
+                    .setFirstLastPieceDownload((flags & FLAG_FIRST_LAST_PIECE_DOWNLOAD) != 0)
+                    .createTorrent());
+        }
+
+        return new Snapshot(retrieved, torrents, labels);
+
+    }
+
+    private static void addString(Map<String, Integer> strings, String value) {
+        if (value != null && !strings.containsKey(value)) {
+            strings.put(value, strings.size());
+        }
+    }
+
+    private static int getString(Map<String, Integer> strings, String value) {
+        // Index 0 is reserved for null
+        return value == null ? 0 : strings.get(value) + 1;
+    }
+
+    private static String readString(ByteBuffer in, String[] strings) throws IOException {
+        int index = (int) readVarLong(in);
+        if (index < 0 || index > strings.length) {
+            throw new IOException("Invalid string index " + index);
+        }
+        return index == 0 ? null : strings[index - 1];
+    }
+
+    private static String readString(ByteBuffer in) throws IOException {
+        int length = (int) readVarLong(in);
+        if (length < 0 || length > in.remaining() || length > MAX_STRING_LENGTH) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static int readCount(ByteBuffer in) throws IOException {
+        long count = readVarLong(in);
+        // Every entry takes at least one byte
+        if (count < 0 || count > in.remaining()) {
+            throw new IOException("Invalid count " + count);
+        }
+        return (int) count;
+    }
+
+    private static Date readDate(ByteBuffer in) {
+        long time = readVarLong(in);
+        return time == -1 ? null : new Date(time);
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        // Zigzag-encoded, such that small negative numbers (such as an unknown eta) are small too
+        long raw = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            raw |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (raw >>> 1) ^ -(raw & 1);
+            }
+        }
+        throw new IllegalArgumentException("Malformed variable length integer");
+    }
+
+    private static class Encoder {
+
+        private final OutputStream out;
+
+        Encoder(OutputStream out) {
+            this.out = out;
+        }
+
+        void writeVarLong(long value) throws IOException {
+            long raw = (value << 1) ^ (value >> 63);
+            while ((raw & ~0x7FL) != 0) {
+                out.write((int) ((raw & 0x7F) | 0x80));
+                raw >>>= 7;
+            }
+            out.write((int) raw);
+        }
+
+        void writeFloat(float value) throws IOException {
+            int bits = Float.floatToIntBits(value);
+            out.write(bits >>> 24);
+            out.write(bits >>> 16);
+            out.write(bits >>> 8);
+            out.write(bits);
+        }
+
+        void writeString(String value) throws IOException {
+            byte[] bytes = value.getBytes("UTF-8");
+            writeVarLong(bytes.length);
+            out.write(bytes);
+        }
+
+    }
+
+    /**
+     * The torrents and labels of a server as they were retrieved at some moment.
+     */
+    public static class Snapshot {
+
+        private final Date retrieved;
+        private final List<Torrent> torrents;
+        private final List<Label> labels;
+
+        Snapshot(Date retrieved, List<Torrent> torrents, List<Label> labels) {
+            this.retrieved = retrieved;
+            this.torrents = Collections.unmodifiableList(torrents);
+            this.labels = Collections.unmodifiableList(labels);
+        }
+
+        /**
+         * Returns the moment the torrents were retrieved from the server.
+         */
+        public Date getRetrieved() {
+            return retrieved;
+        }
+
+        public List<Torrent> getTorrents() {
+            return torrents;
+        }
+
+        public List<Label> getLabels() {
+            return labels;
+        }
+
+    }
+
+}
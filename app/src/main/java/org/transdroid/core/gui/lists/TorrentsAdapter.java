@@ -26,6 +26,9 @@ import org.androidannotations.annotations.RootContext;
 import org.transdroid.daemon.Torrent;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Adapter that contains a list of torrent objects to show.
@@ -38,15 +41,41 @@ public class TorrentsAdapter extends BaseAdapter {
     @RootContext
     protected Context context;
     private ArrayList<Torrent> torrents = null;
+    private Map<String, Integer> positions = Collections.emptyMap();
+    private TorrentsDiff.BoundState[] states = new TorrentsDiff.BoundState[0];
+    private final Map<String, Long> itemIds = new HashMap<>();
+    private long nextItemId = 0;
 
     /**
-     * Allows updating the full internal list of torrents at once, replacing the old list
+     * Allows updating the full internal list of torrents at once, replacing the old list. Observers are only notified
+     * if torrents were inserted, removed or moved; otherwise the returned differences tell which shown torrents
+     * changed and need to be bound again.
      *
      * @param newTorrents The new list of torrent objects
+     * @return The differences between the old and the new list
      */
-    public void update(ArrayList<Torrent> newTorrents) {
+    public TorrentsDiff update(ArrayList<Torrent> newTorrents) {
+        TorrentsDiff diff = TorrentsDiff.compute(states, positions, newTorrents);
         this.torrents = newTorrents;
-        notifyDataSetChanged();
+        this.states = diff.getNewStates();
+        this.positions = diff.getNewPositions();
+        // Forget the item IDs of torrents that are no longer shown
+        itemIds.keySet().retainAll(positions.keySet());
+        if (diff.isStructural()) {
+            notifyDataSetChanged();
+        }
+        return diff;
+    }
+
+    /**
+     * Returns the position of a shown torrent
+     *
+     * @param uniqueId The unique ID of the torrent to look up
+     * @return The position of the torrent in the list, or -1 if it is not shown
+     */
+    public int getPosition(String uniqueId) {
+        Integer position = positions.get(uniqueId);
+        return position == null ? -1 : position;
     }
 
     @Override
@@ -72,7 +101,14 @@ public class TorrentsAdapter extends BaseAdapter {
 
     @Override
     public long getItemId(int position) {
-        return position;
+        // Torrents keep their ID when moving around, so any checked torrents stay checked on refreshes and sorting
+        String uniqueId = getItem(position).getUniqueID();
+        Long itemId = itemIds.get(uniqueId);
+        if (itemId == null) {
+            itemId = nextItemId++;
+            itemIds.put(uniqueId, itemId);
+        }
+        return itemId;
     }
 
     @Override
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2010-2024 Eric Kok et al.
+ *
+ * Transdroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Transdroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.transdroid.core.gui.lists;
+
+import org.transdroid.daemon.Torrent;
+import org.transdroid.daemon.TorrentStatus;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The differences between two (sorted) lists of torrents, matched by their unique ID: which torrents were inserted,
+ * removed or moved to another position and which stayed in place but changed in content. Content is compared against
+ * a copy of the shown fields as they were when the old list was bound, since torrent objects may be reused between
+ * refreshes and updated in place.
+ */
+public class TorrentsDiff {
+
+    private final int inserted;
+    private final int removed;
+    private final int moved;
+    private final BitSet changed;
+    private final BoundState[] newStates;
+    private final Map<String, Integer> newPositions;
+
+    private TorrentsDiff(int inserted, int removed, int moved, BitSet changed, BoundState[] newStates,
+                         Map<String, Integer> newPositions) {
+        this.inserted = inserted;
+        this.removed = removed;
+        this.moved = moved;
+        this.changed = changed;
+        this.newStates = newStates;
+        this.newPositions = newPositions;
+    }
+
+    /**
+     * Compares the old and new list of torrents by their unique ID.
+     *
+     * @param oldStates    The shown fields of the previously shown torrents, by position
+     * @param oldPositions The positions of the previously shown torrents by unique ID
+     * @param newTorrents  The torrents to show now
+     * @return The differences; changes are reported by position in the new list
+     */
+    static TorrentsDiff compute(BoundState[] oldStates, Map<String, Integer> oldPositions, List<Torrent> newTorrents) {
+        int kept = 0, moved = 0;
+        BitSet changed = new BitSet(newTorrents.size());
+        BoundState[] newStates = new BoundState[newTorrents.size()];
+        Map<String, Integer> newPositions = new HashMap<>(newTorrents.size() * 2);
+        for (int i = 0; i < newTorrents.size(); i++) {
+            Torrent torrent = newTorrents.get(i);
+            newStates[i] = new BoundState(torrent);
+            newPositions.put(torrent.getUniqueID(), i);
+            Integer oldPosition = oldPositions.get(torrent.getUniqueID());
+            if (oldPosition == null) {
+                continue;
+            }
+            kept++;
+            if (oldPosition != i) {
+                moved++;
+            } else if (!oldStates[oldPosition].equals(newStates[i])) {
+                changed.set(i);
+            }
+        }
+        return new TorrentsDiff(newTorrents.size() - kept, oldStates.length - kept, moved, changed, newStates,
+                newPositions);
+    }
+
+    /**
+     * The shown fields of every torrent in the new list, by position, to compare against on the next update.
+     */
+    BoundState[] getNewStates() {
+        return newStates;
+    }
+
+    /**
+     * The positions of the torrents in the new list, by unique ID.
+     */
+    Map<String, Integer> getNewPositions() {
+        return newPositions;
+    }
+
+    /**
+     * Whether torrents were inserted, removed or moved, such that the list positions changed.
+     */
+    public boolean isStructural() {
+        return inserted > 0 || removed > 0 || moved > 0;
+    }
+
+    /**
+     * Whether the torrent at the given position in the new list is still at its old position but changed in content.
+     */
+    public boolean isChanged(int position) {
+        return changed.get(position);
+    }
+
+    @Override
+    public String toString() {
+        return inserted + " inserted, " + removed + " removed, " + moved + " moved, " + changed.cardinality() +
+                " changed";
+    }
+
+    /**
+     * A copy of the fields of a torrent that are shown in its list row, taken when the row is bound.
+     */
+    static final class BoundState {
+
+        private final TorrentStatus statusCode;
+        private final int rateDownload;
+        private final int rateUpload;
+        private final int seedersConnected;
+        private final int seedersKnown;
+        private final int leechersConnected;
+        private final int leechersKnown;
+        private final int eta;
+        private final long downloadedEver;
+        private final long uploadedEver;
+        private final long totalSize;
+        private final float partDone;
+        private final float availability;
+        private final String name;
+        private final String error;
+        private final String labelName;
+
+        BoundState(Torrent torrent) {
+            this.statusCode = torrent.getStatusCode();
+            this.rateDownload = torrent.getRateDownload();
+            this.rateUpload = torrent.getRateUpload();
+            this.seedersConnected = torrent.getSeedersConnected();
+            this.seedersKnown = torrent.getSeedersKnown();
+            this.leechersConnected = torrent.getLeechersConnected();
+            this.leechersKnown = torrent.getLeechersKnown();
+            this.eta = torrent.getEta();
+            this.downloadedEver = torrent.getDownloadedEver();
+            this.uploadedEver = torrent.getUploadedEver();
+            this.totalSize = torrent.getTotalSize();
+            this.partDone = torrent.getPartDone();
+            this.availability = torrent.getAvailability();
+            this.name = torrent.getName();
+            this.error = torrent.getError();
+            this.labelName = torrent.getLabelName();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof BoundState)) {
+                return false;
+            }
+            BoundState other = (BoundState) o;
+            return statusCode == other.statusCode && rateDownload == other.rateDownload &&
+                    rateUpload == other.rateUpload && seedersConnected == other.seedersConnected &&
+                    seedersKnown == other.seedersKnown && leechersConnected == other.leechersConnected &&
+                    leechersKnown == other.leechersKnown && eta == other.eta &&
+                    downloadedEver == other.downloadedEver && uploadedEver == other.uploadedEver &&
+                    totalSize == other.totalSize && partDone == other.partDone && availability == other.availability &&
+                    equals(name, other.name) && equals(error, other.error) && equals(labelName, other.labelName);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = statusCode == null ? 0 : statusCode.hashCode();
+            result = 31 * result + rateDownload;
+            result = 31 * result + rateUpload;
+            result = 31 * result + Float.floatToIntBits(partDone);
+            return 31 * result + (name == null ? 0 : name.hashCode());
+        }
+
+        private static boolean equals(Object a, Object b) {
+            return a == null ? b == null : a.equals(b);
+        }
+
+    }
+
+}
@@ -26,6 +26,8 @@ import com.j256.ormlite.android.apptools.OrmLiteSqliteOpenHelper;
 import com.j256.ormlite.support.ConnectionSource;
 import com.j256.ormlite.table.TableUtils;
 
+import org.transdroid.core.app.settings.ServerLastStat;
+
 import java.sql.SQLException;
 
 /**
@@ -36,7 +38,7 @@ import java.sql.SQLException;
 public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
 
     private static final String DATABASE_NAME = "transdroid.db";
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 2;
 
     @Keep
     public DatabaseHelper(Context context) {
@@ -47,8 +49,9 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
     public void onCreate(SQLiteDatabase sqLiteDatabase, ConnectionSource connectionSource) {
         try {
             TableUtils.createTable(connectionSource, ErrorLogEntry.class);
+            TableUtils.createTable(connectionSource, ServerLastStat.class);
         } catch (SQLException e) {
-            Log.e(org.transdroid.core.gui.log.Log.LOG_NAME, "Could not create new table for ErrorLogEntry", e);
+            Log.e(org.transdroid.core.gui.log.Log.LOG_NAME, "Could not create new tables", e);
         }
     }
 
@@ -58,13 +61,13 @@ public class DatabaseHelper extends OrmLiteSqliteOpenHelper {
         try {
             switch (oldVersion) {
                 case 1:
-                    TableUtils.createTable(connectionSource, ErrorLogEntry.class);
+                    TableUtils.createTable(connectionSource, ServerLastStat.class);
 			/*case 2:
 				etc...*/
             }
 
         } catch (SQLException e) {
-            Log.e(org.transdroid.core.gui.log.Log.LOG_NAME, "Could not upgrade the table for ErrorLogEntry", e);
+            Log.e(org.transdroid.core.gui.log.Log.LOG_NAME, "Could not upgrade the database tables", e);
         }
     }
 
@@ -28,6 +28,7 @@ import org.androidannotations.ormlite.annotations.OrmLiteDao;
 import org.transdroid.R;
 import org.transdroid.core.app.settings.ServerSetting;
 import org.transdroid.core.gui.navigation.NavigationHelper;
+import org.transdroid.daemon.util.HttpTransport;
 
 import java.sql.SQLException;
 import java.util.List;
@@ -59,9 +60,12 @@ public class ErrorLogSender {
                 body.append(" settings: ");
                 body.append(serverSetting.getHumanReadableIdentifier());
             }
+            body.append("\nHTTP transport: ");
+            body.append(HttpTransport.getStatistics());
             body.append("\n\nConnection and error log:");
 
-            // Print the individual error log messages as stored in the database
+            // Make sure pending log messages are written before printing the ones stored in the database
+            log.flush();
             List<ErrorLogEntry> all = errorLogDao.queryBuilder().orderBy(ErrorLogEntry.ID, true).query();
             for (ErrorLogEntry errorLogEntry : all) {
                 body.append("\n");
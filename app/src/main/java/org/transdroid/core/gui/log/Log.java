@@ -24,10 +24,17 @@ import org.androidannotations.annotations.EBean.Scope;
 import org.androidannotations.ormlite.annotations.OrmLiteDao;
 import org.transdroid.BuildConfig;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Application-wide logging class that registers entries in the database (for a certain time).
+ * Application-wide logging class that registers entries in the database (for a certain time). Messages are first
+ * collected in an in-memory ring buffer and written to the database in batches on a background thread, so logging
+ * never blocks the caller on SQLite. Use {@link #flush()} to synchronously persist all pending entries.
  *
  * @author Eric Kok
  */
@@ -36,8 +43,24 @@ public class Log {
 
     public static final String LOG_NAME = "Transdroid";
     private static final long MAX_LOG_AGE = 15 * 60 * 1000; // 15 minutes
+    private static final long FLUSH_DELAY = 1000; // 1 second
+    private static final long TRUNCATE_INTERVAL = 60 * 1000; // 1 minute
+    private static final int BUFFER_SIZE = 256;
+
+    private final ErrorLogEntry[] buffer = new ErrorLogEntry[BUFFER_SIZE];
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ErrorLogWriter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Runnable flushTask = this::flush;
     @OrmLiteDao(helper = DatabaseHelper.class)
     Dao<ErrorLogEntry, Integer> errorLogDao;
+    private int bufferStart = 0;
+    private int bufferCount = 0;
+    private int dropped = 0;
+    private boolean flushScheduled = false;
+    private long lastTruncate = 0;
 
     protected void log(Object object, int priority, String message) {
         log(object instanceof String ? (String) object : object.getClass().getSimpleName(), priority, message);
@@ -47,15 +70,68 @@ public class Log {
         if (BuildConfig.DEBUG) {
             android.util.Log.println(priority, LOG_NAME, message);
         }
-        try {
-            // Store this log message to the database
-            errorLogDao.create(new ErrorLogEntry(priority, logName, message));
-            // Truncate the error log
-            DeleteBuilder<ErrorLogEntry, Integer> db = errorLogDao.deleteBuilder();
-            db.setWhere(db.where().le(ErrorLogEntry.DATEANDTIME, new Date(new Date().getTime() - MAX_LOG_AGE)));
-            errorLogDao.delete(db.prepare());
-        } catch (Exception e) {
-            android.util.Log.e(LOG_NAME, "Cannot write log message to database: " + e.toString());
+        synchronized (buffer) {
+            if (bufferCount == BUFFER_SIZE) {
+                // Ring buffer is full: overwrite the oldest pending entry
+                bufferStart = (bufferStart + 1) % BUFFER_SIZE;
+                bufferCount--;
+                dropped++;
+            }
+            buffer[(bufferStart + bufferCount) % BUFFER_SIZE] = new ErrorLogEntry(priority, logName, message);
+            bufferCount++;
+            if (!flushScheduled) {
+                flushScheduled = true;
+                writer.schedule(flushTask, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Synchronously writes all pending log entries to the database (in a single transaction) and truncates entries
+     * that are older than the maximum log age if this was not done recently.
+     */
+    public void flush() {
+        synchronized (writer) {
+            final List<ErrorLogEntry> pending;
+            final int lost;
+            synchronized (buffer) {
+                pending = new ArrayList<>(bufferCount);
+                for (int i = 0; i < bufferCount; i++) {
+                    int index = (bufferStart + i) % BUFFER_SIZE;
+                    pending.add(buffer[index]);
+                    buffer[index] = null;
+                }
+                bufferStart = 0;
+                bufferCount = 0;
+                lost = dropped;
+                dropped = 0;
+                flushScheduled = false;
+            }
+            if (lost > 0) {
+                pending.add(0, new ErrorLogEntry(android.util.Log.WARN, LOG_NAME,
+                        "Log buffer overflow; " + lost + " older messages were discarded"));
+            }
+            try {
+                if (!pending.isEmpty()) {
+                    // Store all pending log messages to the database at once
+                    errorLogDao.callBatchTasks(() -> {
+                        for (ErrorLogEntry entry : pending) {
+                            errorLogDao.create(entry);
+                        }
+                        return null;
+                    });
+                }
+                // Truncate the error log periodically rather than for every message
+                long now = System.currentTimeMillis();
+                if (now - lastTruncate >= TRUNCATE_INTERVAL) {
+                    lastTruncate = now;
+                    DeleteBuilder<ErrorLogEntry, Integer> db = errorLogDao.deleteBuilder();
+                    db.setWhere(db.where().le(ErrorLogEntry.DATEANDTIME, new Date(now - MAX_LOG_AGE)));
+                    errorLogDao.delete(db.prepare());
+                }
+            } catch (Exception e) {
+                android.util.Log.e(LOG_NAME, "Cannot write log messages to database: " + e.toString());
+            }
         }
     }
 
@@ -43,6 +43,8 @@ public class LogUncaughtExceptionHandler implements Thread.UncaughtExceptionHand
         for (StackTraceElement e : ex.getStackTrace()) {
             log.e(this, prefix + e.toString());
         }
+        // The process is about to die, so persist the buffered messages right away
+        log.flush();
 
         // Rely on default Android exception handling
         defaultUncaughtExceptionHandler.uncaughtException(thread, ex);
@@ -59,6 +59,7 @@ import org.transdroid.core.gui.remoterss.data.RemoteRssChannel;
 import org.transdroid.core.gui.remoterss.data.RemoteRssItem;
 import org.transdroid.core.gui.remoterss.data.RemoteRssSupplier;
 import org.transdroid.core.rssparser.Channel;
+import org.transdroid.core.rssparser.RssFeedCache;
 import org.transdroid.core.rssparser.RssParser;
 import org.transdroid.core.service.ConnectivityHelper;
 import org.transdroid.daemon.Daemon;
@@ -181,7 +182,8 @@ public class RssFeedsActivity extends AppCompatActivity {
         try {
             // Load and parse the feed
             RssParser parser =
-                    new RssParser(loader.getSetting().getUrl(), loader.getSetting().getExcludeFilter(), loader.getSetting().getIncludeFilter());
+                    new RssParser(loader.getSetting().getUrl(), loader.getSetting().getExcludeFilter(), loader.getSetting().getIncludeFilter(),
+                            RssFeedCache.getInstance(this));
             parser.parse();
             handleRssfeedResult(loader, parser.getChannel(), false);
         } catch (Exception e) {
@@ -44,6 +44,7 @@ import org.androidannotations.annotations.OptionsItem;
 import org.androidannotations.annotations.SystemService;
 import org.androidannotations.annotations.ViewById;
 import org.transdroid.R;
+import org.transdroid.core.app.search.FederatedSearchSite;
 import org.transdroid.core.app.search.SearchHelper;
 import org.transdroid.core.app.search.SearchHelper.SearchSortOrder;
 import org.transdroid.core.app.search.SearchSite;
@@ -308,6 +309,17 @@ public class SearchActivity extends AppCompatActivity {
             // Ask the results fragment to start a search for the specified query
             fragmentResults.startSearch(lastUsedQuery, (SearchSite) lastUsedSite, applicationSettings.getLastUsedSearchSortOrder());
 
+        } else if (lastUsedSite instanceof FederatedSearchSite) {
+
+            // Save the search site currently used to search for future usage
+            applicationSettings.setLastUsedSearchSite(lastUsedSite);
+            // Update the activity title (only shown on large devices)
+            if (sitesSpinner == null && getSupportActionBar() != null)
+                getSupportActionBar()
+                        .setTitle(NavigationHelper.buildCondensedFontString(getString(R.string.search_queryonsite, lastUsedQuery, lastUsedSite.getName())));
+            // Ask the results fragment to search all in-app sites at once
+            fragmentResults.startFederatedSearch(lastUsedQuery, applicationSettings.getLastUsedSearchSortOrder());
+
         }
     }
 
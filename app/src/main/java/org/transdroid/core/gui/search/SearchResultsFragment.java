@@ -45,6 +45,7 @@ import org.androidannotations.annotations.ItemClick;
 import org.androidannotations.annotations.UiThread;
 import org.androidannotations.annotations.ViewById;
 import org.transdroid.R;
+import org.transdroid.core.app.search.FederatedSearch;
 import org.transdroid.core.app.search.SearchHelper;
 import org.transdroid.core.app.search.SearchHelper.SearchSortOrder;
 import org.transdroid.core.app.search.SearchResult;
@@ -54,7 +55,9 @@ import org.transdroid.core.gui.navigation.NavigationHelper_;
 import org.transdroid.core.gui.navigation.SelectionManagerMode;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Fragment that lists the items in a specific RSS feed
@@ -80,6 +83,7 @@ public class SearchResultsFragment extends Fragment {
     protected TextView emptyText;
     @ViewById
     protected ProgressBar loadingProgress;
+    private volatile FederatedSearch federatedSearch = null;
     private MultiChoiceModeListener onItemsSelected = new MultiChoiceModeListener() {
 
         SelectionManagerMode selectionManagerMode;
@@ -111,21 +115,34 @@ public class SearchResultsFragment extends Fragment {
 
             int itemId = item.getItemId();
             if (itemId == R.id.action_addall) {
-                // Start an Intent that adds multiple items at once, by supplying the urls and titles as string array
-                // extras and setting the Intent action to ADD_MULTIPLE
-                Intent intent = new Intent("org.transdroid.ADD_MULTIPLE");
-                String[] urls = new String[checked.size()];
-                String[] titles = new String[checked.size()];
-                for (int i = 0; i < checked.size(); i++) {
-                    urls[i] = checked.get(i).getTorrentUrl();
-                    titles[i] = checked.get(i).getName();
+                // Results of a search on all sites may come from different private sites, each of which should
+                // download its own torrent files, so add the items per source
+                Map<String, List<SearchResult>> bySource = new LinkedHashMap<>();
+                for (SearchResult result : checked) {
+                    String source = getPrivateSource(result);
+                    if (!bySource.containsKey(source)) {
+                        bySource.put(source, new ArrayList<>());
+                    }
+                    bySource.get(source).add(result);
                 }
-                intent.putExtra("TORRENT_URLS", urls);
-                intent.putExtra("TORRENT_TITLES", titles);
-                if (resultsSource != null) {
-                    intent.putExtra("PRIVATE_SOURCE", resultsSource);
+                for (Map.Entry<String, List<SearchResult>> source : bySource.entrySet()) {
+                    // Start an Intent that adds multiple items at once, by supplying the urls and titles as string
+                    // array extras and setting the Intent action to ADD_MULTIPLE
+                    Intent intent = new Intent("org.transdroid.ADD_MULTIPLE");
+                    List<SearchResult> sourceResults = source.getValue();
+                    String[] urls = new String[sourceResults.size()];
+                    String[] titles = new String[sourceResults.size()];
+                    for (int i = 0; i < sourceResults.size(); i++) {
+                        urls[i] = sourceResults.get(i).getTorrentUrl();
+                        titles[i] = sourceResults.get(i).getName();
+                    }
+                    intent.putExtra("TORRENT_URLS", urls);
+                    intent.putExtra("TORRENT_TITLES", titles);
+                    if (source.getKey() != null) {
+                        intent.putExtra("PRIVATE_SOURCE", source.getKey());
+                    }
+                    startActivity(intent);
                 }
-                startActivity(intent);
                 mode.finish();
                 return true;
             } else if (itemId == R.id.action_showdetails) {
@@ -176,6 +193,7 @@ public class SearchResultsFragment extends Fragment {
     }
 
     public void startSearch(String query, SearchSite site, SearchSortOrder sortBy) {
+        cancelFederatedSearch();
         loadingProgress.setVisibility(View.VISIBLE);
         resultsList.setVisibility(View.GONE);
         emptyText.setVisibility(View.GONE);
@@ -189,6 +207,63 @@ public class SearchResultsFragment extends Fragment {
         showResults();
     }
 
+    /**
+     * Searches all available in-app search sites at once, showing the (de-duplicated) results as the sites answer.
+     *
+     * @param query  The search query to pass to every torrent site
+     * @param sortBy The sort order to request from the torrent sites and to apply to the combined results
+     */
+    public void startFederatedSearch(String query, SearchSortOrder sortBy) {
+        cancelFederatedSearch();
+        FederatedSearch search = new FederatedSearch(searchHelper);
+        federatedSearch = search;
+        loadingProgress.setVisibility(View.VISIBLE);
+        resultsList.setVisibility(View.GONE);
+        emptyText.setVisibility(View.GONE);
+        performFederatedSearch(search, query, sortBy);
+    }
+
+    @Background
+    protected void performFederatedSearch(FederatedSearch search, String query, SearchSortOrder sortBy) {
+        ArrayList<SearchResult> found = search.search(query, searchHelper.getAvailableSites(), sortBy,
+                (partialResults, answered, total) -> showFederatedResults(search, partialResults, answered < total));
+        showFederatedResults(search, found, false);
+    }
+
+    @UiThread
+    protected void showFederatedResults(FederatedSearch search, ArrayList<SearchResult> partialResults,
+                                        boolean searching) {
+        if (search != federatedSearch || search.isCancelled()) {
+            // Another search was started in the mean time
+            return;
+        }
+        results = partialResults;
+        // Results may come from different private sites, which are stored with every result
+        resultsSource = null;
+        if (searching && (results == null || results.isEmpty())) {
+            // Keep showing the progress until at least one site returned results
+            return;
+        }
+        showResults();
+    }
+
+    private void cancelFederatedSearch() {
+        if (federatedSearch != null) {
+            federatedSearch.cancel();
+            federatedSearch = null;
+        }
+    }
+
+    private String getPrivateSource(SearchResult result) {
+        return resultsSource != null ? resultsSource : result.getPrivateSource();
+    }
+
+    @Override
+    public void onDestroy() {
+        cancelFederatedSearch();
+        super.onDestroy();
+    }
+
     @UiThread
     protected void showResults() {
         loadingProgress.setVisibility(View.GONE);
@@ -218,8 +293,9 @@ public class SearchResultsFragment extends Fragment {
         Intent i = TorrentsActivity_.intent(getActivity()).get();
         i.setData(Uri.parse(item.getTorrentUrl()));
         i.putExtra("TORRENT_TITLE", item.getName());
-        if (resultsSource != null) {
-            i.putExtra("PRIVATE_SOURCE", resultsSource);
+        String source = getPrivateSource(item);
+        if (source != null) {
+            i.putExtra("PRIVATE_SOURCE", source);
         }
         startActivity(i);
     }
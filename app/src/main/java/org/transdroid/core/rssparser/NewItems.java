@@ -0,0 +1,87 @@
+/*
+ * Copyright 2010-2024 Eric Kok et al.
+ *
+ * Transdroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Transdroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.transdroid.core.rssparser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The items of a feed that are newer than the item that was last viewed by the user, as counted by
+ * {@link RssParser#parseNewItems(Date, String, int)}. Items are offered in feed order (newest first) and counting
+ * stops at the last viewed item. Only the first few new items are retained.
+ */
+public class NewItems {
+
+    private final Date lastViewed;
+    private final String lastViewedItemUrl;
+    private final int maxItems;
+    private final List<Item> items = new ArrayList<>();
+    private int count = 0;
+    private Boolean usePublishDate = null;
+
+    /**
+     * @param lastViewed        The publish date of the last viewed item
+     * @param lastViewedItemUrl The link of the last viewed item, used if the feed items have no publish date
+     * @param maxItems          The maximum number of new items to retain
+     */
+    NewItems(Date lastViewed, String lastViewedItemUrl, int maxItems) {
+        this.lastViewed = lastViewed;
+        this.lastViewedItemUrl = lastViewedItemUrl;
+        this.maxItems = maxItems;
+    }
+
+    /**
+     * Counts the next (filtered) item of the feed as new, unless it is the last viewed item or older.
+     *
+     * @param item The next item in feed order
+     * @return True if the item was new, or false if the last viewed item was reached and no further items are new
+     */
+    boolean offer(Item item) {
+        if (usePublishDate == null) {
+            // Like the RSS screens, use the publish dates only if the feed (its first item) provides them
+            usePublishDate = item.getPubdate() != null && item.getPubdate().getTime() > 0;
+        }
+        if (usePublishDate && item.getPubdate() != null && item.getPubdate().before(lastViewed)) {
+            return false;
+        } else if (!usePublishDate && item.getTheLink() != null && lastViewedItemUrl != null &&
+                item.getTheLink().equals(lastViewedItemUrl)) {
+            return false;
+        }
+        count++;
+        if (items.size() < maxItems) {
+            items.add(item);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of items that are newer than the last viewed item.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the newest of the new items, at most as many as were requested.
+     */
+    public List<Item> getItems() {
+        return Collections.unmodifiableList(items);
+    }
+
+}
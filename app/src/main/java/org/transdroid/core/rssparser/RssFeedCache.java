@@ -0,0 +1,250 @@
+/*
+ * Copyright 2010-2024 Eric Kok et al.
+ *
+ * Transdroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Transdroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.transdroid.core.rssparser;
+
+import android.content.Context;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * On-disk cache of RSS feeds, storing the parsed (unfiltered) channel of a feed together with the ETag and
+ * Last-Modified validators that the server sent for it. This allows an {@link RssParser} to make conditional requests
+ * and use the cached channel when the feed was not modified. A single instance is shared by the RSS screens and the
+ * background RSS checker.
+ */
+public class RssFeedCache {
+
+    private static final int FORMAT_VERSION = 1;
+    private static final int MAX_STRING_LENGTH = 4 * 1024 * 1024;
+    private static RssFeedCache instance;
+
+    private final File directory;
+
+    private RssFeedCache(File directory) {
+        this.directory = directory;
+    }
+
+    public static synchronized RssFeedCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new RssFeedCache(new File(context.getCacheDir(), "rssfeeds"));
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the cached copy of a feed.
+     *
+     * @param url The URL of the feed
+     * @return The cached feed, or null if it was not cached or the cached copy could not be read
+     */
+    public synchronized Entry get(String url) {
+        File file = getFile(url);
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FORMAT_VERSION || !url.equals(in.readUTF())) {
+                return null;
+            }
+            String etag = readString(in);
+            String lastModified = readString(in);
+            return new Entry(etag, lastModified, readChannel(in));
+        } catch (IOException e) {
+            // Corrupt or incompatible; simply no longer use it
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Stores a freshly retrieved feed, or removes the cached copy if the server did not send any validator to make
+     * conditional requests with.
+     *
+     * @param url          The URL of the feed
+     * @param etag         The ETag header value as sent by the server, or null
+     * @param lastModified The Last-Modified header value as sent by the server, or null
+     * @param channel      The parsed channel, before applying any filters
+     */
+    public synchronized void put(String url, String etag, String lastModified, Channel channel) {
+        File file = getFile(url);
+        if (etag == null && lastModified == null) {
+            file.delete();
+            return;
+        }
+        if (!directory.exists() && !directory.mkdirs()) {
+            return;
+        }
+        File temp = new File(directory, file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(url);
+            writeString(out, etag);
+            writeString(out, lastModified);
+            writeChannel(out, channel);
+        } catch (IOException e) {
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+        }
+    }
+
+    private File getFile(String url) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            StringBuilder name = new StringBuilder();
+            for (byte b : digest.digest(url.getBytes("UTF-8"))) {
+                name.append(String.format("%02x", b));
+            }
+            return new File(directory, name.toString());
+        } catch (NoSuchAlgorithmException | IOException e) {
+            return new File(directory, Integer.toHexString(url.hashCode()));
+        }
+    }
+
+    private static void writeChannel(DataOutputStream out, Channel channel) throws IOException {
+        out.writeInt(channel.getId());
+        writeString(out, channel.getTitle());
+        writeString(out, channel.getLink());
+        writeString(out, channel.getDescription());
+        writeDate(out, channel.getPubDate());
+        out.writeLong(channel.getLastBuildDate());
+        writeString(out, channel.getImage());
+        out.writeInt(channel.getCategories().size());
+        for (String category : channel.getCategories()) {
+            writeString(out, category);
+        }
+        out.writeInt(channel.getItems().size());
+        for (Item item : channel.getItems()) {
+            out.writeInt(item.getId());
+            writeString(out, item.getTitle());
+            writeString(out, item.getLink());
+            writeString(out, item.getDescription());
+            writeDate(out, item.getPubdate());
+            writeString(out, item.getEnclosureUrl());
+            writeString(out, item.getEnclosureType());
+            out.writeLong(item.getEnclosureLength());
+        }
+    }
+
+    private static Channel readChannel(DataInputStream in) throws IOException {
+        Channel channel = new Channel();
+        channel.setId(in.readInt());
+        channel.setTitle(readString(in));
+        channel.setLink(readString(in));
+        channel.setDescription(readString(in));
+        channel.setPubDate(readDate(in));
+        channel.setLastBuildDate(in.readLong());
+        channel.setImage(readString(in));
+        int categories = in.readInt();
+        List<String> categoryList = new ArrayList<>(categories);
+        for (int i = 0; i < categories; i++) {
+            categoryList.add(readString(in));
+        }
+        channel.setCategories(categoryList);
+        int items = in.readInt();
+        for (int i = 0; i < items; i++) {
+            Item item = new Item();
+            item.setId(in.readInt());
+            item.setTitle(readString(in));
+            item.setLink(readString(in));
+            item.setDescription(readString(in));
+            item.setPubdate(readDate(in));
+            item.setEnclosureUrl(readString(in));
+            item.setEnclosureType(readString(in));
+            item.setEnclosureLength(in.readLong());
+            channel.addItem(item);
+        }
+        return channel;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        // Use a length-prefixed UTF-8 array rather than writeUTF, as descriptions may exceed 64KB
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > MAX_STRING_LENGTH || length > in.available()) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static void writeDate(DataOutputStream out, Date date) throws IOException {
+        out.writeLong(date == null ? -1 : date.getTime());
+    }
+
+    private static Date readDate(DataInputStream in) throws IOException {
+        long time = in.readLong();
+        return time == -1 ? null : new Date(time);
+    }
+
+    /**
+     * A cached feed with the validators to make a conditional request for it.
+     */
+    public static class Entry {
+
+        private final String etag;
+        private final String lastModified;
+        private final Channel channel;
+
+        Entry(String etag, String lastModified, Channel channel) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.channel = channel;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        public Channel getChannel() {
+            return channel;
+        }
+
+    }
+
+}
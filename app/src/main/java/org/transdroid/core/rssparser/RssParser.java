@@ -6,19 +6,18 @@ package org.transdroid.core.rssparser;
 
 import android.text.TextUtils;
 
+import org.apache.http.Header;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.conn.scheme.PlainSocketFactory;
-import org.apache.http.conn.scheme.Scheme;
-import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.params.ConnManagerParams;
 import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
 import org.apache.http.params.HttpProtocolParams;
 import org.transdroid.daemon.util.HttpHelper;
-import org.transdroid.daemon.util.TlsSniSocketFactory;
+import org.transdroid.daemon.util.HttpTransport;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
@@ -34,13 +33,21 @@ import javax.xml.parsers.SAXParserFactory;
 
 public class RssParser extends DefaultHandler {
 
+    // One connection-pooled client is shared by all feeds that are retrieved, possibly concurrently
+    private static DefaultHttpClient httpclient;
+
     private final String urlString;
     private final String[] excludeFilters;
     private final String[] includeFilters;
+    private final RssFeedCache cache;
     private Channel channel;
     private StringBuilder text;
     private Item item;
     private boolean imageStatus;
+    private NewItems newItems;
+    private volatile HttpGet request;
+    private long fetchDuration = -1;
+    private long parseDuration = -1;
 
     /**
      * The constructor for the RSS parser; call {@link #parse()} to synchronously create an HTTP connection and parse
@@ -51,7 +58,22 @@ public class RssParser extends DefaultHandler {
      * @param includeFilter A |-separated list of words that need to be included in the item title or they are excluded
      */
     public RssParser(String url, String excludeFilter, String includeFilter) {
+        this(url, excludeFilter, includeFilter, null);
+    }
+
+    /**
+     * The constructor for the RSS parser that uses a feed cache; call {@link #parse()} to synchronously make a
+     * (conditional) HTTP request and parse the RSS feed contents, or use the cached copy if the feed was not modified.
+     * The results can be retrieved with {@link #getChannel()}.
+     *
+     * @param url           The url of the feed to retrieve
+     * @param excludeFilter A |-separated list of words that may not be included in the item title or they are excluded
+     * @param includeFilter A |-separated list of words that need to be included in the item title or they are excluded
+     * @param cache         The cache of previously retrieved feeds, or null to always retrieve the full feed
+     */
+    public RssParser(String url, String excludeFilter, String includeFilter, RssFeedCache cache) {
         this.urlString = url;
+        this.cache = cache;
         if (!TextUtils.isEmpty(excludeFilter)) {
             this.excludeFilters = excludeFilter.split("\\|");
             for (int i = 0; i < excludeFilters.length; i++) {
@@ -81,7 +103,38 @@ public class RssParser extends DefaultHandler {
     }
 
     /**
-     * Initialises an HTTP connection, retrieves the content and parses the RSS feed as standard XML.
+     * Returns how long the last {@link #parse()} waited for the server to respond.
+     *
+     * @return The duration in milliseconds, or -1 if the server never responded
+     */
+    public long getFetchDuration() {
+        return fetchDuration;
+    }
+
+    /**
+     * Returns how long the last {@link #parse()} took to read and parse the feed content after the server responded.
+     *
+     * @return The duration in milliseconds, or -1 if the feed content was not parsed
+     */
+    public long getParseDuration() {
+        return parseDuration;
+    }
+
+    /**
+     * Aborts the connection of a running {@link #parse()}, which will then throw an IOException. May be called from
+     * any thread.
+     */
+    public void abort() {
+        HttpGet running = request;
+        if (running != null) {
+            running.abort();
+        }
+    }
+
+    /**
+     * Initialises an HTTP connection, retrieves the content and parses the RSS feed as standard XML. If a cached copy of
+     * the feed is available, the request is made conditional and the cached channel is used if the server reports that
+     * the feed was not modified.
      *
      * @throws ParserConfigurationException Thrown if the SX parser is not working corectly
      * @throws SAXException                 Thrown if the SAX parser can encounters non-standard XML content
@@ -89,13 +142,7 @@ public class RssParser extends DefaultHandler {
      */
     public void parse() throws ParserConfigurationException, SAXException, IOException {
 
-        DefaultHttpClient httpclient = initialise();
-        HttpResponse result = httpclient.execute(new HttpGet(urlString));
-        SAXParserFactory spf = SAXParserFactory.newInstance();
-        if (spf != null) {
-            SAXParser sp = spf.newSAXParser();
-            sp.parse(result.getEntity().getContent(), this);
-        }
+        retrieve();
 
         // Apply filters
         if (channel != null && (includeFilters != null || excludeFilters != null)) {
@@ -108,6 +155,104 @@ public class RssParser extends DefaultHandler {
 
     }
 
+    /**
+     * Initialises an HTTP connection and counts the items of the RSS feed that are newer than the last viewed item,
+     * applying the filters while parsing. Reading the feed stops as soon as the last viewed item is reached, so that
+     * older items are never transferred or parsed. Only the channel details are available via {@link #getChannel()}
+     * afterwards; the new items are returned instead.
+     *
+     * @param lastViewed        The publish date of the last viewed item
+     * @param lastViewedItemUrl The link of the last viewed item, used if the feed items have no publish date
+     * @param maxItems          The maximum number of new items to return
+     * @return The number of new items and the newest of them
+     * @throws ParserConfigurationException Thrown if the SX parser is not working corectly
+     * @throws SAXException                 Thrown if the SAX parser can encounters non-standard XML content
+     * @throws IOException                  Thrown if the RSS feed content can not be retrieved, such as when no connection is available
+     */
+    public NewItems parseNewItems(Date lastViewed, String lastViewedItemUrl, int maxItems)
+            throws ParserConfigurationException, SAXException, IOException {
+
+        NewItems newItems = new NewItems(lastViewed, lastViewedItemUrl, maxItems);
+        this.newItems = newItems;
+        try {
+            retrieve();
+        } finally {
+            this.newItems = null;
+        }
+        return newItems;
+
+    }
+
+    private void retrieve() throws ParserConfigurationException, SAXException, IOException {
+
+        DefaultHttpClient httpclient = initialise();
+        HttpGet request = new HttpGet(urlString);
+        this.request = request;
+        RssFeedCache.Entry cached = cache == null ? null : cache.get(urlString);
+        if (cached != null) {
+            if (cached.getEtag() != null) {
+                request.addHeader("If-None-Match", cached.getEtag());
+            }
+            if (cached.getLastModified() != null) {
+                request.addHeader("If-Modified-Since", cached.getLastModified());
+            }
+        }
+        boolean complete = true;
+        try {
+            long start = System.currentTimeMillis();
+            HttpResponse result = httpclient.execute(request);
+            fetchDuration = System.currentTimeMillis() - start;
+
+            if (cached != null && result.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+                // Not modified since we cached it, so use the cached channel instead
+                channel = cached.getChannel();
+                if (newItems != null) {
+                    for (Item cachedItem : channel.getItems()) {
+                        if (matchesFilters(cachedItem) && !newItems.offer(cachedItem)) {
+                            break;
+                        }
+                    }
+                }
+            } else {
+                start = System.currentTimeMillis();
+                SAXParserFactory spf = SAXParserFactory.newInstance();
+                if (spf != null) {
+                    SAXParser sp = spf.newSAXParser();
+                    try {
+                        sp.parse(result.getEntity().getContent(), this);
+                    } catch (LastViewedItemReached e) {
+                        complete = false;
+                    }
+                }
+                parseDuration = System.currentTimeMillis() - start;
+                // Store the complete feed, so that filters can still be changed later on
+                if (cache != null && channel != null && newItems == null
+                        && result.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
+                    cache.put(urlString, getHeaderValue(result, "ETag"), getHeaderValue(result, "Last-Modified"), channel);
+                }
+            }
+            if (!complete) {
+                // The remainder of the feed only has items that were seen before: close rather than read it
+                request.abort();
+            } else if (result.getEntity() != null) {
+                // Release the connection back to the shared pool
+                result.getEntity().consumeContent();
+            }
+        } catch (ParserConfigurationException | SAXException | IOException | RuntimeException e) {
+            // Close the connection rather than returning it to the shared pool half-read
+            request.abort();
+            throw e;
+        } finally {
+            this.request = null;
+        }
+
+    }
+
+    private static String getHeaderValue(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        return header == null ? null : header.getValue();
+    }
+
     private boolean matchesFilters(Item next) {
         String title = next.getTitle().toUpperCase();
         if (includeFilters != null) {
@@ -130,18 +275,18 @@ public class RssParser extends DefaultHandler {
         return true;
     }
 
-    private DefaultHttpClient initialise() {
+    private static synchronized DefaultHttpClient initialise() {
 
-        SchemeRegistry registry = new SchemeRegistry();
-        registry.register(new Scheme("http", new PlainSocketFactory(), 80));
-        registry.register(new Scheme("https", new TlsSniSocketFactory(), 443));
+        if (httpclient != null) {
+            return httpclient;
+        }
 
         HttpParams httpparams = new BasicHttpParams();
         HttpConnectionParams.setConnectionTimeout(httpparams, 5000);
         HttpConnectionParams.setSoTimeout(httpparams, 5000);
+        ConnManagerParams.setTimeout(httpparams, 5000);
         HttpProtocolParams.setUserAgent(httpparams, HttpHelper.userAgent);
-        DefaultHttpClient httpclient = new DefaultHttpClient(new ThreadSafeClientConnManager(httpparams, registry),
-                httpparams);
+        httpclient = new DefaultHttpClient(HttpTransport.getConnectionManager(false, null), httpparams);
 
         httpclient.addRequestInterceptor(HttpHelper.gzipRequestInterceptor);
         httpclient.addResponseInterceptor(HttpHelper.gzipResponseInterceptor);
@@ -171,7 +316,9 @@ public class RssParser extends DefaultHandler {
         /** Now lets check for an item */
         if (localName.equalsIgnoreCase("item") && (this.channel != null)) {
             this.item = createNewItem();
-            this.channel.addItem(this.item);
+            if (this.newItems == null) {
+                this.channel.addItem(this.item);
+            }
         }
 
         /** Now lets check for an image */
@@ -200,7 +347,7 @@ public class RssParser extends DefaultHandler {
     /**
      * This is where we actually parse for the elements contents
      */
-    public final void endElement(String uri, String localName, String qName) {
+    public final void endElement(String uri, String localName, String qName) throws SAXException {
         /** Check we have an RSS Feed */
         if (this.channel == null) {
             return;
@@ -208,7 +355,13 @@ public class RssParser extends DefaultHandler {
 
         /** Check are at the end of an item */
         if (localName.equalsIgnoreCase("item")) {
+            Item completed = this.item;
             this.item = null;
+            /** When counting new items, stop parsing at the last viewed one */
+            if (this.newItems != null && completed != null && matchesFilters(completed) &&
+                    !this.newItems.offer(completed)) {
+                throw new LastViewedItemReached();
+            }
         }
 
         /** Check we are at the end of an image */
@@ -296,4 +449,15 @@ public class RssParser extends DefaultHandler {
         this.text.append(ch, start, length);
     }
 
+    /**
+     * Signals that the last viewed item was reached while counting new items, to stop the SAX parser.
+     */
+    private static class LastViewedItemReached extends SAXException {
+
+        LastViewedItemReached() {
+            super("Reached the last viewed item");
+        }
+
+    }
+
 }
@@ -94,12 +94,13 @@ public class AppUpdateJobRunner {
             return Worker.Result.retry();
         }
 
-        DefaultHttpClient httpclient = new DefaultHttpClient();
         Random random = new Random();
 
         try {
 
-            // Retrieve what is the latest released app and search module versions
+            // Retrieve what is the latest released app and search module versions, using the shared connection pool
+            DefaultHttpClient httpclient = HttpHelper.createStandardHttpClient(false, null, null, null, false, null,
+                    HttpHelper.DEFAULT_CONNECTION_TIMEOUT, null, -1);
             String[] app = retrieveLatestVersion(httpclient, LATEST_URL_APP);
             String[] search = retrieveLatestVersion(httpclient, LATEST_URL_SEARCH);
             int appVersion = Integer.parseInt(app[0].trim());
@@ -34,17 +34,29 @@ import org.transdroid.core.app.settings.NotificationSettings;
 import org.transdroid.core.app.settings.RssfeedSetting;
 import org.transdroid.core.gui.log.Log;
 import org.transdroid.core.gui.rss.RssFeedsActivity_;
-import org.transdroid.core.rssparser.Item;
+import org.transdroid.core.rssparser.NewItems;
+import org.transdroid.core.rssparser.RssFeedCache;
 import org.transdroid.core.rssparser.RssParser;
 import org.transdroid.daemon.util.Collections2;
 
-import java.util.Date;
+import java.util.ArrayList;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @EBean
 public class RssCheckerJobRunner {
 
+    private static final int MAX_PARALLEL_CHECKS = 4;
+    private static final long FEED_CHECK_TIMEOUT = 30 * 1000; // 30 seconds
+
     @RootContext
     protected Context context;
     @Bean
@@ -66,52 +78,43 @@ public class RssCheckerJobRunner {
             return Worker.Result.retry();
         }
 
+        // Retrieve all RSS feeds in parallel, but with a bounded number of simultaneous connections
+        List<FeedCheck> checks = new ArrayList<>();
+        for (RssfeedSetting feed : applicationSettings.getRssfeedSettings()) {
+            if (!feed.shouldAlarmOnNewItems()) {
+                log.d(this, "Skip checker for " + feed.getName() + " as alarms are disabled");
+                continue;
+            }
+            checks.add(new FeedCheck(feed));
+        }
+        if (checks.isEmpty()) {
+            return Worker.Result.success();
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(checks.size(), MAX_PARALLEL_CHECKS));
+        for (FeedCheck check : checks) {
+            check.start(executor);
+        }
+        // No new work will be added; the pool threads end once all checks are done (or cancelled)
+        executor.shutdown();
+
         // Check every RSS feed for new items
         int unread = 0;
         Set<String> hasUnread = new LinkedHashSet<>();
-        for (RssfeedSetting feed : applicationSettings.getRssfeedSettings()) {
-            try {
-
-                if (!feed.shouldAlarmOnNewItems()) {
-                    log.d(this, "Skip checker for " + feed.getName() + " as alarms are disabled");
-                    continue;
-                }
-
-                log.d(this, "Try to parse " + feed.getName() + " (" + feed.getUrl() + ")");
-                RssParser parser = new RssParser(feed.getUrl(), feed.getExcludeFilter(), feed.getIncludeFilter());
-                parser.parse();
-                if (parser.getChannel() == null) {
-                    continue;
-                }
+        for (FeedCheck check : checks) {
 
-                // Find the last item that is newer than the last viewed date
-                boolean usePublishDate = false;
-                if (parser.getChannel().getItems().size() > 0) {
-                    Date pubDate = parser.getChannel().getItems().get(0).getPubdate();
-                    usePublishDate = pubDate != null && pubDate.getTime() > 0;
-                }
-                for (Item item : parser.getChannel().getItems()) {
-                    if (usePublishDate
-                            && item.getPubdate() != null
-                            && item.getPubdate().before(feed.getLastViewed())) {
-                        break;
-                    } else if (!usePublishDate
-                            && item.getTheLink() != null
-                            && feed.getLastViewedItemUrl() != null
-                            && item.getTheLink().equals(feed.getLastViewedItemUrl())) {
-                        break;
-                    } else {
-                        unread++;
-                        hasUnread.add(feed.getName());
-                    }
-                }
+            RssfeedSetting feed = check.feed;
+            NewItems newItems = check.awaitNewItems();
+            if (newItems == null) {
+                // Ignore RSS feeds that could not be retrieved or parsed (in time)
+                continue;
+            }
+            if (newItems.getCount() > 0) {
+                unread += newItems.getCount();
+                hasUnread.add(feed.getName());
+            }
 
-                log.d(this,
-                        feed.getName() + " has " + (hasUnread.contains(feed.getName()) ? "" : "no ") + "unread items");
+            log.d(this, feed.getName() + " has " + (hasUnread.contains(feed.getName()) ? "" : "no ") + "unread items");
 
-            } catch (Exception e) {
-                // Ignore RSS feeds that could not be retrieved or parsed
-            }
         }
 
         if (unread == 0) {
@@ -142,4 +145,76 @@ public class RssCheckerJobRunner {
         return Worker.Result.success();
     }
 
+    /**
+     * Retrieves and parses a single RSS feed on a background thread and allows waiting for it with a deadline, which
+     * starts counting only once the retrieval is actually running (and not while it is still queued).
+     */
+    private class FeedCheck implements Callable<NewItems> {
+
+        private final RssfeedSetting feed;
+        private final RssParser parser;
+        private volatile long startedAt = 0;
+        private Future<NewItems> future;
+
+        FeedCheck(RssfeedSetting feed) {
+            this.feed = feed;
+            this.parser = new RssParser(feed.getUrl(), feed.getExcludeFilter(), feed.getIncludeFilter(),
+                    RssFeedCache.getInstance(context));
+        }
+
+        void start(ExecutorService executor) {
+            this.future = executor.submit(this);
+        }
+
+        @Override
+        public NewItems call() throws Exception {
+            startedAt = System.currentTimeMillis();
+            log.d(RssCheckerJobRunner.this, "Try to parse " + feed.getName() + " (" + feed.getUrl() + ")");
+            // Only the number of new items is needed, so stop reading the feed at the last viewed item
+            NewItems newItems = parser.parseNewItems(feed.getLastViewed(), feed.getLastViewedItemUrl(), 0);
+            log.d(RssCheckerJobRunner.this, feed.getName() + ": Fetched in " + parser.getFetchDuration()
+                    + " ms and parsed in " + parser.getParseDuration() + " ms");
+            return newItems;
+        }
+
+        /**
+         * Waits for the feed to be parsed, but at most FEED_CHECK_TIMEOUT after its retrieval started.
+         *
+         * @return The new items of the feed, or null if the feed could not be checked (in time)
+         */
+        NewItems awaitNewItems() {
+            try {
+                while (true) {
+                    long started = startedAt;
+                    long remaining = started == 0 ? FEED_CHECK_TIMEOUT
+                            : started + FEED_CHECK_TIMEOUT - System.currentTimeMillis();
+                    try {
+                        return future.get(Math.max(remaining, 0), TimeUnit.MILLISECONDS);
+                    } catch (TimeoutException e) {
+                        if (startedAt != 0 && System.currentTimeMillis() - startedAt >= FEED_CHECK_TIMEOUT) {
+                            // Interrupting does not stop a blocking socket read, so abort the connection as well
+                            parser.abort();
+                            future.cancel(true);
+                            log.d(RssCheckerJobRunner.this, feed.getName()
+                                    + ": Skipped, as retrieving the feed took longer than " + FEED_CHECK_TIMEOUT
+                                    + " ms");
+                            return null;
+                        }
+                        // Still queued behind other feeds, or only just started: keep waiting
+                    }
+                }
+            } catch (InterruptedException e) {
+                parser.abort();
+                future.cancel(true);
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                log.d(RssCheckerJobRunner.this, feed.getName() + ": Could not retrieve or parse the feed: "
+                        + e.getCause());
+                return null;
+            }
+        }
+
+    }
+
 }
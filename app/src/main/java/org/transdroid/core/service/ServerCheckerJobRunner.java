@@ -27,12 +27,10 @@ import org.androidannotations.annotations.Bean;
 import org.androidannotations.annotations.EBean;
 import org.androidannotations.annotations.RootContext;
 import org.androidannotations.annotations.SystemService;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 import org.transdroid.R;
 import org.transdroid.core.app.settings.ApplicationSettings;
 import org.transdroid.core.app.settings.NotificationSettings;
+import org.transdroid.core.app.settings.ServerLastStat;
 import org.transdroid.core.app.settings.ServerSetting;
 import org.transdroid.core.gui.TorrentsActivity_;
 import org.transdroid.core.gui.log.Log;
@@ -41,13 +39,28 @@ import org.transdroid.daemon.Torrent;
 import org.transdroid.daemon.task.DaemonTaskResult;
 import org.transdroid.daemon.task.RetrieveTask;
 import org.transdroid.daemon.task.RetrieveTaskSuccessResult;
+import org.transdroid.daemon.util.RequestAborter;
 
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @EBean
 public class ServerCheckerJobRunner {
 
+    private static final int MAX_PARALLEL_CHECKS = 4;
+    private static final long SERVER_CHECK_TIMEOUT = 30 * 1000; // 30 seconds
+    private static final long SERVER_QUEUE_TIMEOUT = 2 * 60 * 1000; // 2 minutes
+
     @RootContext
     protected Context context;
     @Bean
@@ -69,27 +82,49 @@ public class ServerCheckerJobRunner {
             return Worker.Result.retry();
         }
 
-        int notifyBase = 10000;
-        for (ServerSetting server : applicationSettings.getAllServerSettings()) {
+        // Forget the stats of servers that were removed (or changed address) since the last check
+        applicationSettings.removeOrphanedServerLastStats();
 
+        // Start retrieving the torrent listings of all (properly configured) servers concurrently
+        String connectedNetworkName = connectivityHelper.getConnectedNetworkName();
+        List<ServerRetrieval> retrievals = new ArrayList<>();
+        for (ServerSetting server : applicationSettings.getAllServerSettings()) {
             // No need to check if the server is not properly configured or none of the two types of notifications are
             // enabled by the user for this specific server
             if (server.getType() == null || server.getAddress() == null || server.getAddress().equals("")
                     || !(server.shouldAlarmOnFinishedDownload() || server.shouldAlarmOnNewTorrent()))
                 continue;
+            retrievals.add(new ServerRetrieval(server, connectedNetworkName));
+        }
+        if (retrievals.isEmpty()) {
+            return Worker.Result.success();
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(retrievals.size(), MAX_PARALLEL_CHECKS));
+        for (ServerRetrieval retrieval : retrievals) {
+            retrieval.start(executor);
+        }
+        // No new work will be added; the pool threads end once all retrievals are done (or cancelled)
+        executor.shutdown();
 
-            // Get the statistics for the last time we checked this server
-            JSONArray lastStats = applicationSettings.getServerLastStats(server);
+        int notifyBase = 10000;
+        for (ServerRetrieval retrieval : retrievals) {
 
-            // Synchronously retrieve torrents listing
-            IDaemonAdapter adapter = server.getServerAdapter(connectivityHelper.getConnectedNetworkName(), context);
-            DaemonTaskResult result = RetrieveTask.create(adapter).execute(log);
-            if (!(result instanceof RetrieveTaskSuccessResult)) {
+            ServerSetting server = retrieval.server;
+            List<Torrent> retrieved = retrieval.awaitTorrents();
+            if (retrieved == null) {
                 // Cannot retrieve torrents at this time
                 continue;
             }
-            List<Torrent> retrieved = ((RetrieveTaskSuccessResult) result).getTorrents();
-            log.d(this, server.getName() + ": Retrieved torrent listing");
+
+            // Get the statistics for the last time we checked this server
+            Map<String, ServerLastStat> lastStats;
+            try {
+                lastStats = applicationSettings.getServerLastStats(server);
+            } catch (SQLException e) {
+                // Without the last stats every torrent would seem new; skip this server until they can be read again
+                log.e(this, "Cannot read the last stats of " + server.getName() + ": " + e.toString());
+                continue;
+            }
 
             // Preload filters to match torrent names
             String[] excludeFilters = null;
@@ -108,22 +143,19 @@ public class ServerCheckerJobRunner {
             }
 
             // Check for differences between the last and the current stats
-            JSONArray currentStats = new JSONArray();
+            Map<String, ServerLastStat> currentStats = new HashMap<>(retrieved.size() * 2);
             List<Torrent> newTorrents = new ArrayList<>();
             List<Torrent> doneTorrents = new ArrayList<>();
             for (Torrent torrent : retrieved) {
 
                 // Remember this torrent for the next time
-                try {
-                    currentStats.put(new JSONObject().put("id", torrent.getUniqueID()).put("done",
-                            torrent.getPartDone() == 1F));
-                } catch (JSONException e) {
-                    // Can't build the JSON object; this should not happen and we can safely ignore it
-                }
+                currentStats.put(torrent.getUniqueID(), new ServerLastStat(server.getUniqueIdentifier(),
+                        torrent.getUniqueID(), torrent.getPartDone() == 1F, torrent.getPartDone()));
 
                 // See if this torrent was done the last time we checked
                 if (lastStats != null) {
-                    Boolean wasDone = findLastDoneStat(lastStats, torrent);
+                    ServerLastStat lastStat = lastStats.get(torrent.getUniqueID());
+                    Boolean wasDone = lastStat == null ? null : lastStat.isDone();
                     boolean shouldNotify = matchFilters(torrent.getName(), excludeFilters, includeFilters);
                     if (server.shouldAlarmOnNewTorrent() && shouldNotify && wasDone == null) {
                         // This torrent wasn't present earlier
@@ -138,7 +170,12 @@ public class ServerCheckerJobRunner {
             }
 
             // Store the now-current statistics on torrents for the next time we check this server
-            applicationSettings.setServerLastStats(server, currentStats);
+            try {
+                applicationSettings.setServerLastStats(server, lastStats, currentStats);
+            } catch (SQLException e) {
+                // The last stats are kept as they were, so the same changes are seen (and notified) again next time
+                log.e(this, "Cannot store the last stats of " + server.getName() + ": " + e.toString());
+            }
 
             // Notify on new and now-done torrents for this server
             log.d(this, server.getName() + ": " + newTorrents.size() + " new torrents, " + doneTorrents.size()
@@ -210,16 +247,102 @@ public class ServerCheckerJobRunner {
         return Worker.Result.success();
     }
 
-    private Boolean findLastDoneStat(JSONArray lastStats, Torrent torrent) {
-        for (int i = 0; i < lastStats.length(); i++) {
+    /**
+     * Retrieves the torrents listing of a single server on a background thread and allows waiting for it with a
+     * deadline, which starts counting once the retrieval is actually running. A retrieval that is still queued behind
+     * other servers has a separate deadline, counted from its submission.
+     */
+    private class ServerRetrieval implements Callable<List<Torrent>> {
+
+        private final ServerSetting server;
+        private final String connectedNetworkName;
+        private final RequestAborter aborter = new RequestAborter();
+        private volatile long startedAt = 0;
+        private long submittedAt;
+        private Future<List<Torrent>> future;
+
+        ServerRetrieval(ServerSetting server, String connectedNetworkName) {
+            this.server = server;
+            this.connectedNetworkName = connectedNetworkName;
+        }
+
+        void start(ExecutorService executor) {
+            this.submittedAt = System.currentTimeMillis();
+            this.future = executor.submit(this);
+        }
+
+        @Override
+        public List<Torrent> call() {
+            startedAt = System.currentTimeMillis();
+            DaemonTaskResult result;
+            aborter.begin();
             try {
-                if (lastStats.getJSONObject(i).getString("id").equals(torrent.getUniqueID()))
-                    return lastStats.getJSONObject(i).getBoolean("done");
-            } catch (JSONException e) {
+                IDaemonAdapter adapter = server.getServerAdapter(connectedNetworkName, context);
+                result = RetrieveTask.create(adapter).execute(log);
+            } finally {
+                aborter.end();
+            }
+            long duration = System.currentTimeMillis() - startedAt;
+            if (!(result instanceof RetrieveTaskSuccessResult)) {
+                log.d(ServerCheckerJobRunner.this, server.getName() + ": Failed to retrieve torrent listing after "
+                        + duration + " ms: " + result.toString());
                 return null;
             }
+            List<Torrent> retrieved = ((RetrieveTaskSuccessResult) result).getTorrents();
+            log.d(ServerCheckerJobRunner.this, server.getName() + ": Retrieved torrent listing of " + retrieved.size()
+                    + " torrents in " + duration + " ms");
+            return retrieved;
         }
-        return null;
+
+        /**
+         * Waits for the retrieval to finish, but at most SERVER_CHECK_TIMEOUT after it started running and at most
+         * SERVER_QUEUE_TIMEOUT after it was submitted if it did not start yet.
+         *
+         * @return The retrieved torrents, or null if the server could not be checked (in time)
+         */
+        List<Torrent> awaitTorrents() {
+            try {
+                while (true) {
+                    long started = startedAt;
+                    long deadline = started == 0 ? submittedAt + SERVER_QUEUE_TIMEOUT : started + SERVER_CHECK_TIMEOUT;
+                    try {
+                        return future.get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+                    } catch (TimeoutException e) {
+                        if (startedAt != started) {
+                            // Only just started running: its own deadline applies from now on
+                            continue;
+                        }
+                        stop();
+                        if (started == 0) {
+                            log.d(ServerCheckerJobRunner.this, server.getName()
+                                    + ": Skipped, as it was queued behind other servers for longer than "
+                                    + SERVER_QUEUE_TIMEOUT + " ms");
+                        } else {
+                            log.d(ServerCheckerJobRunner.this, server.getName()
+                                    + ": Skipped, as retrieving the torrent listing took longer than "
+                                    + SERVER_CHECK_TIMEOUT + " ms");
+                        }
+                        return null;
+                    }
+                }
+            } catch (InterruptedException e) {
+                stop();
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                log.e(ServerCheckerJobRunner.this, server.getName() + ": Error while retrieving torrent listing: "
+                        + e.getCause());
+                return null;
+            }
+        }
+
+        private void stop() {
+            // Interrupting does not stop a blocking socket read, so abort the requests as well, which frees the pool
+            // thread for the servers that are still queued
+            aborter.abort();
+            future.cancel(true);
+        }
+
     }
 
     private boolean matchFilters(String name, String[] excludeFilters, String[] includeFilters) {
@@ -61,7 +61,6 @@ import org.transdroid.daemon.task.RetrieveTaskSuccessResult;
 import org.transdroid.daemon.util.FileSizeConverter;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 @EActivity(resName = "activity_widgetconfig")
@@ -255,7 +254,7 @@ public class ListWidgetConfigActivity extends AppCompatActivity {
         }
         TorrentsSortBy sortBy = ((SortByListItem) sortSpinner.getSelectedItem()).getSortBy();
         Daemon serverType = filteredTorrents.get(0).getDaemon();
-        Collections.sort(filteredTorrents, new TorrentsComparator(serverType, sortBy, reverseorderCheckBox.isChecked()));
+        new TorrentsComparator(serverType, sortBy, reverseorderCheckBox.isChecked()).sort(filteredTorrents);
 
         // Update the server status count and speeds
         int downcount = 0, upcount = 0, downspeed = 0, upspeed = 0;
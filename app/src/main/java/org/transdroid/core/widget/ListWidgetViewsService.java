@@ -32,6 +32,7 @@ import org.transdroid.core.app.settings.ServerSetting;
 import org.transdroid.core.app.settings.SystemSettings;
 import org.transdroid.core.app.settings.SystemSettings_;
 import org.transdroid.core.gui.lists.LocalTorrent;
+import org.transdroid.core.gui.lists.TorrentListCache;
 import org.transdroid.core.gui.log.Log;
 import org.transdroid.core.gui.log.Log_;
 import org.transdroid.core.service.ConnectivityHelper_;
@@ -45,7 +46,6 @@ import org.transdroid.daemon.task.RetrieveTaskSuccessResult;
 import org.transdroid.daemon.util.FileSizeConverter;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 /**
@@ -109,19 +109,28 @@ class WidgetViewsFactory implements RemoteViewsService.RemoteViewsFactory {
                 server.getServerAdapter(ConnectivityHelper_.getInstance_(context).getConnectedNetworkName(),
                         context);
         DaemonTaskResult result = RetrieveTask.create(connection).execute(log);
-        if (!(result instanceof RetrieveTaskSuccessResult)) {
+        List<Torrent> allTorrents;
+        if (result instanceof RetrieveTaskSuccessResult) {
+            allTorrents = ((RetrieveTaskSuccessResult) result).getTorrents();
+            TorrentListCache.getInstance(context)
+                    .put(server, allTorrents, ((RetrieveTaskSuccessResult) result).getLabels());
+        } else {
             // TODO: Show error text somehow in the remote view, perhaps via the EmptyView's text?
             log.e(context, "The torrents could not be retrieved at this time; probably a connection issue");
-            if (torrents != null) {
-                torrents.clear();
+            // Show the torrents as they were last retrieved instead, if we have them
+            TorrentListCache.Snapshot snapshot = TorrentListCache.getInstance(context).get(server);
+            if (snapshot == null) {
+                if (torrents != null) {
+                    torrents.clear();
+                }
+                return;
             }
-            return;
+            allTorrents = snapshot.getTorrents();
         }
 
         // We have data; filter, sort and store it to use later when getViewAt gets called
         SystemSettings systemSettings = SystemSettings_.getInstance_(context);
         ArrayList<Torrent> filteredTorrents = new ArrayList<>();
-        List<Torrent> allTorrents = ((RetrieveTaskSuccessResult) result).getTorrents();
         for (Torrent torrent : allTorrents) {
             if (config.getStatusType().getFilterItem(context)
                     .matches(torrent, systemSettings.treatDormantAsInactive())) {
@@ -131,8 +140,7 @@ class WidgetViewsFactory implements RemoteViewsService.RemoteViewsFactory {
         if (filteredTorrents.size() > 0) {
             // Only sort when there are actually torrents left after filtering
             Daemon serverType = filteredTorrents.get(0).getDaemon();
-            Collections.sort(filteredTorrents,
-                    new TorrentsComparator(serverType, config.getSortBy(), config.shouldReserveSort()));
+            new TorrentsComparator(serverType, config.getSortBy(), config.shouldReserveSort()).sort(filteredTorrents);
         }
         torrents = filteredTorrents;
 
@@ -17,6 +17,8 @@
  */
 package org.transdroid.daemon;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -32,6 +34,14 @@ public class DaemonFactory {
 
         //If there is no adapter or the settings have changed, generate a new instance
         if(daemonAdapter == null || !daemonSettings.equals(settingsMap.get(idString))) {
+            if (daemonAdapter instanceof Closeable) {
+                // Release the connection that the discarded adapter holds on to
+                try {
+                    ((Closeable) daemonAdapter).close();
+                } catch (IOException e) {
+                    // Ignore; the adapter is no longer used
+                }
+            }
             daemonAdapter = daemonSettings.getType().createAdapter(daemonSettings);
             adapterMap.put(idString, daemonAdapter);
             settingsMap.put(idString, daemonSettings);
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2010-2024 Eric Kok et al.
+ *
+ * Transdroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Transdroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.transdroid.daemon;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import java.util.Arrays;
+
+/**
+ * The download state of every piece of a torrent, packed as 2 bits per piece such that torrents with many (100k+)
+ * pieces only take a few KB. Instances are immutable; adapters decode the server response into a {@link Builder}.
+ */
+public final class PieceStates implements Parcelable {
+
+    public static final int NOT_DOWNLOADED = 0;
+    public static final int DOWNLOADING = 1;
+    public static final int DOWNLOADED = 2;
+
+    public static final PieceStates EMPTY = new PieceStates(new byte[0], 0);
+
+    public static final Parcelable.Creator<PieceStates> CREATOR = new Parcelable.Creator<PieceStates>() {
+        public PieceStates createFromParcel(Parcel in) {
+            int size = in.readInt();
+            return new PieceStates(in.createByteArray(), size);
+        }
+
+        public PieceStates[] newArray(int size) {
+            return new PieceStates[size];
+        }
+    };
+
+    private static final int PIECES_PER_BYTE = 4;
+    private static final int STATE_MASK = 0x3;
+
+    private final byte[] packed;
+    private final int size;
+
+    private PieceStates(byte[] packed, int size) {
+        this.packed = packed;
+        this.size = size;
+    }
+
+    /**
+     * Returns the number of pieces of the torrent.
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the state of a single piece.
+     *
+     * @param index The index of the piece, from 0 to size() - 1
+     * @return One of {@link #NOT_DOWNLOADED}, {@link #DOWNLOADING} or {@link #DOWNLOADED}
+     */
+    public int get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Piece " + index + " of " + size);
+        }
+        return (packed[index / PIECES_PER_BYTE] >> ((index % PIECES_PER_BYTE) * 2)) & STATE_MASK;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeInt(size);
+        dest.writeByteArray(packed);
+    }
+
+    /**
+     * Collects piece states in piece order, without knowing the number of pieces up front.
+     */
+    public static final class Builder {
+
+        private byte[] packed;
+        private int size = 0;
+
+        public Builder() {
+            this(1024);
+        }
+
+        /**
+         * @param expectedSize The expected number of pieces, used to size the initial buffer
+         */
+        public Builder(int expectedSize) {
+            packed = new byte[Math.max(1, (expectedSize + PIECES_PER_BYTE - 1) / PIECES_PER_BYTE)];
+        }
+
+        /**
+         * Appends the state of the next piece. Unknown states are stored as {@link #NOT_DOWNLOADED}.
+         */
+        public Builder add(int state) {
+            if (size / PIECES_PER_BYTE == packed.length) {
+                packed = Arrays.copyOf(packed, packed.length * 2);
+            }
+            if (state == DOWNLOADING || state == DOWNLOADED) {
+                packed[size / PIECES_PER_BYTE] |= (byte) (state << ((size % PIECES_PER_BYTE) * 2));
+            }
+            size++;
+            return this;
+        }
+
+        public PieceStates build() {
+            if (size == 0) {
+                return EMPTY;
+            }
+            return new PieceStates(Arrays.copyOf(packed, (size + PIECES_PER_BYTE - 1) / PIECES_PER_BYTE), size);
+        }
+
+    }
+
+}
@@ -147,6 +147,36 @@ public final class Torrent implements Parcelable, Comparable<Torrent>, Finishabl
         this.daemon = daemon;
     }
 
+    private Torrent(Torrent other) {
+        this.id = other.id;
+        this.hash = other.hash;
+        this.name = other.name;
+        this.statusCode = other.statusCode;
+        this.locationDir = other.locationDir;
+
+        this.rateDownload = other.rateDownload;
+        this.rateUpload = other.rateUpload;
+        this.seedersConnected = other.seedersConnected;
+        this.seedersKnown = other.seedersKnown;
+        this.leechersConnected = other.leechersConnected;
+        this.leechersKnown = other.leechersKnown;
+        this.eta = other.eta;
+
+        this.downloadedEver = other.downloadedEver;
+        this.uploadedEver = other.uploadedEver;
+        this.totalSize = other.totalSize;
+        this.partDone = other.partDone;
+        this.available = other.available;
+        this.label = other.label;
+        this.sequentialDownload = other.sequentialDownload;
+        this.firstLastPieceDownload = other.firstLastPieceDownload;
+
+        this.dateAdded = other.dateAdded;
+        this.dateDone = other.dateDone;
+        this.error = other.error;
+        this.daemon = other.daemon;
+    }
+
     Torrent(Builder builder) {
         this.id = builder.id;
         this.hash = builder.hash;
@@ -195,6 +225,19 @@ public final class Torrent implements Parcelable, Comparable<Torrent>, Finishabl
 
     }
 
+    /**
+     * Returns a copy of this torrent, which can be changed (through the mimic methods) without affecting this one.
+     *
+     * @return A new torrent object with the same properties
+     */
+    public Torrent copy() {
+        return new Torrent(this);
+    }
+
+    public long getId() {
+        return id;
+    }
+
     public String getName() {
         return name;
     }
@@ -283,6 +326,15 @@ public final class Torrent implements Parcelable, Comparable<Torrent>, Finishabl
         return daemon;
     }
 
+    /**
+     * Returns the torrent's hash, as supplied by the server daemon
+     *
+     * @return The hash, or null if the daemon does not supply one (in which case only the id identifies the torrent)
+     */
+    public String getHash() {
+        return hash;
+    }
+
     /**
      * Returns the torrent-specific ID, which is the torrent's hash or (if not available) the long number
      *
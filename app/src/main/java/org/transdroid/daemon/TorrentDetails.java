@@ -20,7 +20,6 @@ package org.transdroid.daemon;
 import android.os.Parcel;
 import android.os.Parcelable;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -41,15 +40,15 @@ public final class TorrentDetails implements Parcelable {
     };
     private final List<String> trackers;
     private final List<String> errors;
-    private final List<Integer> pieces;
+    private final PieceStates pieces;
 
     public TorrentDetails(List<String> trackers, List<String> errors) {
         this.trackers = trackers;
         this.errors = errors;
-        this.pieces = new ArrayList<>();
+        this.pieces = PieceStates.EMPTY;
     }
 
-    public TorrentDetails(List<String> trackers, List<String> errors, List<Integer> pieces) {
+    public TorrentDetails(List<String> trackers, List<String> errors, PieceStates pieces) {
         this.trackers = trackers;
         this.errors = errors;
         this.pieces = pieces;
@@ -58,12 +57,7 @@ public final class TorrentDetails implements Parcelable {
     private TorrentDetails(Parcel in) {
         this.trackers = in.createStringArrayList();
         this.errors = in.createStringArrayList();
-
-        int[] piecesarray = in.createIntArray();
-        this.pieces = new ArrayList<>(piecesarray.length);
-        for (int i : piecesarray) {
-            this.pieces.add(i);
-        }
+        this.pieces = PieceStates.CREATOR.createFromParcel(in);
     }
 
     public List<String> getTrackers() {
@@ -102,7 +96,7 @@ public final class TorrentDetails implements Parcelable {
         return errorsText.toString();
     }
 
-    public List<Integer> getPieces() {
+    public PieceStates getPieces() {
         return this.pieces;
     }
 
@@ -115,14 +109,7 @@ public final class TorrentDetails implements Parcelable {
     public void writeToParcel(Parcel dest, int flags) {
         dest.writeStringList(trackers);
         dest.writeStringList(errors);
-
-        int[] piecesarray = new int[this.pieces.size()];
-        for (int i = 0; i < this.pieces.size(); i++) {
-            if (this.pieces.get(i) != null) {
-                piecesarray[i] = this.pieces.get(i);
-            }
-        }
-        dest.writeIntArray(piecesarray);
+        pieces.writeToParcel(dest, flags);
     }
 
 }
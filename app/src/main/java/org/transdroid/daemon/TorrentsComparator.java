@@ -18,6 +18,10 @@
 package org.transdroid.daemon;
 
 import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 /**
  * Implements a comparator for Torrent objects, which can for example be used to sort torrent on several
@@ -27,9 +31,17 @@ import java.util.Comparator;
  */
 public class TorrentsComparator implements Comparator<Torrent> {
 
+    private static final int MAX_CACHED_NAME_KEYS = 8192;
+    // The alphanumeric sort keys of recently sorted torrent names, in least-recently used order
+    private static final Map<String, NameKey> nameKeys = new LinkedHashMap<String, NameKey>(256, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, NameKey> eldest) {
+            return size() > MAX_CACHED_NAME_KEYS;
+        }
+    };
+
     private TorrentsSortBy sortBy;
     private boolean reversed;
-    private Comparator<String> alphanumComparator = new AlphanumComparator();
 
     /**
      * Instantiate a torrents comparator. The daemon type is used to check support for comparing on the set property. If
@@ -77,7 +89,7 @@ public class TorrentsComparator implements Comparator<Torrent> {
                 case Size:
                     return Double.compare(tor1.getTotalSize(), (double) tor2.getTotalSize());
                 default:
-                    return alphanumComparator.compare(tor1.getName().toLowerCase(), tor2.getName().toLowerCase());
+                    return nameKey(tor1.getName()).compareTo(nameKey(tor2.getName()));
             }
         } else {
             switch (sortBy) {
@@ -102,9 +114,215 @@ public class TorrentsComparator implements Comparator<Torrent> {
                 case Size:
                     return -Double.compare(tor1.getTotalSize(), (double) tor2.getTotalSize());
                 default:
-                    return -alphanumComparator.compare(tor1.getName().toLowerCase(), tor2.getName().toLowerCase());
+                    return -nameKey(tor1.getName()).compareTo(nameKey(tor2.getName()));
             }
         }
     }
 
+    /**
+     * Sorts a list of torrents in the same (stable) order as a sort using this comparator would. The sort key of every
+     * torrent is computed only once, after which an index is sorted by comparing these keys only. Lists that are mostly
+     * in order already are sorted in about linear time.
+     *
+     * @param torrents The list of torrents to sort in place
+     */
+    public void sort(List<Torrent> torrents) {
+        int size = torrents.size();
+        if (size < 2) {
+            return;
+        }
+        Torrent[] items = torrents.toArray(new Torrent[size]);
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        new KeySort(items).sort(order, new int[size], 0, size);
+        for (int i = 0; i < size; i++) {
+            torrents.set(i, items[order[i]]);
+        }
+    }
+
+    private static NameKey nameKey(String name) {
+        synchronized (nameKeys) {
+            NameKey key = nameKeys.get(name);
+            if (key == null) {
+                key = new NameKey(name);
+                nameKeys.put(name, key);
+            }
+            return key;
+        }
+    }
+
+    /**
+     * Sorts torrent indexes on the precomputed numeric or name sort keys of the torrents.
+     */
+    private class KeySort {
+
+        // Ranges this small are insertion sorted, which is faster than merging them
+        private static final int INSERTION_SORT_THRESHOLD = 16;
+
+        private final long[] keys;
+        private final NameKey[] names;
+
+        KeySort(Torrent[] items) {
+            int size = items.length;
+            if (sortBy == TorrentsSortBy.Alphanumeric) {
+                keys = null;
+                names = new NameKey[size];
+                for (int i = 0; i < size; i++) {
+                    names[i] = nameKey(items[i].getName());
+                }
+                return;
+            }
+            keys = new long[size];
+            names = null;
+            for (int i = 0; i < size; i++) {
+                Torrent torrent = items[i];
+                switch (sortBy) {
+                    case Status:
+                        keys[i] = torrent.getStatusCode().getCode();
+                        break;
+                    case DateAdded:
+                        // Torrents without a date go first (or last when reversed)
+                        keys[i] = torrent.getDateAdded() == null ? Long.MIN_VALUE : torrent.getDateAdded().getTime();
+                        break;
+                    case DateDone:
+                        keys[i] = torrent.getDateDone() == null ? Long.MIN_VALUE : torrent.getDateDone().getTime();
+                        break;
+                    case Percent:
+                        keys[i] = sortable(torrent.getDownloadedPercentage());
+                        break;
+                    case DownloadSpeed:
+                        keys[i] = torrent.getRateDownload();
+                        break;
+                    case UploadSpeed:
+                        keys[i] = torrent.getRateUpload();
+                        break;
+                    case Ratio:
+                        keys[i] = sortable(torrent.getRatio());
+                        break;
+                    case Size:
+                        keys[i] = torrent.getTotalSize();
+                        break;
+                }
+            }
+        }
+
+        /**
+         * Maps a double to a long that orders the same as Double.compare would.
+         */
+        private long sortable(double value) {
+            long bits = Double.doubleToLongBits(value);
+            return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+        }
+
+        private int compare(int index1, int index2) {
+            int result = keys != null ? Long.compare(keys[index1], keys[index2]) : names[index1].compareTo(names[index2]);
+            return reversed ? -result : result;
+        }
+
+        /**
+         * Stable merge sort of the indexes in the given range.
+         */
+        void sort(int[] order, int[] buffer, int from, int to) {
+            if (to - from <= INSERTION_SORT_THRESHOLD) {
+                for (int i = from + 1; i < to; i++) {
+                    int index = order[i];
+                    int j = i;
+                    while (j > from && compare(order[j - 1], index) > 0) {
+                        order[j] = order[j - 1];
+                        j--;
+                    }
+                    order[j] = index;
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            sort(order, buffer, from, middle);
+            sort(order, buffer, middle, to);
+            if (compare(order[middle - 1], order[middle]) <= 0) {
+                // Both halves are in order already
+                return;
+            }
+            System.arraycopy(order, from, buffer, from, to - from);
+            int left = from, right = middle;
+            for (int i = from; i < to; i++) {
+                if (right >= to || (left < middle && compare(buffer[left], buffer[right]) <= 0)) {
+                    order[i] = buffer[left++];
+                } else {
+                    order[i] = buffer[right++];
+                }
+            }
+        }
+
+    }
+
+    /**
+     * The lower case torrent name, split once in chunks of digits and non-digits, to be compared like the
+     * AlphanumComparator does.
+     */
+    private static final class NameKey implements Comparable<NameKey> {
+
+        private final String[] chunks;
+        private final boolean[] numeric;
+        private final int length;
+
+        NameKey(String name) {
+            String lower = name.toLowerCase(Locale.getDefault());
+            length = lower.length();
+            int count = 0;
+            for (int i = 0; i < length; i++) {
+                if (i == 0 || isDigit(lower.charAt(i)) != isDigit(lower.charAt(i - 1))) {
+                    count++;
+                }
+            }
+            chunks = new String[count];
+            numeric = new boolean[count];
+            int start = 0;
+            for (int c = 0; c < count; c++) {
+                boolean digits = isDigit(lower.charAt(start));
+                int end = start + 1;
+                while (end < length && isDigit(lower.charAt(end)) == digits) {
+                    end++;
+                }
+                chunks[c] = lower.substring(start, end);
+                numeric[c] = digits;
+                start = end;
+            }
+        }
+
+        private static boolean isDigit(char ch) {
+            return ch >= '0' && ch <= '9';
+        }
+
+        @Override
+        public int compareTo(NameKey other) {
+            int count = Math.min(chunks.length, other.chunks.length);
+            for (int c = 0; c < count; c++) {
+                String thisChunk = chunks[c];
+                String thatChunk = other.chunks[c];
+                int result;
+                if (numeric[c] && other.numeric[c]) {
+                    // Numeric chunks: the longer number is larger, otherwise the first different digit counts
+                    result = thisChunk.length() - thatChunk.length();
+                    if (result == 0) {
+                        for (int i = 0; i < thisChunk.length(); i++) {
+                            result = thisChunk.charAt(i) - thatChunk.charAt(i);
+                            if (result != 0) {
+                                return result;
+                            }
+                        }
+                    }
+                } else {
+                    result = thisChunk.compareTo(thatChunk);
+                }
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return length - other.length;
+        }
+
+    }
+
 }
@@ -57,7 +57,9 @@ import org.transdroid.daemon.task.RetrieveTask;
 import org.transdroid.daemon.task.RetrieveTaskSuccessResult;
 import org.transdroid.daemon.task.SetTransferRatesTask;
 import org.transdroid.daemon.util.HttpHelper;
+import org.transdroid.daemon.util.JsonStreamHelper;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -78,17 +80,24 @@ public class Aria2Adapter implements IDaemonAdapter {
     private static final String LOG_NAME = "Aria2 daemon";
 
     private DaemonSettings settings;
-    private DefaultHttpClient httpclient;
+    private volatile DefaultHttpClient httpclient;
 
     public Aria2Adapter(DaemonSettings settings) {
         this.settings = settings;
     }
 
-    private synchronized void initialise() throws DaemonException {
-        if (httpclient == null) {
-            httpclient = HttpHelper.createStandardHttpClient(settings, !TextUtils.isEmpty(settings.getUsername()));
-            httpclient.addRequestInterceptor(HttpHelper.gzipRequestInterceptor);
-            httpclient.addResponseInterceptor(HttpHelper.gzipResponseInterceptor);
+    private void initialise() throws DaemonException {
+        if (httpclient != null) {
+            return;
+        }
+        synchronized (this) {
+            if (httpclient == null) {
+                DefaultHttpClient client =
+                        HttpHelper.createStandardHttpClient(settings, !TextUtils.isEmpty(settings.getUsername()));
+                client.addRequestInterceptor(HttpHelper.gzipRequestInterceptor);
+                client.addResponseInterceptor(HttpHelper.gzipResponseInterceptor);
+                httpclient = client;
+            }
         }
     }
 
@@ -114,11 +123,29 @@ public class Aria2Adapter implements IDaemonAdapter {
                             buildRequest("aria2.tellStopped", new JSONArray().put(0).put(9999).put(fields));
                     params.put(active).put(waiting).put(stopped);
 
-                    List<Torrent> torrents = new ArrayList<>();
-                    JSONArray lists = makeRequestForArray(log, params.toString());
-                    for (int i = 0; i < lists.length(); i++) {
-                        torrents.addAll(parseJsonRetrieveTorrents(lists.getJSONObject(i).getJSONArray("result")));
-                    }
+                    // Stream the batch response, mapping every torrent as soon as it is read
+                    final List<Torrent> torrents = new ArrayList<>();
+                    makeStreamingRequest(log, params.toString(), reader -> {
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            reader.beginObject();
+                            while (reader.hasNext()) {
+                                String name = reader.nextName();
+                                if (name.equals("result")) {
+                                    JsonStreamHelper.readRecords(reader,
+                                            (key, tor) -> torrents.add(parseJsonRetrieveTorrent(torrents.size(), tor)));
+                                } else if (name.equals("error")) {
+                                    throw new DaemonException(ExceptionType.UnexpectedResponse,
+                                            String.valueOf(JsonStreamHelper.readValue(reader)));
+                                } else {
+                                    reader.skipValue();
+                                }
+                            }
+                            reader.endObject();
+                        }
+                        reader.endArray();
+                        return null;
+                    });
                     return new RetrieveTaskSuccessResult((RetrieveTask) task, torrents, null);
 
                 case GetTorrentDetails:
@@ -144,8 +171,8 @@ public class Aria2Adapter implements IDaemonAdapter {
 
                     // Encode the .torrent file's data
                     String file = ((AddByFileTask) task).getFile();
-                    InputStream in =
-                            new Base64.InputStream(new FileInputStream(new File(URI.create(file))), Base64.ENCODE);
+                    InputStream in = new Base64.InputStream(
+                            new BufferedInputStream(new FileInputStream(new File(URI.create(file)))), Base64.ENCODE);
                     StringWriter writer = new StringWriter();
                     int c;
                     while ((c = in.read()) != -1) {
@@ -265,7 +292,7 @@ public class Aria2Adapter implements IDaemonAdapter {
 
     }
 
-    private synchronized JSONObject makeRequest(Log log, String data) throws DaemonException {
+    private JSONObject makeRequest(Log log, String data) throws DaemonException {
         String raw = makeRawRequest(log, data);
         try {
             return new JSONObject(raw);
@@ -275,17 +302,45 @@ public class Aria2Adapter implements IDaemonAdapter {
         }
     }
 
-    private synchronized JSONArray makeRequestForArray(Log log, String data) throws DaemonException {
-        String raw = makeRawRequest(log, data);
+    private <T> T makeStreamingRequest(Log log, String data, JsonStreamHelper.DocumentReader<T> documentReader)
+            throws DaemonException {
         try {
-            return new JSONArray(raw);
-        } catch (JSONException e) {
+            return JsonStreamHelper.read(executeRequest(log, data).getContent(), documentReader);
+        } catch (DaemonException e) {
             log.d(LOG_NAME, "Error: " + e.toString());
-            throw new DaemonException(ExceptionType.UnexpectedResponse, e.toString());
+            throw e;
+        } catch (IOException e) {
+            log.d(LOG_NAME, "Error: " + e.toString());
+            throw new DaemonException(ExceptionType.ConnectionError, e.toString());
         }
     }
 
-    private synchronized String makeRawRequest(Log log, String data) throws DaemonException {
+    private String makeRawRequest(Log log, String data) throws DaemonException {
+
+        try {
+
+            // Read JSON response
+            InputStream instream = executeRequest(log, data).getContent();
+            String result = HttpHelper.convertStreamToString(instream);
+            instream.close();
+
+            log.d(LOG_NAME, "Success: " +
+                    (result.length() > 300 ? result.substring(0, 300) + "... (" + result.length() + " chars)" :
+                            result));
+            return result;
+
+        } catch (IOException e) {
+            log.d(LOG_NAME, "Error: " + e.toString());
+            throw new DaemonException(ExceptionType.ConnectionError, e.toString());
+        }
+
+    }
+
+    /**
+     * Executes an RPC request and returns the (non-null) entity of the HTTP response, of which the content is not read
+     * yet. The adapter holds no session state, so requests may execute concurrently.
+     */
+    private HttpEntity executeRequest(Log log, String data) throws DaemonException {
 
         try {
             // Initialise the HTTP client
@@ -307,16 +362,7 @@ public class Aria2Adapter implements IDaemonAdapter {
             if (entity == null) {
                 throw new DaemonException(ExceptionType.UnexpectedResponse, "No HTTP entity in response object.");
             }
-
-            // Read JSON response
-            InputStream instream = entity.getContent();
-            String result = HttpHelper.convertStreamToString(instream);
-            instream.close();
-
-            log.d(LOG_NAME, "Success: " +
-                    (result.length() > 300 ? result.substring(0, 300) + "... (" + result.length() + " chars)" :
-                            result));
-            return result;
+            return entity;
 
         } catch (Exception e) {
             log.d(LOG_NAME, "Error: " + e.toString());
@@ -325,70 +371,62 @@ public class Aria2Adapter implements IDaemonAdapter {
 
     }
 
-    private ArrayList<Torrent> parseJsonRetrieveTorrents(JSONArray response) throws JSONException {
-
-        // Parse response
-        ArrayList<Torrent> torrents = new ArrayList<>();
-        for (int j = 0; j < response.length(); j++) {
-
-            // Add the parsed torrent to the list
-            JSONObject tor = response.getJSONObject(j);
-            int downloadSpeed = tor.getInt("downloadSpeed");
-            long totalLength = tor.getLong("totalLength");
-            long completedLength = tor.getLong("completedLength");
-            int numSeeders = tor.has("numSeeders") ? tor.getInt("numSeeders") : 0;
-            TorrentStatus status = convertAriaState(tor.getString("status"), completedLength == totalLength);
-            int errorCode = tor.optInt("errorCode", 0);
-            String error = errorCode > 0 ? convertAriaError(errorCode) : null;
-            String name = null;
-            JSONObject bittorrent;
-            if (tor.has("bittorrent")) {
-                // Get name form the bittorrent info object
-                bittorrent = tor.getJSONObject("bittorrent");
-                if (bittorrent.has("info")) {
-                    name = bittorrent.getJSONObject("info").getString("name");
-                }
-            } else if (tor.has("files")) {
-                // Get name from the first included file we can find
-                JSONArray files = tor.getJSONArray("files");
-                if (files.length() > 0) {
-                    name = Uri.parse(files.getJSONObject(0).getString("path")).getLastPathSegment();
-                    if (name == null) {
-                        name = files.getJSONObject(0).getString("path");
-                    }
-                }
+    private Torrent parseJsonRetrieveTorrent(int id, JSONObject tor) throws JSONException {
+
+        // Parse a single torrent
+        int downloadSpeed = tor.getInt("downloadSpeed");
+        long totalLength = tor.getLong("totalLength");
+        long completedLength = tor.getLong("completedLength");
+        int numSeeders = tor.has("numSeeders") ? tor.getInt("numSeeders") : 0;
+        TorrentStatus status = convertAriaState(tor.getString("status"), completedLength == totalLength);
+        int errorCode = tor.optInt("errorCode", 0);
+        String error = errorCode > 0 ? convertAriaError(errorCode) : null;
+        String name = null;
+        JSONObject bittorrent;
+        if (tor.has("bittorrent")) {
+            // Get name form the bittorrent info object
+            bittorrent = tor.getJSONObject("bittorrent");
+            if (bittorrent.has("info")) {
+                name = bittorrent.getJSONObject("info").getString("name");
             }
-            if (name == null) {
-                name = tor.getString("gid"); // Fallback name
+        } else if (tor.has("files")) {
+            // Get name from the first included file we can find
+            JSONArray files = tor.getJSONArray("files");
+            if (files.length() > 0) {
+                name = Uri.parse(files.getJSONObject(0).getString("path")).getLastPathSegment();
+                if (name == null) {
+                    name = files.getJSONObject(0).getString("path");
+                }
             }
-            // @formatter:off
-            torrents.add(new Torrent(
-                    j,
-                    tor.getString("gid"),
-                    name,
-                    status,
-                    tor.getString("dir"),
-                    downloadSpeed,
-                    tor.getInt("uploadSpeed"),
-                    tor.getInt("connections"),
-                    numSeeders,
-                    tor.getInt("connections"),
-                    numSeeders,
-                    (downloadSpeed > 0 ? (int) (totalLength / downloadSpeed) : -1),
-                    completedLength,
-                    tor.getLong("uploadLength"),
-                    totalLength,
-                    completedLength / (float) totalLength, // Percentage to [0..1]
-                    0f, // Not available
-                    null, // Not available
-                    null, // Not available
-                    null, // Not available
-                    error,
-                    settings.getType()));
-            // @formatter:on
-
         }
-        return torrents;
+        if (name == null) {
+            name = tor.getString("gid"); // Fallback name
+        }
+        // @formatter:off
+        return new Torrent(
+                id,
+                tor.getString("gid"),
+                name,
+                status,
+                tor.getString("dir"),
+                downloadSpeed,
+                tor.getInt("uploadSpeed"),
+                tor.getInt("connections"),
+                numSeeders,
+                tor.getInt("connections"),
+                numSeeders,
+                (downloadSpeed > 0 ? (int) (totalLength / downloadSpeed) : -1),
+                completedLength,
+                tor.getLong("uploadLength"),
+                totalLength,
+                completedLength / (float) totalLength, // Percentage to [0..1]
+                0f, // Not available
+                null, // Not available
+                null, // Not available
+                null, // Not available
+                error,
+                settings.getType());
+        // @formatter:on
 
     }
 
@@ -68,7 +68,13 @@ import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 /**
@@ -81,9 +87,12 @@ import java.util.List;
 public class BitCometAdapter implements IDaemonAdapter {
 
     private static final String LOG_NAME = "BitComet daemon";
+    private static final int MAX_PARALLEL_SUMMARIES = HttpHelper.MAX_CONNECTIONS_PER_ROUTE;
 
     private DaemonSettings settings;
     private DefaultHttpClient httpclient;
+    // The last retrieved summary of every task, by task id
+    private volatile Map<Long, TaskSummary> summaries = new HashMap<>();
 
     public BitCometAdapter(DaemonSettings settings) {
         this.settings = settings;
@@ -443,7 +452,7 @@ public class BitCometAdapter implements IDaemonAdapter {
      */
     private ArrayList<Torrent> parseHttpTorrents(Log log, String response) throws DaemonException {
 
-        ArrayList<Torrent> torrents = new ArrayList<>();
+        List<TaskRow> rows = new ArrayList<>();
 
         try {
 
@@ -474,87 +483,172 @@ public class BitCometAdapter implements IDaemonAdapter {
                     int rateDown =
                             1000 * Integer.parseInt(downloadRateStr.substring(0, downloadRateStr.indexOf("kB/s")));
 
-                    // Unfortunately, there is no info for above values providing by BitComet now,
-                    // so we may only send additional request for that
-                    int leechers = 0;
-                    int seeders = 0;
-                    int knownLeechers = 0;
-                    int knownSeeders = 0;
-                    int distributed_copies = 0;
-                    long sizeUp;
-                    String comment;
-                    Date dateAdded;
-
-                    // Comment code below to speedup torrent listing
-                    // P.S. feature request to extend torrents info is already sent to the BitComet developers
-                    //*
-                    // Lets make summary request and parse details
-                    String summary = makeRequest(log, "/panel/task_detail", new BasicNameValuePair("id", "" + (i - 2)),
-                            new BasicNameValuePair("show", "summary"));
-
-                    String[] sumParts = summary.substring(summary.indexOf("<div align=\"left\">Value</div></th>"))
-                            .split("<tr><td>");
-                    comment = sumParts[7].substring(sumParts[7].indexOf("<td>") + 4, sumParts[7].indexOf("</td></tr>"));
-
-                    // Indexes for date and uploaded size
-                    int idx = 9;
-                    int sizeIdx = 12;
-
-                    if (status == TorrentStatus.Downloading) {
-                        seeders = Integer.parseInt(sumParts[9]
-                                .substring(sumParts[9].indexOf("Seeds:") + 6, sumParts[9].indexOf("(Max possible")));
-                        leechers = Integer.parseInt(sumParts[9].substring(sumParts[9].indexOf("Peers:") + 6,
-                                sumParts[9].lastIndexOf("(Max possible")));
-                        knownSeeders = Integer.parseInt(sumParts[9]
-                                .substring(sumParts[9].indexOf("(Max possible:") + 14, sumParts[9].indexOf(")")));
-                        knownLeechers = Integer.parseInt(sumParts[9]
-                                .substring(sumParts[9].lastIndexOf("(Max possible:") + 14,
-                                        sumParts[9].lastIndexOf(")")));
-                        idx = 13;
-                        sizeIdx = 16;
-                    }
+                    rows.add(new TaskRow((long) i - 2, name, status, size, percentDone, sizeDone, rateUp, rateDown));
+                }
+            }
+        } catch (Exception e) {
+            throw new DaemonException(ExceptionType.UnexpectedResponse, "Invalid BitComet HTTP response.");
+        }
 
-                    DateFormat df = new SimpleDateFormat("yyyy-mm-dd kk:mm:ss");
-                    dateAdded = df.parse(sumParts[idx]
-                            .substring(sumParts[idx].indexOf("<td>") + 4, sumParts[idx].indexOf("</td></tr>")));
-                    //sizeDone =  convertSize(sumParts[sizeIdx].substring(sumParts[sizeIdx].indexOf("<td>")+4, sumParts[sizeIdx].indexOf(" (")));
-                    sizeUp = convertSize(sumParts[sizeIdx + 1]
-                            .substring(sumParts[sizeIdx + 1].indexOf("<td>") + 4, sumParts[sizeIdx + 1].indexOf(" (")));
-                    //*
+        // Unfortunately, there is no info for seeders, leechers, uploaded size, comment and date added in the task
+        // list, so we may only send additional (summary) requests for that
+        // P.S. feature request to extend torrents info is already sent to the BitComet developers
+        List<TaskSummary> taskSummaries = retrieveTaskSummaries(log, rows);
 
-                    // Add the parsed torrent to the list
-                    // @formatter:off
-                    torrents.add(new Torrent(
-                            (long) i - 2,
-                            null,
-                            name,
-                            status,
-                            null,
-                            rateDown,
-                            rateUp,
-                            seeders,
-                            knownSeeders,
-                            leechers,
-                            knownLeechers,
-                            (rateDown == 0 ? -1 : (int) ((size - sizeDone) / rateDown)),
-                            sizeDone,
-                            sizeUp,
-                            size,
-                            percentDone / 100,
-                            distributed_copies,
-                            comment,
-                            dateAdded,
-                            null,
-                            null,
-                            settings.getType()));
-                    // @formatter:on
+        ArrayList<Torrent> torrents = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) {
+            TaskRow row = rows.get(i);
+            TaskSummary summary = taskSummaries.get(i);
+            // Add the parsed torrent to the list
+            // @formatter:off
+            torrents.add(new Torrent(
+                    row.id,
+                    null,
+                    row.name,
+                    row.status,
+                    null,
+                    row.rateDown,
+                    row.rateUp,
+                    summary.seeders,
+                    summary.knownSeeders,
+                    summary.leechers,
+                    summary.knownLeechers,
+                    (row.rateDown == 0 ? -1 : (int) ((row.size - row.sizeDone) / row.rateDown)),
+                    row.sizeDone,
+                    summary.sizeUp,
+                    row.size,
+                    row.percentDone / 100,
+                    0,
+                    summary.comment,
+                    summary.dateAdded,
+                    null,
+                    null,
+                    settings.getType()));
+            // @formatter:on
+        }
+
+        return torrents;
+    }
+
+    /**
+     * Retrieves the summaries of the tasks in parallel, over a bounded number of connections. Summaries are not
+     * requested again for tasks that were stopped or queued since their summary was last retrieved, as nothing in it
+     * can have changed.
+     *
+     * @param rows The tasks as listed in the task table
+     * @return The summary of every task, in the same order
+     * @throws DaemonException Thrown when any of the summaries could not be retrieved or parsed
+     */
+    private List<TaskSummary> retrieveTaskSummaries(Log log, List<TaskRow> rows) throws DaemonException {
+
+        long start = System.currentTimeMillis();
+        TaskSummary[] reused = new TaskSummary[rows.size()];
+        List<Future<TaskSummary>> requests = new ArrayList<>(rows.size());
+        ExecutorService executor = null;
+        int requested = 0;
+        try {
+
+            for (int i = 0; i < rows.size(); i++) {
+                TaskRow row = rows.get(i);
+                TaskSummary cached = summaries.get(row.id);
+                if (cached != null && cached.isUnchangedFor(row)) {
+                    reused[i] = cached;
+                    requests.add(null);
+                    continue;
                 }
+                if (executor == null) {
+                    executor = Executors.newFixedThreadPool(Math.min(rows.size(), MAX_PARALLEL_SUMMARIES));
+                }
+                requests.add(executor.submit(() -> retrieveTaskSummary(log, row)));
+                requested++;
+            }
+            if (executor != null) {
+                // No new work will be added; the pool threads end once all requests are done
+                executor.shutdown();
             }
+
+            List<TaskSummary> taskSummaries = new ArrayList<>(rows.size());
+            for (int i = 0; i < rows.size(); i++) {
+                taskSummaries.add(requests.get(i) == null ? reused[i] : requests.get(i).get());
+            }
+
+            // Task ids are row numbers, so forget about tasks that no longer exist (or moved)
+            Map<Long, TaskSummary> retained = new HashMap<>();
+            for (TaskSummary summary : taskSummaries) {
+                retained.put(summary.id, summary);
+            }
+            summaries = retained;
+
+            log.d(LOG_NAME, "Retrieved " + requested + " task summaries (" + (rows.size() - requested)
+                    + " unchanged) in " + (System.currentTimeMillis() - start) + " ms");
+            return taskSummaries;
+
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof DaemonException) {
+                throw (DaemonException) e.getCause();
+            }
+            throw new DaemonException(ExceptionType.UnexpectedResponse, "Invalid BitComet HTTP response.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DaemonException(ExceptionType.ConnectionError, "Interrupted while retrieving task summaries");
+        } finally {
+            if (executor != null) {
+                // Cancel the outstanding requests if one failed
+                executor.shutdownNow();
+            }
+        }
+
+    }
+
+    private TaskSummary retrieveTaskSummary(Log log, TaskRow row) throws DaemonException {
+
+        // Lets make summary request and parse details
+        String summary = makeRequest(log, "/panel/task_detail", new BasicNameValuePair("id", "" + row.id),
+                new BasicNameValuePair("show", "summary"));
+
+        try {
+
+            int leechers = 0;
+            int seeders = 0;
+            int knownLeechers = 0;
+            int knownSeeders = 0;
+
+            String[] sumParts = summary.substring(summary.indexOf("<div align=\"left\">Value</div></th>"))
+                    .split("<tr><td>");
+            String comment =
+                    sumParts[7].substring(sumParts[7].indexOf("<td>") + 4, sumParts[7].indexOf("</td></tr>"));
+
+            // Indexes for date and uploaded size
+            int idx = 9;
+            int sizeIdx = 12;
+
+            if (row.status == TorrentStatus.Downloading) {
+                seeders = Integer.parseInt(sumParts[9]
+                        .substring(sumParts[9].indexOf("Seeds:") + 6, sumParts[9].indexOf("(Max possible")));
+                leechers = Integer.parseInt(sumParts[9].substring(sumParts[9].indexOf("Peers:") + 6,
+                        sumParts[9].lastIndexOf("(Max possible")));
+                knownSeeders = Integer.parseInt(sumParts[9]
+                        .substring(sumParts[9].indexOf("(Max possible:") + 14, sumParts[9].indexOf(")")));
+                knownLeechers = Integer.parseInt(sumParts[9]
+                        .substring(sumParts[9].lastIndexOf("(Max possible:") + 14, sumParts[9].lastIndexOf(")")));
+                idx = 13;
+                sizeIdx = 16;
+            }
+
+            DateFormat df = new SimpleDateFormat("yyyy-mm-dd kk:mm:ss");
+            Date dateAdded = df.parse(sumParts[idx]
+                    .substring(sumParts[idx].indexOf("<td>") + 4, sumParts[idx].indexOf("</td></tr>")));
+            //sizeDone =  convertSize(sumParts[sizeIdx].substring(sumParts[sizeIdx].indexOf("<td>")+4, sumParts[sizeIdx].indexOf(" (")));
+            long sizeUp = convertSize(sumParts[sizeIdx + 1]
+                    .substring(sumParts[sizeIdx + 1].indexOf("<td>") + 4, sumParts[sizeIdx + 1].indexOf(" (")));
+
+            return new TaskSummary(row.id, row.name, row.status, seeders, knownSeeders, leechers, knownLeechers,
+                    sizeUp, comment, dateAdded);
+
         } catch (Exception e) {
             throw new DaemonException(ExceptionType.UnexpectedResponse, "Invalid BitComet HTTP response.");
         }
 
-        return torrents;
     }
 
     /**
@@ -811,4 +905,73 @@ public class BitCometAdapter implements IDaemonAdapter {
         return this.settings;
     }
 
+    /**
+     * A task as listed in the task table.
+     */
+    private static class TaskRow {
+
+        private final long id;
+        private final String name;
+        private final TorrentStatus status;
+        private final long size;
+        private final float percentDone;
+        private final long sizeDone;
+        private final int rateUp;
+        private final int rateDown;
+
+        TaskRow(long id, String name, TorrentStatus status, long size, float percentDone, long sizeDone, int rateUp,
+                int rateDown) {
+            this.id = id;
+            this.name = name;
+            this.status = status;
+            this.size = size;
+            this.percentDone = percentDone;
+            this.sizeDone = sizeDone;
+            this.rateUp = rateUp;
+            this.rateDown = rateDown;
+        }
+
+    }
+
+    /**
+     * The details of a task that are only available from its summary page.
+     */
+    private static class TaskSummary {
+
+        private final long id;
+        private final String name;
+        private final TorrentStatus status;
+        private final int seeders;
+        private final int knownSeeders;
+        private final int leechers;
+        private final int knownLeechers;
+        private final long sizeUp;
+        private final String comment;
+        private final Date dateAdded;
+
+        TaskSummary(long id, String name, TorrentStatus status, int seeders, int knownSeeders, int leechers,
+                    int knownLeechers, long sizeUp, String comment, Date dateAdded) {
+            this.id = id;
+            this.name = name;
+            this.status = status;
+            this.seeders = seeders;
+            this.knownSeeders = knownSeeders;
+            this.leechers = leechers;
+            this.knownLeechers = knownLeechers;
+            this.sizeUp = sizeUp;
+            this.comment = comment;
+            this.dateAdded = dateAdded;
+        }
+
+        /**
+         * Whether this summary is still up-to-date for the task: it is the same task (ids are row numbers, so the name
+         * is checked as well) and it was (and still is) stopped or queued, such that nothing was transferred.
+         */
+        boolean isUnchangedFor(TaskRow row) {
+            return name.equals(row.name) && status == row.status &&
+                    (status == TorrentStatus.Paused || status == TorrentStatus.Queued);
+        }
+
+    }
+
 }
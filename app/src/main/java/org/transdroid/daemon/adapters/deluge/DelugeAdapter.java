@@ -17,6 +17,8 @@
  */
 package org.transdroid.daemon.adapters.deluge;
 
+import android.util.JsonToken;
+
 import com.android.internal.http.multipart.FilePart;
 import com.android.internal.http.multipart.MultipartEntity;
 import com.android.internal.http.multipart.Part;
@@ -65,6 +67,7 @@ import org.transdroid.daemon.task.SetLabelTask;
 import org.transdroid.daemon.task.SetTrackersTask;
 import org.transdroid.daemon.task.SetTransferRatesTask;
 import org.transdroid.daemon.util.HttpHelper;
+import org.transdroid.daemon.util.JsonStreamHelper;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -147,10 +150,11 @@ public class DelugeAdapter implements IDaemonAdapter {
     private static final String RPC_METHOD_ADD_FILE = "web.add_torrents";
 
     private DaemonSettings settings;
-    private DefaultHttpClient httpclient;
-    private Cookie sessionCookie;
-    private int version = -1;
-    private long lastAuthTime = -1;
+    private volatile DefaultHttpClient httpclient;
+    // Login state is shared by concurrently executing requests; it is only (re)established under the adapter lock
+    private volatile Cookie sessionCookie;
+    private volatile int version = -1;
+    private volatile long lastAuthTime = -1;
 
     public DelugeAdapter(DaemonSettings settings) {
         this.settings = settings;
@@ -220,9 +224,7 @@ public class DelugeAdapter implements IDaemonAdapter {
                     params.put(new JSONArray()); // filter_dict
                     // params.put(-1); // cache_id
 
-                    JSONObject result = makeRequest(buildRequest(RPC_METHOD_GET, params), log);
-                    return new RetrieveTaskSuccessResult((RetrieveTask) task, parseJsonRetrieveTorrents(result.getJSONObject(RPC_RESULT)),
-                            parseJsonRetrieveLabels(result.getJSONObject(RPC_RESULT)));
+                    return retrieveTorrents((RetrieveTask) task, buildRequest(RPC_METHOD_GET, params), log);
 
                 case GetTorrentDetails:
 
@@ -469,56 +471,44 @@ public class DelugeAdapter implements IDaemonAdapter {
 
     }
 
-    private synchronized JSONObject makeRequest(JSONObject data, Log log) throws DaemonException {
+    private JSONObject makeRequest(JSONObject data, Log log) throws DaemonException {
 
         try {
 
-            // Initialise the HTTP client
-            initialise();
+            // Read JSON response
+            InputStream instream = executeRequest(data, log).getContent();
+            String result = HttpHelper.convertStreamToString(instream);
+            JSONObject json = new JSONObject(result);
+            instream.close();
 
-            // Login first?
-            if (sessionCookie == null || System.currentTimeMillis() - lastAuthTime > MAX_SESSION_TIME) {
+            log.d(LOG_NAME, "Success: " + (result.length() > 300 ? result.substring(0, 300) + "... (" + result.length() + " chars)" : result));
 
-                sessionCookie = null;
-                // Build login object
-                String extraPass = settings.getExtraPassword();
-                if (extraPass == null) {
-                    extraPass = "";
-                }
-                JSONObject loginRequest = new JSONObject();
-                loginRequest.put(RPC_METHOD, RPC_METHOD_AUTH_LOGIN);
-                loginRequest.put(RPC_PARAMS, (new JSONArray()).put(extraPass));
-                loginRequest.put(RPC_ID, 1);
-
-                // Set POST URL and data
-                HttpPost httppost = new HttpPost(buildWebUIUrl() + PATH_TO_RPC);
-                httppost.setHeader("content-type", "application/json");
-                StringEntity se = new StringEntity(loginRequest.toString());
-                httppost.setEntity(se);
-
-                // Execute
-                HttpResponse response = httpclient.execute(httppost);
-                InputStream instream = response.getEntity().getContent();
-
-                // Retrieve session ID
-                if (!httpclient.getCookieStore().getCookies().isEmpty()) {
-                    for (Cookie cookie : httpclient.getCookieStore().getCookies()) {
-                        if (cookie.getName().equals(RPC_SESSION_ID)) {
-                            sessionCookie = cookie;
-                            lastAuthTime = System.currentTimeMillis();
-                            break;
-                        }
-                    }
-                }
+            // Return JSON object
+            return json;
 
-                // Still no session cookie?
-                if (sessionCookie == null) {
-                    // Set error message and cancel the action that was requested
-                    throw new DaemonException(ExceptionType.AuthenticationFailure, "Password error? Server time difference? No (valid) cookie in " +
-                            "response and JSON was: " + HttpHelper.convertStreamToString(instream));
-                }
+        } catch (JSONException e) {
+            log.d(LOG_NAME, "Error: " + e.toString());
+            throw new DaemonException(ExceptionType.UnexpectedResponse, e.toString());
+        } catch (IOException e) {
+            log.d(LOG_NAME, "Error: " + e.toString());
+            throw new DaemonException(ExceptionType.ConnectionError, e.toString());
+        }
 
-            }
+    }
+
+    /**
+     * Executes an RPC request, logging in first if needed, and returns the (non-null) entity of the HTTP response, of
+     * which the content is not read yet. Only logging in is serialized; regular requests may execute concurrently.
+     */
+    private HttpEntity executeRequest(JSONObject data, Log log) throws DaemonException {
+
+        try {
+
+            // Initialise the HTTP client
+            initialise();
+
+            // Login first?
+            Cookie sessionCookie = ensureLoggedIn();
 
             // Regular action
 
@@ -545,18 +535,7 @@ public class DelugeAdapter implements IDaemonAdapter {
 
             HttpEntity entity = response.getEntity();
             if (entity != null) {
-
-                // Read JSON response
-                InputStream instream = entity.getContent();
-                String result = HttpHelper.convertStreamToString(instream);
-                JSONObject json = new JSONObject(result);
-                instream.close();
-
-                log.d(LOG_NAME, "Success: " + (result.length() > 300 ? result.substring(0, 300) + "... (" + result.length() + " chars)" : result));
-
-                // Return JSON object
-                return json;
-
+                return entity;
             }
 
             // No result?
@@ -572,16 +551,78 @@ public class DelugeAdapter implements IDaemonAdapter {
 
     }
 
+    /**
+     * Returns the current session cookie, logging in to the Deluge web UI first if there is no session yet or it is
+     * about to expire. Concurrent callers wait for a single login rather than each logging in.
+     *
+     * @return The (non-null) session cookie
+     * @throws DaemonException On an authentication failure
+     */
+    private synchronized Cookie ensureLoggedIn() throws DaemonException, JSONException, IOException {
+
+        if (sessionCookie != null && System.currentTimeMillis() - lastAuthTime <= MAX_SESSION_TIME) {
+            return sessionCookie;
+        }
+
+        sessionCookie = null;
+        // Build login object
+        String extraPass = settings.getExtraPassword();
+        if (extraPass == null) {
+            extraPass = "";
+        }
+        JSONObject loginRequest = new JSONObject();
+        loginRequest.put(RPC_METHOD, RPC_METHOD_AUTH_LOGIN);
+        loginRequest.put(RPC_PARAMS, (new JSONArray()).put(extraPass));
+        loginRequest.put(RPC_ID, 1);
+
+        // Set POST URL and data
+        HttpPost httppost = new HttpPost(buildWebUIUrl() + PATH_TO_RPC);
+        httppost.setHeader("content-type", "application/json");
+        StringEntity se = new StringEntity(loginRequest.toString());
+        httppost.setEntity(se);
+
+        // Execute
+        HttpResponse response = httpclient.execute(httppost);
+        InputStream instream = response.getEntity().getContent();
+
+        // Retrieve session ID
+        if (!httpclient.getCookieStore().getCookies().isEmpty()) {
+            for (Cookie cookie : httpclient.getCookieStore().getCookies()) {
+                if (cookie.getName().equals(RPC_SESSION_ID)) {
+                    lastAuthTime = System.currentTimeMillis();
+                    sessionCookie = cookie;
+                    break;
+                }
+            }
+        }
+
+        // Still no session cookie?
+        if (sessionCookie == null) {
+            // Set error message and cancel the action that was requested
+            throw new DaemonException(ExceptionType.AuthenticationFailure, "Password error? Server time difference? No (valid) cookie in " +
+                    "response and JSON was: " + HttpHelper.convertStreamToString(instream));
+        }
+        response.getEntity().consumeContent();
+        return sessionCookie;
+
+    }
+
     /**
      * Instantiates an HTTP client with proper credentials that can be used for all Transmission requests.
      *
      * @throws DaemonException On missing settings
      */
-    private synchronized void initialise() throws DaemonException {
-        if(httpclient == null) {
-            httpclient = HttpHelper.createStandardHttpClient(settings, settings.getUsername() != null && !settings.getUsername().equals(""));
-            httpclient.addRequestInterceptor(HttpHelper.gzipRequestInterceptor);
-            httpclient.addResponseInterceptor(HttpHelper.gzipResponseInterceptor);
+    private void initialise() throws DaemonException {
+        if (httpclient != null) {
+            return;
+        }
+        synchronized (this) {
+            if (httpclient == null) {
+                DefaultHttpClient client = HttpHelper.createStandardHttpClient(settings, settings.getUsername() != null && !settings.getUsername().equals(""));
+                client.addRequestInterceptor(HttpHelper.gzipRequestInterceptor);
+                client.addResponseInterceptor(HttpHelper.gzipResponseInterceptor);
+                httpclient = client;
+            }
         }
     }
 
@@ -602,67 +643,101 @@ public class DelugeAdapter implements IDaemonAdapter {
         return (settings.getSsl() ? "https://" : "http://") + settings.getAddress() + ":" + settings.getPort() + folder;
     }
 
-    private ArrayList<Torrent> parseJsonRetrieveTorrents(JSONObject response) throws JSONException, DaemonException {
-
-        // Parse response
-        ArrayList<Torrent> torrents = new ArrayList<>();
-        if (response.isNull(RPC_TORRENTS)) {
-            throw new DaemonException(ExceptionType.NotConnected, "Web interface probably not connected to a daemon yet, because 'torrents' is null:" +
-                    " " + response.toString());
-        }
-        JSONObject objects = response.getJSONObject(RPC_TORRENTS);
-        JSONArray names = objects.names();
-        if (names != null) {
-            for (int j = 0; j < names.length(); j++) {
+    /**
+     * Requests the torrents and labels, mapping every torrent as soon as it is read from the response stream.
+     */
+    private RetrieveTaskSuccessResult retrieveTorrents(RetrieveTask task, JSONObject request, Log log)
+            throws DaemonException {
 
-                JSONObject tor = objects.getJSONObject(names.getString(j));
-                // Add the parsed torrent to the list
-                TorrentStatus status = DelugeCommon.convertDelugeState(tor.getString(RPC_STATUS));
-                String error = tor.getString(RPC_MESSAGE);
-                if (tor.getString(RPC_TRACKER_STATUS).indexOf("Error") > 0) {
-                    error += (error.length() > 0 ? "\n" : "") + tor.getString(RPC_TRACKER_STATUS);
-                    //status = TorrentStatus.Error; // Don't report this as blocking error
+        final List<Torrent> torrents = new ArrayList<>();
+        final List<Label> labels = new ArrayList<>();
+        HttpEntity entity = executeRequest(request, log);
+        boolean hasLabels;
+        try {
+            hasLabels = JsonStreamHelper.read(entity.getContent(), reader -> {
+                boolean torrentsRead = false;
+                boolean labelsRead = false;
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (!reader.nextName().equals(RPC_RESULT) || reader.peek() == JsonToken.NULL) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String name = reader.nextName();
+                        if (name.equals(RPC_TORRENTS) && reader.peek() != JsonToken.NULL) {
+                            JsonStreamHelper.readRecords(reader,
+                                    (hash, tor) -> torrents.add(parseJsonRetrieveTorrent(torrents.size(), hash, tor)));
+                            torrentsRead = true;
+                        } else if (name.equals("filters")) {
+                            List<Label> parsedLabels = parseJsonRetrieveLabels(JsonStreamHelper.readObject(reader));
+                            if (parsedLabels != null) {
+                                labels.addAll(parsedLabels);
+                                labelsRead = true;
+                            }
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
                 }
-                // @formatter:off
-                torrents.add(new Torrent(j,
-                        names.getString(j),
-                        tor.getString(RPC_NAME),
-                        status,
-                        tor.getString(RPC_SAVEPATH) + settings.getOS().getPathSeperator(),
-                        tor.getInt(RPC_RATEDOWNLOAD),
-                        tor.getInt(RPC_RATEUPLOAD),
-                        tor.getInt(RPC_NUMSEEDS),
-                        tor.getInt(RPC_TOTALSEEDS),
-                        tor.getInt(RPC_NUMPEERS),
-                        tor.getInt(RPC_TOTALPEERS),
-                        tor.getInt(RPC_ETA),
-                        tor.getLong(RPC_DOWNLOADEDEVER),
-                        tor.getLong(RPC_UPLOADEDEVER),
-                        tor.getLong(RPC_TOTALSIZE),
-                        ((float) tor.getDouble(RPC_PARTDONE)) / 100f, // Percentage to [0..1]
-                        0f, // Not available
-                        tor.has(RPC_LABEL) ? tor.getString(RPC_LABEL) : null,
-                        tor.has(RPC_TIMEADDED) ? new Date((long) (tor.getDouble(RPC_TIMEADDED) * 1000L)) : null,
-                        null, // Not available
-                        error,
-                        settings.getType()));
-                // @formatter:on
-            }
+                reader.endObject();
+                if (!torrentsRead) {
+                    throw new DaemonException(ExceptionType.NotConnected,
+                            "Web interface probably not connected to a daemon yet, because 'torrents' is null");
+                }
+                return labelsRead;
+            });
+        } catch (IOException e) {
+            log.d(LOG_NAME, "Error: " + e.toString());
+            throw new DaemonException(ExceptionType.ConnectionError, e.toString());
         }
 
-        // Return the list
-        return torrents;
+        return new RetrieveTaskSuccessResult(task, torrents, hasLabels ? labels : null);
 
     }
 
-    private ArrayList<Label> parseJsonRetrieveLabels(JSONObject response) throws JSONException {
+    private Torrent parseJsonRetrieveTorrent(int id, String hash, JSONObject tor) throws JSONException {
 
-        // Get the labels, of they exist (which is dependent on the plugin)
-        if (!response.has("filters")) {
-            return null;
+        // Parse a single torrent
+        TorrentStatus status = DelugeCommon.convertDelugeState(tor.getString(RPC_STATUS));
+        String error = tor.getString(RPC_MESSAGE);
+        if (tor.getString(RPC_TRACKER_STATUS).indexOf("Error") > 0) {
+            error += (error.length() > 0 ? "\n" : "") + tor.getString(RPC_TRACKER_STATUS);
+            //status = TorrentStatus.Error; // Don't report this as blocking error
         }
-        JSONObject filters = response.getJSONObject("filters");
-        if (!filters.has("label")) {
+        // @formatter:off
+        return new Torrent(id,
+                hash,
+                tor.getString(RPC_NAME),
+                status,
+                tor.getString(RPC_SAVEPATH) + settings.getOS().getPathSeperator(),
+                tor.getInt(RPC_RATEDOWNLOAD),
+                tor.getInt(RPC_RATEUPLOAD),
+                tor.getInt(RPC_NUMSEEDS),
+                tor.getInt(RPC_TOTALSEEDS),
+                tor.getInt(RPC_NUMPEERS),
+                tor.getInt(RPC_TOTALPEERS),
+                tor.getInt(RPC_ETA),
+                tor.getLong(RPC_DOWNLOADEDEVER),
+                tor.getLong(RPC_UPLOADEDEVER),
+                tor.getLong(RPC_TOTALSIZE),
+                ((float) tor.getDouble(RPC_PARTDONE)) / 100f, // Percentage to [0..1]
+                0f, // Not available
+                tor.has(RPC_LABEL) ? tor.getString(RPC_LABEL) : null,
+                tor.has(RPC_TIMEADDED) ? new Date((long) (tor.getDouble(RPC_TIMEADDED) * 1000L)) : null,
+                null, // Not available
+                error,
+                settings.getType());
+        // @formatter:on
+
+    }
+
+    private ArrayList<Label> parseJsonRetrieveLabels(JSONObject filters) throws JSONException {
+
+        // Get the labels, of they exist (which is dependent on the plugin)
+        if (filters == null || !filters.has("label")) {
             return null;
         }
         JSONArray labels = filters.getJSONArray("label");
@@ -19,8 +19,6 @@ package org.transdroid.daemon.adapters.deluge;
 
 import androidx.annotation.NonNull;
 
-import net.iharder.Base64;
-
 import org.transdroid.core.gui.log.Log;
 import org.transdroid.core.gui.remoterss.data.RemoteRssChannel;
 import org.transdroid.core.gui.remoterss.data.RemoteRssItem;
@@ -60,15 +58,11 @@ import org.transdroid.daemon.task.SetTrackersTask;
 import org.transdroid.daemon.task.SetTransferRatesTask;
 import org.xml.sax.SAXException;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -80,6 +74,8 @@ import java.util.Set;
 
 import javax.xml.parsers.ParserConfigurationException;
 
+import se.dimovski.rencode.RencodeReader;
+
 import static org.transdroid.daemon.adapters.deluge.DelugeCommon.RPC_DETAILS;
 import static org.transdroid.daemon.adapters.deluge.DelugeCommon.RPC_DETAILS_FIELDS_ARRAY;
 import static org.transdroid.daemon.adapters.deluge.DelugeCommon.RPC_DOWNLOADEDEVER;
@@ -146,7 +142,7 @@ import static org.transdroid.daemon.adapters.deluge.DelugeCommon.RPC_URL;
  *
  * @author alon.albert
  */
-public class DelugeRpcAdapter implements IDaemonAdapter, RemoteRssSupplier {
+public class DelugeRpcAdapter implements IDaemonAdapter, RemoteRssSupplier, Closeable {
 
     public static final int DEFAULT_PORT = 58846;
 
@@ -154,60 +150,138 @@ public class DelugeRpcAdapter implements IDaemonAdapter, RemoteRssSupplier {
     private final boolean isVersion2;
 
     private int version = -1;
+    private DelugeRpcClient client;
+    private long clientLastUsed = 0;
 
     public DelugeRpcAdapter(DaemonSettings settings, boolean isVersion2) {
         this.settings = settings;
         this.isVersion2 = isVersion2;
     }
 
+    /**
+     * Returns the shared, already authenticated client connection to the daemon, opening a new connection if there is
+     * none yet or if it was idle for longer than the maximum session time. A discarded connection is only closed once
+     * the requests that other threads still have in flight on it are completed.
+     *
+     * @param failed The connection on which a request just failed, which is replaced if it is still the shared one
+     */
+    private synchronized DelugeRpcClient getClient(DelugeRpcClient failed) throws DaemonException {
+        long now = System.currentTimeMillis();
+        if (client != null && (client == failed || !hasUsableClient())) {
+            client.retire();
+            client = null;
+        }
+        if (client == null) {
+            DelugeRpcClient newClient = new DelugeRpcClient(isVersion2);
+            newClient.connect(settings);
+            client = newClient;
+        }
+        clientLastUsed = now;
+        return client;
+    }
+
+    private synchronized boolean hasUsableClient() {
+        return client != null && client.isOpen()
+                && System.currentTimeMillis() - clientLastUsed <= MAX_SESSION_TIME;
+    }
+
+    /**
+     * Stops using the shared connection, closing it once the requests still in flight are completed.
+     */
+    @Override
+    public synchronized void close() {
+        if (client != null) {
+            client.retire();
+            client = null;
+        }
+    }
+
     @Override
     public DaemonTaskResult executeTask(Log log, DaemonTask task) {
-        try (DelugeRpcClient client = new DelugeRpcClient(isVersion2)) {
-            client.connect(settings);
-            switch (task.getMethod()) {
-                case Retrieve:
-                    return doRetrieve(client, (RetrieveTask) task);
-                case AddByUrl:
-                    return doAddByUrl(client, (AddByUrlTask) task);
-                case AddByMagnetUrl:
-                    return doAddByMagnetUrl(client, (AddByMagnetUrlTask) task);
-                case AddByFile:
-                    return doAddByFile(client, (AddByFileTask) task);
-                case Remove:
-                    return doRemove(client, (RemoveTask) task);
-                case Pause:
-                    return doControl(client, task, RPC_METHOD_PAUSE);
-                case PauseAll:
-                    return doControlAll(client, task, RPC_METHOD_PAUSE_ALL);
-                case Resume:
-                    return doControl(client, task, RPC_METHOD_RESUME);
-                case ResumeAll:
-                    return doControlAll(client, task, RPC_METHOD_RESUME_ALL);
-                case GetFileList:
-                    return doGetFileList(client, (GetFileListTask) task);
-                case SetFilePriorities:
-                    return doSetFilePriorities(client, (SetFilePriorityTask) task);
-                case SetTransferRates:
-                    return doSetTransferRates(client, (SetTransferRatesTask) task);
-                case SetLabel:
-                    return doSetLabel(client, (SetLabelTask) task);
-                case SetDownloadLocation:
-                    return doSetDownloadLocation(client, (SetDownloadLocationTask) task);
-                case GetTorrentDetails:
-                    return doGetTorrentDetails(client, (GetTorrentDetailsTask) task);
-                case SetTrackers:
-                    return doSetTrackers(client, (SetTrackersTask) task);
-                case ForceRecheck:
-                    return doForceRecheck(client, (ForceRecheckTask) task);
-                default:
-                    return new DaemonTaskFailureResult(task, new DaemonException(ExceptionType.MethodUnsupported, task.getMethod() + " is not " +
-                            "supported by " + getType()));
+        boolean reusingClient = hasUsableClient();
+        DelugeRpcClient used = null;
+        try {
+            used = getClient(null);
+            return executeTask(used, task);
+        } catch (DaemonException e) {
+            if (!reusingClient || !isRetryable(task, e)) {
+                return new DaemonTaskFailureResult(task, e);
             }
+        }
+        // The shared connection may have been dropped silently (by the daemon or some router): try once more on a
+        // fresh connection
+        try {
+            return executeTask(getClient(used), task);
         } catch (DaemonException e) {
             return new DaemonTaskFailureResult(task, e);
         }
     }
 
+    /**
+     * Whether a task that failed on a reused connection may be executed again. Requests that were written may have
+     * reached the daemon already, so only tasks that do not change anything are repeated then.
+     */
+    private boolean isRetryable(DaemonTask task, DaemonException e) {
+        if (e instanceof DelugeRpcClient.RequestNotSentException) {
+            // Tasks only send their (single) changing request last, so nothing was changed yet
+            return true;
+        }
+        if (e.getType() != ExceptionType.ConnectionError) {
+            return false;
+        }
+        switch (task.getMethod()) {
+            case Retrieve:
+            case GetFileList:
+            case GetTorrentDetails:
+            case GetStats:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private DaemonTaskResult executeTask(DelugeRpcClient client, DaemonTask task) throws DaemonException {
+        switch (task.getMethod()) {
+            case Retrieve:
+                return doRetrieve(client, (RetrieveTask) task);
+            case AddByUrl:
+                return doAddByUrl(client, (AddByUrlTask) task);
+            case AddByMagnetUrl:
+                return doAddByMagnetUrl(client, (AddByMagnetUrlTask) task);
+            case AddByFile:
+                return doAddByFile(client, (AddByFileTask) task);
+            case Remove:
+                return doRemove(client, (RemoveTask) task);
+            case Pause:
+                return doControl(client, task, RPC_METHOD_PAUSE);
+            case PauseAll:
+                return doControlAll(client, task, RPC_METHOD_PAUSE_ALL);
+            case Resume:
+                return doControl(client, task, RPC_METHOD_RESUME);
+            case ResumeAll:
+                return doControlAll(client, task, RPC_METHOD_RESUME_ALL);
+            case GetFileList:
+                return doGetFileList(client, (GetFileListTask) task);
+            case SetFilePriorities:
+                return doSetFilePriorities(client, (SetFilePriorityTask) task);
+            case SetTransferRates:
+                return doSetTransferRates(client, (SetTransferRatesTask) task);
+            case SetLabel:
+                return doSetLabel(client, (SetLabelTask) task);
+            case SetDownloadLocation:
+                return doSetDownloadLocation(client, (SetDownloadLocationTask) task);
+            case GetTorrentDetails:
+                return doGetTorrentDetails(client, (GetTorrentDetailsTask) task);
+            case SetTrackers:
+                return doSetTrackers(client, (SetTrackersTask) task);
+            case ForceRecheck:
+                return doForceRecheck(client, (ForceRecheckTask) task);
+            default:
+                return new DaemonTaskFailureResult(task, new DaemonException(ExceptionType.MethodUnsupported, task.getMethod() + " is not " +
+                        "supported by " + getType()));
+        }
+    }
+
     @Override
     public Daemon getType() {
         return isVersion2 ? Daemon.Deluge2Rpc : Daemon.DelugeRpc;
@@ -221,8 +295,8 @@ public class DelugeRpcAdapter implements IDaemonAdapter, RemoteRssSupplier {
     @Override
     public ArrayList<RemoteRssChannel> getRemoteRssChannels(Log log) throws DaemonException {
         final long now = System.currentTimeMillis();
-        try (DelugeRpcClient client = new DelugeRpcClient(isVersion2)) {
-            client.connect(settings);
+        try {
+            final DelugeRpcClient client = getClient(null);
 
             if (!hasMethod(client, RPC_METHOD_GET_RSS_CONFIG)) {
                 throw new DaemonException(ExceptionType.MethodUnsupported, "YaRRS2 plugin not installed");
@@ -297,26 +371,27 @@ public class DelugeRpcAdapter implements IDaemonAdapter, RemoteRssSupplier {
             label = null;
         }
 
-        try (DelugeRpcClient client = new DelugeRpcClient(isVersion2)) {
-            client.connect(settings);
-            final String torrentId = (String) client
-                    .sendRequest(item.isMagnetLink() ? RPC_METHOD_ADD_MAGNET : RPC_METHOD_ADD, item.getLink(), options);
-            if (label != null && hasMethod(client, RPC_METHOD_SETLABEL)) {
-                client.sendRequest(RPC_METHOD_SETLABEL, torrentId, label);
-            }
+        final DelugeRpcClient client = getClient(null);
+        final String torrentId = (String) client
+                .sendRequest(item.isMagnetLink() ? RPC_METHOD_ADD_MAGNET : RPC_METHOD_ADD, item.getLink(), options);
+        if (label != null && hasMethod(client, RPC_METHOD_SETLABEL)) {
+            client.sendRequest(RPC_METHOD_SETLABEL, torrentId, label);
         }
     }
 
     @NonNull
     private RetrieveTaskSuccessResult doRetrieve(DelugeRpcClient client, RetrieveTask task) throws DaemonException {
+        // Request the torrents and the available methods at once, without waiting for each other's response
+        final DelugeRpcClient.PendingResponse<List<Torrent>> torrentsResponse = client.send(
+                this::decodeTorrents, RPC_METHOD_GET_TORRENTS_STATUS, new HashMap<>(), RPC_FIELDS_ARRAY);
+        final DelugeRpcClient.PendingResponse<Object> methodsResponse = client.send(RPC_METHOD_GET_METHOD_LIST);
+
         // Get torrents
-        //noinspection unchecked
-        final Map<String, Map<String, Object>> torrentsStatus = (Map<String, Map<String, Object>>) client.sendRequest
-                (RPC_METHOD_GET_TORRENTS_STATUS, new HashMap<>(), RPC_FIELDS_ARRAY);
-        final List<Torrent> torrents = getTorrents(torrentsStatus.values());
+        final List<Torrent> torrents = torrentsResponse.get();
 
         // Check if Label plugin is enabled
-        final boolean hasLabelPlugin = hasMethod(client, RPC_METHOD_GET_LABELS);
+        //noinspection unchecked
+        final boolean hasLabelPlugin = ((List<String>) methodsResponse.get()).contains(RPC_METHOD_GET_LABELS);
 
         // Get label list from server
         //noinspection unchecked
@@ -370,8 +445,12 @@ public class DelugeRpcAdapter implements IDaemonAdapter, RemoteRssSupplier {
     @NonNull
     private DaemonTaskResult doAddByFile(DelugeRpcClient client, AddByFileTask task) throws DaemonException {
         final String file = task.getFile();
-        final String fileContent = Base64.encodeBytes(loadFile(file));
-        client.sendRequest(RPC_METHOD_ADD_FILE, file, fileContent, new HashMap<>());
+        final File upload = new File(URI.create(file));
+        if (!upload.canRead()) {
+            throw new DaemonException(ExceptionType.FileAccessError, "File not found: " + upload.getAbsolutePath());
+        }
+        // The file content is base64-encoded while the request is written
+        client.sendRequest(RPC_METHOD_ADD_FILE, file, new DelugeRpcClient.Base64FileContent(upload), new HashMap<>());
         return new DaemonTaskSuccessResult(task);
     }
 
@@ -460,39 +539,31 @@ public class DelugeRpcAdapter implements IDaemonAdapter, RemoteRssSupplier {
         return new DaemonTaskSuccessResult(task);
     }
 
+    /**
+     * Decodes the torrents status response directly from the response message, only reading the fields that are used.
+     */
     @NonNull
-    private List<Torrent> getTorrents(Collection<Map<String, Object>> torrentMaps) {
+    private List<Torrent> decodeTorrents(RencodeReader reader) throws IOException {
         final List<Torrent> torrents = new ArrayList<>();
-        int id = 0;
-        for (Map<String, Object> torrentMap : torrentMaps) {
-            final Number timeAdded = (Number) torrentMap.get(RPC_TIMEADDED);
-            final Date timeAddedDate;
-            if (timeAdded != null) {
-                final long seconds = timeAdded.longValue();
-                timeAddedDate = new Date(seconds * 1000L);
-            } else {
-                timeAddedDate = null;
-            }
+        final TorrentFields fields = new TorrentFields();
+        reader.readDictionary((hash, torrentReader) -> {
+            fields.clear();
+            torrentReader.readDictionary(fields);
 
-            final String message = (String) torrentMap.get(RPC_MESSAGE);
-            final String trackerStatus = (String) torrentMap.get(RPC_TRACKER_STATUS);
             final String error;
-            if (trackerStatus.indexOf("Error") > 0) {
-                error = message + (message.length() > 0 ? "\n" : "") + trackerStatus;
+            if (fields.trackerStatus != null && fields.trackerStatus.indexOf("Error") > 0) {
+                error = fields.message + (fields.message.length() > 0 ? "\n" : "") + fields.trackerStatus;
             } else {
-                error = message;
+                error = fields.message;
             }
 
-            torrents.add(new Torrent(id++, (String) torrentMap.get(RPC_HASH), (String) torrentMap.get(RPC_NAME), DelugeCommon.convertDelugeState(
-                    (String) torrentMap.get(RPC_STATUS)), torrentMap.get(RPC_SAVEPATH) + settings.getOS().getPathSeperator(), ((Number) torrentMap
-                    .get(RPC_RATEDOWNLOAD)).intValue(), ((Number) torrentMap.get(RPC_RATEUPLOAD)).intValue(), ((Number) torrentMap.get
-                    (RPC_NUMSEEDS)).intValue(), ((Number) torrentMap.get(RPC_TOTALSEEDS)).intValue(), ((Number) torrentMap.get(RPC_NUMPEERS))
-                    .intValue(), ((Number) torrentMap.get(RPC_TOTALPEERS)).intValue(), ((Number) torrentMap.get(RPC_ETA)).intValue(), ((Number)
-                    torrentMap.get(RPC_DOWNLOADEDEVER)).longValue(), ((Number) torrentMap.get(RPC_UPLOADEDEVER)).longValue(), ((Number) torrentMap
-                    .get(RPC_TOTALSIZE)).longValue(), ((Number) torrentMap.get(RPC_PARTDONE)).floatValue() / 100f, 0f, // Not available
-                    (String) torrentMap.get(RPC_LABEL), timeAddedDate, null, // Not available
+            torrents.add(new Torrent(torrents.size(), fields.hash != null ? fields.hash : hash, fields.name, DelugeCommon.convertDelugeState(fields.status),
+                    fields.savePath + settings.getOS().getPathSeperator(), fields.rateDownload, fields.rateUpload, fields.numSeeds,
+                    fields.totalSeeds, fields.numPeers, fields.totalPeers, fields.eta, fields.downloadedEver, fields.uploadedEver,
+                    fields.totalSize, fields.partDone / 100f, 0f, // Not available
+                    fields.label, fields.timeAdded > 0 ? new Date(fields.timeAdded * 1000L) : null, null, // Not available
                     error, getType()));
-        }
+        });
         return torrents;
     }
 
@@ -554,37 +625,6 @@ public class DelugeRpcAdapter implements IDaemonAdapter, RemoteRssSupplier {
         return files;
     }
 
-    @NonNull
-    private byte[] loadFile(String url) throws DaemonException {
-        final File file = new File(URI.create(url));
-        final BufferedInputStream in;
-        try {
-            in = new BufferedInputStream(new FileInputStream(file));
-        } catch (FileNotFoundException e) {
-            throw new DaemonException(ExceptionType.FileAccessError, "File not found: " + file.getAbsolutePath());
-        }
-        final ByteArrayOutputStream out = new ByteArrayOutputStream();
-        try {
-            final byte[] buffer = new byte[1024];
-            while (true) {
-                final int n = in.read(buffer);
-                if (n < 0) {
-                    break;
-                }
-                out.write(buffer, 0, n);
-            }
-            return out.toByteArray();
-        } catch (IOException e) {
-            throw new DaemonException(ExceptionType.FileAccessError, "Error reading file: " + file.getAbsolutePath());
-        } finally {
-            try {
-                in.close();
-            } catch (IOException e) {
-                // ignore
-            }
-        }
-    }
-
     @NonNull
     private Priority convertDelugePriority(DelugeRpcClient client, int priority) throws DaemonException {
         ensureVersion(client);
@@ -632,6 +672,103 @@ public class DelugeRpcAdapter implements IDaemonAdapter, RemoteRssSupplier {
         return methods.contains(method);
     }
 
+    /**
+     * Reusable holder of the fields of a single torrent as read from a torrents status response.
+     */
+    private static class TorrentFields implements RencodeReader.DictionaryVisitor {
+
+        String hash;
+        String name;
+        String status;
+        String savePath;
+        int rateDownload;
+        int rateUpload;
+        int numSeeds;
+        int totalSeeds;
+        int numPeers;
+        int totalPeers;
+        int eta;
+        long downloadedEver;
+        long uploadedEver;
+        long totalSize;
+        float partDone;
+        String label;
+        String message;
+        long timeAdded;
+        String trackerStatus;
+
+        void clear() {
+            hash = name = status = savePath = label = message = trackerStatus = null;
+            rateDownload = rateUpload = numSeeds = totalSeeds = numPeers = totalPeers = eta = 0;
+            downloadedEver = uploadedEver = totalSize = timeAdded = 0;
+            partDone = 0f;
+        }
+
+        @Override
+        public void visitEntry(String key, RencodeReader reader) throws IOException {
+            switch (key) {
+                case RPC_HASH:
+                    hash = reader.readString();
+                    break;
+                case RPC_NAME:
+                    name = reader.readString();
+                    break;
+                case RPC_STATUS:
+                    status = reader.readString();
+                    break;
+                case RPC_SAVEPATH:
+                    savePath = reader.readString();
+                    break;
+                case RPC_RATEDOWNLOAD:
+                    rateDownload = reader.readInt();
+                    break;
+                case RPC_RATEUPLOAD:
+                    rateUpload = reader.readInt();
+                    break;
+                case RPC_NUMSEEDS:
+                    numSeeds = reader.readInt();
+                    break;
+                case RPC_TOTALSEEDS:
+                    totalSeeds = reader.readInt();
+                    break;
+                case RPC_NUMPEERS:
+                    numPeers = reader.readInt();
+                    break;
+                case RPC_TOTALPEERS:
+                    totalPeers = reader.readInt();
+                    break;
+                case RPC_ETA:
+                    eta = reader.readInt();
+                    break;
+                case RPC_DOWNLOADEDEVER:
+                    downloadedEver = reader.readLong();
+                    break;
+                case RPC_UPLOADEDEVER:
+                    uploadedEver = reader.readLong();
+                    break;
+                case RPC_TOTALSIZE:
+                    totalSize = reader.readLong();
+                    break;
+                case RPC_PARTDONE:
+                    partDone = reader.readFloat();
+                    break;
+                case RPC_LABEL:
+                    label = reader.readString();
+                    break;
+                case RPC_MESSAGE:
+                    message = reader.readString();
+                    break;
+                case RPC_TIMEADDED:
+                    timeAdded = reader.readLong();
+                    break;
+                case RPC_TRACKER_STATUS:
+                    trackerStatus = reader.readString();
+                    break;
+            }
+        }
+
+    }
+
     /**
      * Used to count torrents in labels.
      */
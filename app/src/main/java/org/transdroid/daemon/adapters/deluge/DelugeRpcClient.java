@@ -19,42 +19,78 @@ package org.transdroid.daemon.adapters.deluge;
 
 import androidx.annotation.NonNull;
 
+import net.iharder.Base64;
+
 import org.transdroid.daemon.DaemonException;
 import org.transdroid.daemon.DaemonException.ExceptionType;
 import org.transdroid.daemon.DaemonSettings;
+import org.transdroid.daemon.IDaemonAdapter;
+import org.transdroid.daemon.util.HttpTransport;
 import org.transdroid.daemon.util.TlsSniSocketFactory;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.Socket;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
 import java.util.zip.DeflaterOutputStream;
-import java.util.zip.InflaterInputStream;
+import java.util.zip.Inflater;
 
-import se.dimovski.rencode.Rencode;
+import se.dimovski.rencode.RencodeOutputStream;
+import se.dimovski.rencode.RencodeReader;
+import se.dimovski.rencode.Utils;
 
 import static org.transdroid.daemon.adapters.deluge.DelugeCommon.RPC_METHOD_DAEMON_LOGIN;
 import static org.transdroid.daemon.adapters.deluge.DelugeCommon.RPC_METHOD_INFO;
 
 /**
- * A Deluge RPC API Client.
+ * A Deluge RPC API Client. A connected client is long-lived: it stays authenticated and may be used by multiple
+ * threads at once. Requests are written immediately (pipelined) and a background reader thread matches the responses
+ * to the waiting requests by their request id. The connection is closed when the daemon did not send anything for
+ * {@link IDaemonAdapter#MAX_SESSION_TIME}.
  */
 class DelugeRpcClient implements Closeable {
 
     private static final int RESPONSE_TYPE_INDEX = 0;
+    private static final int RESPONSE_ID_INDEX = 1;
     private static final int RESPONSE_RETURN_VALUE_INDEX = 2;
+    private static final int RPC_RESPONSE = 1;
     private static final int RPC_ERROR = 2;
     private static final byte V2_PROTOCOL_VERSION = 1;
     private static final int V2_HEADER_SIZE = 5;
+    private static final long RESPONSE_TIMEOUT = 60 * 1000; // 1 minute
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
     private static AtomicInteger requestId = new AtomicInteger();
     private final boolean isVersion2;
-    private Socket socket;
+    private final Map<Integer, PendingResponse<?>> pendingResponses = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+    private final Inflater inflater = new Inflater();
+    private final byte[] readBuffer = new byte[INITIAL_BUFFER_SIZE];
+    private final RencodeReader messageReader = new RencodeReader();
+    private byte[] compressedBuffer = new byte[INITIAL_BUFFER_SIZE];
+    private byte[] messageBuffer = new byte[INITIAL_BUFFER_SIZE];
+    private int readBufferOffset = 0;
+    private int readBufferLength = 0;
+    private volatile Socket socket;
+    private volatile boolean closed = false;
+    private volatile boolean retired = false;
 
     DelugeRpcClient(boolean isVersion2) {
         this.isVersion2 = isVersion2;
@@ -63,6 +99,11 @@ class DelugeRpcClient implements Closeable {
     void connect(DaemonSettings settings) throws DaemonException {
         try {
             socket = openSocket(settings);
+            // Time out the (otherwise blocking) reader when the connection was idle for too long
+            socket.setSoTimeout((int) IDaemonAdapter.MAX_SESSION_TIME);
+            Thread reader = new Thread(this::readResponses, "DelugeRpcReader");
+            reader.setDaemon(true);
+            reader.start();
             if (isVersion2) {
                 sendRequest(RPC_METHOD_INFO);
             }
@@ -70,108 +111,328 @@ class DelugeRpcClient implements Closeable {
                 sendRequest(RPC_METHOD_DAEMON_LOGIN, settings.getUsername(), settings.getPassword());
             }
         } catch (UnknownHostException e) {
+            close();
             throw new DaemonException(ExceptionType.AuthenticationFailure, "Failed to sign in: " + e.getMessage());
         } catch (IOException e) {
+            close();
             throw new DaemonException(ExceptionType.ConnectionError, "Failed to open socket: " + e.getMessage());
+        } catch (DaemonException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Whether the connection is (still) usable for new requests
+     */
+    boolean isOpen() {
+        return socket != null && !closed && !retired;
+    }
+
+    /**
+     * Stops accepting new requests, but lets requests that are already in flight (from other threads) complete before
+     * the connection is closed.
+     */
+    void retire() {
+        retired = true;
+        closeIfRetiredAndIdle();
+    }
+
+    private void closeIfRetiredAndIdle() {
+        if (retired && !closed && pendingResponses.isEmpty()) {
+            close();
         }
     }
 
     public void close() {
+        closed = true;
         try {
             if (socket != null)
                 socket.close();
         } catch (IOException e) {
             // ignore
         }
+        failPendingResponses(new DaemonException(ExceptionType.ConnectionError, "Connection closed"));
     }
 
     @NonNull
     Object sendRequest(String method, Object... args) throws DaemonException {
+        return send(method, args).get();
+    }
+
+    /**
+     * Writes a request to the daemon without waiting for the response, such that multiple requests can be in flight at
+     * the same time. The return value is decoded to its full object graph.
+     *
+     * @return The pending response, from which the result can be retrieved (blocking)
+     */
+    @NonNull
+    PendingResponse<Object> send(String method, Object... args) throws DaemonException {
+        return send(RencodeReader::readObject, method, args);
+    }
+
+    /**
+     * Writes a request to the daemon without waiting for the response, such that multiple requests can be in flight at
+     * the same time. The return value is decoded directly from the response message by the supplied decoder (on the
+     * connection's reader thread).
+     *
+     * @return The pending response, from which the decoded result can be retrieved (blocking)
+     */
+    @NonNull
+    <T> PendingResponse<T> send(ResponseDecoder<T> decoder, String method, Object... args) throws DaemonException {
+        if (!isOpen()) {
+            throw new RequestNotSentException("Connection closed");
+        }
+        final int id = requestId.getAndIncrement();
         final byte[] requestBytes;
         try {
             HashMap<Object, Object> kwargs = new HashMap<>();
             if (isVersion2 && RPC_METHOD_DAEMON_LOGIN.equals(method)) {
                 kwargs.put("client_version", "" + V2_PROTOCOL_VERSION);
             }
-            requestBytes = compress(Rencode.encode(new Object[]{new Object[]{requestId.getAndIncrement(), method, args, kwargs}}));
+            requestBytes = encodeRequest(new Object[]{new Object[]{id, method, args, kwargs}});
         } catch (IOException e) {
             throw new DaemonException(ExceptionType.ConnectionError, "Failed to encode request: " + e.getMessage());
         }
+        final PendingResponse<T> pendingResponse = new PendingResponse<>(id, decoder);
+        pendingResponses.put(id, pendingResponse);
         try {
-            if (isVersion2) {
-                socket.getOutputStream().write(
-                        ByteBuffer.allocate(V2_HEADER_SIZE + requestBytes.length)
-                                .put(V2_PROTOCOL_VERSION)
-                                .putInt(requestBytes.length)
-                                .put(requestBytes)
-                                .array()
-                );
-            } else {
-                socket.getOutputStream().write(requestBytes);
-            }
-            return readResponse();
+            synchronized (writeLock) {
+                if (closed) {
+                    // Closed by the reader thread in the mean time
+                    pendingResponses.remove(id);
+                    throw new RequestNotSentException("Connection closed");
+                }
+                OutputStream out = socket.getOutputStream();
+                if (isVersion2) {
+                    out.write(ByteBuffer.allocate(V2_HEADER_SIZE + requestBytes.length)
+                            .put(V2_PROTOCOL_VERSION)
+                            .putInt(requestBytes.length)
+                            .put(requestBytes)
+                            .array());
+                } else {
+                    out.write(requestBytes);
+                }
+                out.flush();
+            }
         } catch (IOException e) {
+            pendingResponses.remove(id);
+            close();
             throw new DaemonException(ExceptionType.ConnectionError, e.getMessage());
         }
+        return pendingResponse;
     }
 
     @NonNull
-    private byte[] compress(byte[] bytes) throws IOException {
-        try (ByteArrayOutputStream byteOut = new ByteArrayOutputStream()) {
-            try (DeflaterOutputStream deltaterOut = new DeflaterOutputStream(byteOut)) {
-                deltaterOut.write(bytes);
-                deltaterOut.finish();
-                return byteOut.toByteArray();
+    private byte[] encodeRequest(Object request) throws IOException {
+        // Encode directly into the compressed message, which is only needed as a whole to prefix its length
+        try (ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
+             DeflaterOutputStream deflaterOut = new DeflaterOutputStream(byteOut);
+             RencodeOutputStream rencodeOut = new RequestOutputStream(new BufferedOutputStream(deflaterOut))) {
+            rencodeOut.writeObject(request);
+            rencodeOut.flush();
+            deflaterOut.finish();
+            return byteOut.toByteArray();
+        }
+    }
+
+    /**
+     * Runs on the reader thread: reads and dispatches responses until the connection is closed or fails.
+     */
+    private void readResponses() {
+        try {
+            final InputStream in = socket.getInputStream();
+            while (!closed) {
+                dispatchResponse(readMessage(in));
+                closeIfRetiredAndIdle();
+                if (messageBuffer.length > MAX_RETAINED_BUFFER_SIZE) {
+                    // Do not hold on to the memory of an exceptionally large response
+                    messageBuffer = new byte[INITIAL_BUFFER_SIZE];
+                }
             }
+        } catch (DaemonException e) {
+            failPendingResponses(e);
+        } catch (IOException e) {
+            failPendingResponses(new DaemonException(ExceptionType.ConnectionError, e.getMessage()));
+        } catch (RuntimeException e) {
+            failPendingResponses(new DaemonException(ExceptionType.UnexpectedResponse, e.toString()));
+        } finally {
+            close();
+            inflater.end();
         }
     }
 
-    @NonNull
-    private Object readResponse() throws DaemonException, IOException {
-        final InputStream in = socket.getInputStream();
-        final InflaterInputStream inflater = new InflaterInputStream(in);
-        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private void dispatchResponse(ByteBuffer message) throws DaemonException, IOException {
+        messageReader.reset(message);
+        final ResponseVisitor response = new ResponseVisitor();
+        try {
+            if (!messageReader.readList(response)) {
+                throw new DaemonException(ExceptionType.UnexpectedResponse, "None");
+            }
+        } catch (SkipResponseException e) {
+            // The response could not be decoded, which was already reported to the waiting request; since every message
+            // is framed individually the connection itself can still be used
+            return;
+        }
+        if (response.count < RESPONSE_RETURN_VALUE_INDEX + 1 || response.type == null) {
+            throw new DaemonException(ExceptionType.UnexpectedResponse, response.toString());
+        }
+    }
+
+    /**
+     * Walks the elements of a single response message, [type, request id, return value], and completes the waiting
+     * request with the return value as decoded by its own decoder.
+     */
+    private class ResponseVisitor implements RencodeReader.ListVisitor {
+
+        private int count = 0;
+        private Integer type;
+        private Integer id;
+        private Object error;
+        private PendingResponse<?> pendingResponse;
 
-        final byte[] buffer;
+        @Override
+        public void visitElement(int index, RencodeReader reader) throws IOException {
+            count++;
+            if (index == RESPONSE_TYPE_INDEX) {
+                if (Utils.isNumber(reader.peekToken())) {
+                    type = reader.readInt();
+                }
+            } else if (index == RESPONSE_ID_INDEX && type != null && (type == RPC_RESPONSE || type == RPC_ERROR)) {
+                // Events (which we never subscribe to) are ignored
+                id = reader.readInt();
+                pendingResponse = pendingResponses.remove(id);
+            } else if (index == RESPONSE_RETURN_VALUE_INDEX && pendingResponse != null) {
+                if (type == RPC_ERROR) {
+                    error = reader.readObject();
+                    pendingResponse.fail(new DaemonException(ExceptionType.UnexpectedResponse, toString()));
+                    return;
+                }
+                try {
+                    pendingResponse.decode(reader);
+                } catch (IOException | RuntimeException e) {
+                    pendingResponse.fail(new DaemonException(ExceptionType.UnexpectedResponse, e.toString()));
+                    throw new SkipResponseException();
+                } catch (DaemonException e) {
+                    pendingResponse.fail(e);
+                    throw new SkipResponseException();
+                }
+            }
+            // Any element that was not read is skipped by the reader
+        }
+
+        @Override
+        public String toString() {
+            return "[" + type + ", " + id + ", " + error + "]";
+        }
+
+    }
+
+    /**
+     * Signals that the remainder of a response message should not be read.
+     */
+    private static class SkipResponseException extends IOException {
+    }
+
+    /**
+     * Reads a single (decompressed) message from the stream into the reusable message buffer. For protocol version 2
+     * messages carry a header with the length; version 1 messages are delimited only by the end of their zlib stream,
+     * so any bytes that were read beyond it are kept for the next message.
+     */
+    @NonNull
+    private ByteBuffer readMessage(InputStream in) throws DaemonException, IOException {
+        inflater.reset();
         if (isVersion2) {
             final byte[] header = new byte[V2_HEADER_SIZE];
-            in.read(header, 0, V2_HEADER_SIZE);
+            readFully(in, header, header.length);
             if (header[0] != V2_PROTOCOL_VERSION) {
                 throw new DaemonException(ExceptionType.ConnectionError, "Unexpected protocol version: " + header[0]);
             }
-            buffer = new byte[ByteBuffer.wrap(header).getInt(1)];
-        } else {
-            buffer = new byte[1024];
-        }
-
-        while (inflater.available() > 0) {
-            final int n = inflater.read(buffer);
-            if (n > 0) {
-                out.write(buffer, 0, n);
+            final int length = ByteBuffer.wrap(header).getInt(1);
+            if (length < 0) {
+                throw new DaemonException(ExceptionType.ConnectionError, "Invalid message length: " + length);
             }
+            if (compressedBuffer.length < length) {
+                compressedBuffer = new byte[length];
+            }
+            readFully(in, compressedBuffer, length);
+            inflater.setInput(compressedBuffer, 0, length);
+            return inflate(in, false);
         }
-        final byte[] bytes = out.toByteArray();
-        final Object responseObject = Rencode.decode(bytes);
+        return inflate(in, true);
+    }
 
-        if (!(responseObject instanceof List)) {
-            throw new DaemonException(ExceptionType.UnexpectedResponse, responseObject.toString());
+    private void readFully(InputStream in, byte[] target, int length) throws IOException {
+        int read = 0;
+        // Consume leftover bytes of an earlier read first
+        if (readBufferLength > 0) {
+            read = Math.min(readBufferLength, length);
+            System.arraycopy(readBuffer, readBufferOffset, target, 0, read);
+            readBufferOffset += read;
+            readBufferLength -= read;
         }
-        final List<?> response = (List<?>) responseObject;
-
-        if (response.size() < RESPONSE_RETURN_VALUE_INDEX + 1) {
-            throw new DaemonException(ExceptionType.UnexpectedResponse, responseObject.toString());
+        while (read < length) {
+            final int n = in.read(target, read, length - read);
+            if (n < 0) {
+                throw new EOFException("Connection closed by daemon");
+            }
+            read += n;
         }
+    }
 
-        if (!(response.get(RESPONSE_TYPE_INDEX) instanceof Number)) {
-            throw new DaemonException(ExceptionType.UnexpectedResponse, responseObject.toString());
+    @NonNull
+    private ByteBuffer inflate(InputStream in, boolean readFromStream) throws DaemonException, IOException {
+        int length = 0;
+        try {
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    if (!readFromStream) {
+                        throw new DaemonException(ExceptionType.UnexpectedResponse, "Truncated response message");
+                    }
+                    if (readBufferLength == 0) {
+                        final int n = in.read(readBuffer, 0, readBuffer.length);
+                        if (n < 0) {
+                            throw new EOFException("Connection closed by daemon");
+                        }
+                        readBufferOffset = 0;
+                        readBufferLength = n;
+                    }
+                    inflater.setInput(readBuffer, readBufferOffset, readBufferLength);
+                    // Everything is now owned by the inflater; what it does not use is recovered below
+                    readBufferOffset += readBufferLength;
+                    readBufferLength = 0;
+                }
+                if (length == messageBuffer.length) {
+                    byte[] larger = new byte[messageBuffer.length * 2];
+                    System.arraycopy(messageBuffer, 0, larger, 0, length);
+                    messageBuffer = larger;
+                }
+                final int n = inflater.inflate(messageBuffer, length, messageBuffer.length - length);
+                if (n > 0) {
+                    length += n;
+                } else if (inflater.needsDictionary()) {
+                    throw new DaemonException(ExceptionType.UnexpectedResponse, "Unsupported compressed response");
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new DaemonException(ExceptionType.UnexpectedResponse, "Invalid compressed response: " + e.getMessage());
         }
-        final int type = ((Number) (response.get(RESPONSE_TYPE_INDEX))).intValue();
-
-        if (type == RPC_ERROR) {
-            throw new DaemonException(ExceptionType.UnexpectedResponse, responseObject.toString());
+        if (readFromStream) {
+            // Keep the bytes that belong to the next message
+            final int remaining = inflater.getRemaining();
+            readBufferOffset -= remaining;
+            readBufferLength = remaining;
         }
+        return ByteBuffer.wrap(messageBuffer, 0, length);
+    }
 
-        return response.get(2);
+    private void failPendingResponses(DaemonException e) {
+        for (Integer id : new ArrayList<>(pendingResponses.keySet())) {
+            final PendingResponse<?> pendingResponse = pendingResponses.remove(id);
+            if (pendingResponse != null) {
+                pendingResponse.fail(e);
+            }
+        }
     }
 
     @NonNull
@@ -180,15 +441,123 @@ class DelugeRpcClient implements Closeable {
             // Non-ssl connections
             throw new DaemonException(ExceptionType.ConnectionError, "Deluge RPC Adapter must have SSL enabled");
         }
-        final TlsSniSocketFactory socketFactory;
-        if (settings.getSslTrustKey() != null && settings.getSslTrustKey().length() != 0) {
-            socketFactory = new TlsSniSocketFactory(settings.getSslTrustKey());
-        } else if (settings.getSslTrustAll()) {
-            socketFactory = new TlsSniSocketFactory(true);
-        } else {
-            socketFactory = new TlsSniSocketFactory();
-        }
+        // Use the shared factory, so that the TLS session is resumed when reconnecting
+        final TlsSniSocketFactory socketFactory =
+                HttpTransport.getSocketFactory(settings.getSslTrustAll(), settings.getSslTrustKey());
         return socketFactory.createSocket(null, settings.getAddress(), settings.getPort(), false);
     }
 
+    /**
+     * Signals that a request was never written to the connection, so that it certainly did not reach the daemon and may
+     * safely be sent again, even if it is not idempotent.
+     */
+    static class RequestNotSentException extends DaemonException {
+
+        RequestNotSentException(String message) {
+            super(ExceptionType.ConnectionError, message);
+        }
+
+    }
+
+    /**
+     * A request argument with the content of a local file, sent as base64-encoded string. The file is read and encoded
+     * only while the request is written, such that its content is never held in memory uncompressed.
+     */
+    static final class Base64FileContent {
+
+        private final File file;
+
+        Base64FileContent(File file) {
+            this.file = file;
+        }
+
+    }
+
+    /**
+     * Writes requests, including {@link Base64FileContent} arguments.
+     */
+    private static class RequestOutputStream extends RencodeOutputStream {
+
+        RequestOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        protected void writeCustom(Object value) throws IOException {
+            if (!(value instanceof Base64FileContent)) {
+                super.writeCustom(value);
+                return;
+            }
+            File file = ((Base64FileContent) value).file;
+            try (InputStream content = new Base64.InputStream(new BufferedInputStream(new FileInputStream(file)),
+                    Base64.ENCODE)) {
+                // Base64 encodes every (started) group of 3 bytes as 4 characters
+                writeString(4 * ((file.length() + 2) / 3), content);
+            }
+        }
+
+    }
+
+    /**
+     * Decodes the return value of a request, reading it from the response message as it arrives.
+     */
+    interface ResponseDecoder<T> {
+
+        T decode(RencodeReader reader) throws IOException, DaemonException;
+
+    }
+
+    /**
+     * The response to a single request, which is completed by the reader thread once it arrives.
+     */
+    class PendingResponse<T> {
+
+        private final int id;
+        private final ResponseDecoder<T> decoder;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile T result;
+        private volatile DaemonException error;
+
+        PendingResponse(int id, ResponseDecoder<T> decoder) {
+            this.id = id;
+            this.decoder = decoder;
+        }
+
+        void decode(RencodeReader reader) throws IOException, DaemonException {
+            this.result = decoder.decode(reader);
+            done.countDown();
+        }
+
+        void fail(DaemonException error) {
+            this.error = error;
+            done.countDown();
+        }
+
+        /**
+         * Waits for the response to arrive.
+         *
+         * @return The (decoded) return value of the RPC method
+         * @throws DaemonException Thrown when the daemon returned an error or the connection failed or timed out
+         */
+        @NonNull
+        T get() throws DaemonException {
+            try {
+                if (!done.await(RESPONSE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    // Stop waiting for it, so that a retired connection is not kept open for this response forever
+                    pendingResponses.remove(id);
+                    closeIfRetiredAndIdle();
+                    throw new DaemonException(ExceptionType.ConnectionError, "Timed out waiting for a response");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DaemonException(ExceptionType.ConnectionError, "Interrupted waiting for a response");
+            }
+            if (error != null) {
+                throw error;
+            }
+            return result;
+        }
+
+    }
+
 }
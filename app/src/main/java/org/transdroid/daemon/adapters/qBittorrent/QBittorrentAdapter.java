@@ -17,6 +17,8 @@
  */
 package org.transdroid.daemon.adapters.qBittorrent;
 
+import android.util.JsonReader;
+
 import com.android.internal.http.multipart.FilePart;
 import com.android.internal.http.multipart.MultipartEntity;
 import com.android.internal.http.multipart.Part;
@@ -39,6 +41,7 @@ import org.transdroid.daemon.DaemonException.ExceptionType;
 import org.transdroid.daemon.DaemonSettings;
 import org.transdroid.daemon.IDaemonAdapter;
 import org.transdroid.daemon.Label;
+import org.transdroid.daemon.PieceStates;
 import org.transdroid.daemon.Priority;
 import org.transdroid.daemon.Torrent;
 import org.transdroid.daemon.TorrentDetails;
@@ -65,17 +68,24 @@ import org.transdroid.daemon.task.SetFilePriorityTask;
 import org.transdroid.daemon.task.SetLabelTask;
 import org.transdroid.daemon.task.SetTransferRatesTask;
 import org.transdroid.daemon.util.HttpHelper;
+import org.transdroid.daemon.util.JsonStreamHelper;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * The daemon adapter for the qBittorrent torrent client.
@@ -85,6 +95,8 @@ import java.util.Map;
 public class QBittorrentAdapter implements IDaemonAdapter {
 
     private static final String LOG_NAME = "qBittorrent daemon";
+    private static final List<String> SYNC_FIELDS = Arrays.asList("rid", "full_update", "torrents", "torrents_removed",
+            "categories", "categories_removed");
 
     private DaemonSettings settings;
     private DefaultHttpClient httpclient;
@@ -96,6 +108,10 @@ public class QBittorrentAdapter implements IDaemonAdapter {
     private int qbHighPriority = 7;
     // a cache of all labels on the server
     private List<Label> labelList;
+    // incremental sync state (API v2): last response id and the torrent and category data merged so far
+    private int syncRid = 0;
+    private final Map<String, JSONObject> syncTorrents = new LinkedHashMap<>();
+    private final Set<String> syncCategories = new LinkedHashSet<>();
 
     public QBittorrentAdapter(DaemonSettings settings) {
         this.settings = settings;
@@ -224,11 +240,14 @@ public class QBittorrentAdapter implements IDaemonAdapter {
             switch (task.getMethod()) {
                 case Retrieve:
 
+                    // Since API v2 we only request the changes since our last sync
+                    if (version >= 40100) {
+                        return retrieveIncremental(log, (RetrieveTask) task);
+                    }
+
                     // Request all torrents from server
                     String path;
-                    if (version >= 40100) {
-                        path = "/api/v2/torrents/info";
-                    } else if (version >= 30200) {
+                    if (version >= 30200) {
                         path = "/query/torrents";
                     } else if (version >= 30000) {
                         path = "/json/torrents";
@@ -239,15 +258,7 @@ public class QBittorrentAdapter implements IDaemonAdapter {
                     JSONArray allTorrentsResult = new JSONArray(makeRequest(log, path));
                     final List<Torrent> torrentsList = parseJsonTorrents(allTorrentsResult);
 
-                    JSONArray allLabelsResult = null;
-                    if (version >= 40100) {
-                        allLabelsResult = new JSONObject(makeRequest(log, "/api/v2/torrents/categories")).names();
-                    }
-                    // either version < 40100 or no labels
-                    if (allLabelsResult == null) {
-                        allLabelsResult = new JSONArray();
-                    }
-                    labelList = parseJsonLabels(allLabelsResult, allTorrentsResult);
+                    labelList = parseJsonLabels(new JSONArray(), allTorrentsResult);
                     return new RetrieveTaskSuccessResult((RetrieveTask) task, torrentsList, labelList);
 
                 case GetTorrentDetails:
@@ -255,13 +266,13 @@ public class QBittorrentAdapter implements IDaemonAdapter {
                     // Request tracker and error details for a specific teacher
                     String mhash = task.getTargetTorrent().getUniqueID();
                     JSONArray messages;
-                    JSONArray pieces;
+                    PieceStates pieces;
                     if (version >= 40100) {
                         messages = new JSONArray(makeRequest(log, "/api/v2/torrents/trackers", new BasicNameValuePair("hash", mhash)));
-                        pieces = new JSONArray(makeRequest(log, "/api/v2/torrents/pieceStates", new BasicNameValuePair("hash", mhash)));
+                        pieces = makeStreamingRequest(log, "/api/v2/torrents/pieceStates", this::readPieceStates, new BasicNameValuePair("hash", mhash));
                     } else {
                         messages = new JSONArray(makeRequest(log, "/query/propertiesTrackers/" + mhash));
-                        pieces = new JSONArray(makeRequest(log, "/query/getPieceStates/" + mhash));
+                        pieces = makeStreamingRequest(log, "/query/getPieceStates/" + mhash, this::readPieceStates);
                     }
 
                     return new GetTorrentDetailsTaskSuccessResult((GetTorrentDetailsTask) task, parseJsonTorrentDetails(messages, pieces));
@@ -551,6 +562,107 @@ public class QBittorrentAdapter implements IDaemonAdapter {
         }
     }
 
+    /**
+     * Retrieves the torrents using the sync API, which only returns the fields that changed since the last response id
+     * (rid) we saw. The changes are merged into the locally kept torrent and category data, which are then parsed into
+     * a full torrent list. The server itself signals (via full_update) when it sends the full data instead.
+     */
+    private synchronized RetrieveTaskSuccessResult retrieveIncremental(Log log, RetrieveTask task)
+            throws DaemonException, JSONException {
+
+        JSONObject maindata;
+        try {
+            // Stream the response, skipping the (potentially large) parts that we do not use
+            maindata = makeStreamingRequest(log, "/api/v2/sync/maindata", reader -> {
+                JSONObject data = new JSONObject();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if (SYNC_FIELDS.contains(name)) {
+                        data.put(name, JsonStreamHelper.readValue(reader));
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                return data;
+            }, new BasicNameValuePair("rid", Integer.toString(syncRid)));
+        } catch (DaemonException e) {
+            // Our merged data can no longer be trusted; start over with a full sync next time
+            resetSyncState();
+            throw e;
+        }
+
+        try {
+            if (maindata.optBoolean("full_update", false)) {
+                syncTorrents.clear();
+                syncCategories.clear();
+            }
+
+            // Merge the changed fields into the known torrents, which are keyed by their hash
+            JSONObject changedTorrents = maindata.optJSONObject("torrents");
+            if (changedTorrents != null) {
+                Iterator<String> hashes = changedTorrents.keys();
+                while (hashes.hasNext()) {
+                    String hash = hashes.next();
+                    JSONObject tor = syncTorrents.get(hash);
+                    if (tor == null) {
+                        tor = new JSONObject();
+                        tor.put("hash", hash);
+                        syncTorrents.put(hash, tor);
+                    }
+                    JSONObject changes = changedTorrents.getJSONObject(hash);
+                    Iterator<String> fields = changes.keys();
+                    while (fields.hasNext()) {
+                        String field = fields.next();
+                        tor.put(field, changes.get(field));
+                    }
+                }
+            }
+            JSONArray removedTorrents = maindata.optJSONArray("torrents_removed");
+            if (removedTorrents != null) {
+                for (int i = 0; i < removedTorrents.length(); i++) {
+                    syncTorrents.remove(removedTorrents.getString(i));
+                }
+            }
+
+            // Categories are only of interest by name
+            JSONObject changedCategories = maindata.optJSONObject("categories");
+            if (changedCategories != null) {
+                Iterator<String> names = changedCategories.keys();
+                while (names.hasNext()) {
+                    syncCategories.add(names.next());
+                }
+            }
+            JSONArray removedCategories = maindata.optJSONArray("categories_removed");
+            if (removedCategories != null) {
+                for (int i = 0; i < removedCategories.length(); i++) {
+                    syncCategories.remove(removedCategories.getString(i));
+                }
+            }
+
+            syncRid = maindata.getInt("rid");
+
+            JSONArray allTorrents = new JSONArray();
+            for (JSONObject tor : syncTorrents.values()) {
+                allTorrents.put(tor);
+            }
+            labelList = parseJsonLabels(new JSONArray(syncCategories), allTorrents);
+            return new RetrieveTaskSuccessResult(task, parseJsonTorrents(allTorrents), labelList);
+        } catch (JSONException | RuntimeException e) {
+            // The changes were only partly merged, so our data no longer matches the rid; do a full sync next time
+            resetSyncState();
+            throw e;
+        }
+
+    }
+
+    private synchronized void resetSyncState() {
+        syncRid = 0;
+        syncTorrents.clear();
+        syncCategories.clear();
+    }
+
     private String makeRequest(Log log, String path, NameValuePair... params) throws DaemonException {
 
         try {
@@ -587,8 +699,57 @@ public class QBittorrentAdapter implements IDaemonAdapter {
 
     }
 
+    private <T> T makeStreamingRequest(Log log, String path, JsonStreamHelper.DocumentReader<T> documentReader,
+                                       NameValuePair... params) throws DaemonException {
+
+        try {
+
+            // Setup request using POST
+            HttpPost httppost = new HttpPost(buildWebUIUrl(path));
+            List<NameValuePair> nvps = new ArrayList<>();
+            Collections.addAll(nvps, params);
+            httppost.setEntity(new UrlEncodedFormEntity(nvps, HTTP.UTF_8));
+
+            // Decode the JSON response while it is read
+            return JsonStreamHelper.read(executeWebRequest(httppost, log).getContent(), documentReader);
+
+        } catch (DaemonException e) {
+            log.d(LOG_NAME, "Error: " + e.toString());
+            throw e;
+        } catch (IOException e) {
+            log.d(LOG_NAME, "Error: " + e.toString());
+            throw new DaemonException(ExceptionType.ConnectionError, e.toString());
+        }
+
+    }
+
     private String makeWebRequest(HttpPost httppost, Log log) throws DaemonException {
 
+        try {
+
+            // Read JSON response
+            java.io.InputStream instream = executeWebRequest(httppost, log).getContent();
+            String result = HttpHelper.convertStreamToString(instream);
+            instream.close();
+
+            // TLog.d(LOG_NAME, "Success: " + (result.length() > 300? result.substring(0, 300) + "... (" +
+            // result.length() + " chars)": result));
+
+            // Return raw result
+            return result;
+
+        } catch (IOException e) {
+            log.d(LOG_NAME, "Error: " + e.toString());
+            throw new DaemonException(ExceptionType.ConnectionError, e.toString());
+        }
+
+    }
+
+    /**
+     * Executes a request and returns the (non-null) entity of the HTTP response, of which the content is not read yet
+     */
+    private HttpEntity executeWebRequest(HttpPost httppost, Log log) throws DaemonException {
+
         try {
             // Execute
             HttpResponse response = httpclient.execute(httppost);
@@ -600,17 +761,7 @@ public class QBittorrentAdapter implements IDaemonAdapter {
 
             HttpEntity entity = response.getEntity();
             if (entity != null) {
-
-                // Read JSON response
-                java.io.InputStream instream = entity.getContent();
-                String result = HttpHelper.convertStreamToString(instream);
-                instream.close();
-
-                // TLog.d(LOG_NAME, "Success: " + (result.length() > 300? result.substring(0, 300) + "... (" +
-                // result.length() + " chars)": result));
-
-                // Return raw result
-                return result;
+                return entity;
             }
 
             log.d(LOG_NAME, "Error: No entity in HTTP response");
@@ -653,7 +804,7 @@ public class QBittorrentAdapter implements IDaemonAdapter {
         return (settings.getSsl() ? "https://" : "http://") + settings.getAddress() + ":" + settings.getPort() + proxyFolder + path;
     }
 
-    private TorrentDetails parseJsonTorrentDetails(JSONArray messages, JSONArray pieceStates) throws JSONException {
+    private TorrentDetails parseJsonTorrentDetails(JSONArray messages, PieceStates pieces) throws JSONException {
 
         ArrayList<String> trackers = new ArrayList<>();
         ArrayList<String> errors = new ArrayList<>();
@@ -669,18 +820,24 @@ public class QBittorrentAdapter implements IDaemonAdapter {
             }
         }
 
-        ArrayList<Integer> pieces = new ArrayList<>();
-        if (pieceStates.length() > 0) {
-            for (int i = 0; i < pieceStates.length(); i++) {
-                pieces.add(pieceStates.getInt(i));
-            }
-        }
-
         // Return the list
         return new TorrentDetails(trackers, errors, pieces);
 
     }
 
+    private PieceStates readPieceStates(JsonReader reader) throws IOException {
+
+        // Decode the (potentially very long) array of piece states without boxing every single one
+        PieceStates.Builder pieces = new PieceStates.Builder();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            pieces.add(reader.nextInt());
+        }
+        reader.endArray();
+        return pieces.build();
+
+    }
+
     private List<Label> parseJsonLabels(JSONArray allLabelsResponse, JSONArray allTorrentsResponse) throws JSONException {
 
         // Collect used labels from torrents response
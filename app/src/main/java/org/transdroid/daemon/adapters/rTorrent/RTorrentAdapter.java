@@ -18,6 +18,8 @@
 package org.transdroid.daemon.adapters.rTorrent;
 
 import android.text.TextUtils;
+import de.timroes.axmlrpc.MulticallRow;
+import de.timroes.axmlrpc.MulticallRowHandler;
 import de.timroes.axmlrpc.XMLRPCClient;
 import de.timroes.axmlrpc.XMLRPCClient.UnauthorizdException;
 import de.timroes.axmlrpc.XMLRPCException;
@@ -52,9 +54,7 @@ import org.transdroid.daemon.task.SetLabelTask;
 import org.transdroid.daemon.task.SetTransferRatesTask;
 import org.transdroid.daemon.util.HttpHelper;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
@@ -108,37 +108,7 @@ public class RTorrentAdapter implements IDaemonAdapter {
             switch (task.getMethod()) {
                 case Retrieve:
 
-                    // @formatter:off
-                    Object result = makeRtorrentCall(log, "d.multicall2",
-                            new String[]{"", "main",
-                                    "d.hash=",
-                                    "d.name=",
-                                    "d.state=",
-                                    "d.down.rate=",
-                                    "d.up.rate=",
-                                    "d.peers_connected=",
-                                    "d.peers_not_connected=",
-                                    "d.peers_accounted=",
-                                    "d.bytes_done=",
-                                    "d.up.total=",
-                                    "d.size_bytes=",
-                                    "d.creation_date=",
-                                    "d.left_bytes=",
-                                    "d.complete=",
-                                    "d.is_active=",
-                                    "d.is_hash_checking=",
-                                    "d.is_multi_file=",
-                                    "d.base_filename=",
-                                    "d.message=",
-                                    "d.custom=addtime",
-                                    "d.custom=seedingtime",
-                                    "d.custom1=",
-                                    "d.peers_complete=",
-                                    "d.peers_accounted=",
-                                    "d.is_open="});
-                    // @formatter:on
-                    return new RetrieveTaskSuccessResult((RetrieveTask) task, onTorrentsRetrieved(result),
-                            lastKnownLabels);
+                    return new RetrieveTaskSuccessResult((RetrieveTask) task, retrieveTorrents(log), lastKnownLabels);
 
                 case GetTorrentDetails:
 
@@ -172,21 +142,17 @@ public class RTorrentAdapter implements IDaemonAdapter {
 
                     // Request to add a torrent by local .torrent file
                     File file = new File(URI.create(((AddByFileTask) task).getFile()));
-                    FileInputStream in = new FileInputStream(file);
-                    ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                    byte[] buffer = new byte[(int) file.length()];
-                    int read;
-                    while ((read = in.read(buffer, 0, buffer.length)) > 0) {
-                        baos.write(buffer, 0, read);
+                    if (!file.canRead()) {
+                        throw new FileNotFoundException(file.getAbsolutePath());
                     }
-                    byte[] bytes = baos.toByteArray();
+                    // The file is sent as parameter directly, such that it is base64-encoded while streaming the call
                     int size = Math.max(((int) file.length() * 2) + XMLRPC_EXTRA_PADDING, XMLRPC_MINIMUM_SIZE);
                     if (version >= 904) {
                         makeRtorrentCall(log, "network.xmlrpc.size_limit.set", new Object[]{"", size + XMLRPC_EXTRA_PADDING});
-                        makeRtorrentCall(log, "load.raw_start", new Object[]{"", bytes});
+                        makeRtorrentCall(log, "load.raw_start", new Object[]{"", file});
                     } else {
                         makeRtorrentCall(log, "set_xmlrpc_size_limit", new Object[]{size + XMLRPC_EXTRA_PADDING});
-                        makeRtorrentCall(log, "load_raw_start", new Object[]{bytes});
+                        makeRtorrentCall(log, "load_raw_start", new Object[]{file});
                     }
                     return new DaemonTaskSuccessResult(task);
 
@@ -326,6 +292,19 @@ public class RTorrentAdapter implements IDaemonAdapter {
 
     private Object makeRtorrentCall(Log log, String serverMethod, Object[] arguments)
             throws DaemonException, MalformedURLException {
+        return makeRtorrentCall(log, serverMethod, arguments, null);
+    }
+
+    /**
+     * Calls some server method, optionally streaming the rows of a multicall result to a row handler rather than
+     * building it as one Object[][] result.
+     *
+     * @param rowHandler The handler for the rows of a multicall result, or null to return the deserialized result
+     * @return The result of the call, or the number of rows if a row handler was supplied
+     */
+    private Object makeRtorrentCall(Log log, String serverMethod, Object[] arguments,
+                                    MulticallRowHandler<DaemonException> rowHandler)
+            throws DaemonException, MalformedURLException {
 
         // Initialise the HTTP client
         initialise();
@@ -339,6 +318,9 @@ public class RTorrentAdapter implements IDaemonAdapter {
         try {
             log.d(LOG_NAME, "Calling " + serverMethod + " with params [" +
                     s + " ]");
+            if (rowHandler != null) {
+                return rpcclient.callMulticall(rowHandler, serverMethod, arguments);
+            }
             return rpcclient.call(serverMethod, arguments);
         } catch (IllegalArgumentException e) {
             log.d(LOG_NAME, "Using " + buildWebUIUrl() + ": " + e.toString());
@@ -384,148 +366,138 @@ public class RTorrentAdapter implements IDaemonAdapter {
                 (TextUtils.isEmpty(folder) ? DEFAULT_RPC_URL : folder);
     }
 
-    private List<Torrent> onTorrentsRetrieved(Object response) throws DaemonException {
-
-        if (!(response instanceof Object[])) {
-
-            throw new DaemonException(ExceptionType.ParsingFailed,
-                    "Response on retrieveing torrents did not return a list of objects");
-
-        } else {
-
-            // Parse torrent list from response
-            // Formatted as Object[][], see http://libtorrent.rakshasa.no/wiki/RTorrentCommands#Download
-            List<Torrent> torrents = new ArrayList<>();
-            Map<String, Integer> labels = new HashMap<>();
-            Object[] responseList = (Object[]) response;
-            for (int i = 0; i < responseList.length; i++) {
-
-                Object[] info = (Object[]) responseList[i];
-                String error = (String) info[18];
-                error = error.equals("") ? null : error;
-
-                // Determine the time added
-                Date added;
-                Long addtime = null;
-                try {
-                    addtime = Long.valueOf(((String) info[19]).trim());
-                } catch (NumberFormatException e) {
-                    // Not a number (timestamp); ignore and fall back to using creationtime
-                }
-                if (addtime != null)
-                // Successfully received the addtime from rTorrent (which is a String like '1337089336\n')
-                {
-                    added = new Date(addtime * 1000L);
-                } else {
-                    // rTorrent didn't have the addtime (missing plugin?): base it on creationtime instead
-                    if (info[11] instanceof Long) {
-                        added = new Date((Long) info[11] * 1000L);
-                    } else {
-                        added = new Date((Integer) info[11] * 1000L);
-                    }
-                }
+    private List<Torrent> retrieveTorrents(Log log) throws DaemonException, MalformedURLException {
+
+        // Parse torrent list rows from the response as they are read
+        // Formatted as rows of values, see http://libtorrent.rakshasa.no/wiki/RTorrentCommands#Download
+        final List<Torrent> torrents = new ArrayList<>();
+        final Map<String, Integer> labels = new HashMap<>();
+        // @formatter:off
+        makeRtorrentCall(log, "d.multicall2",
+                new String[]{"", "main",
+                        "d.hash=",
+                        "d.name=",
+                        "d.state=",
+                        "d.down.rate=",
+                        "d.up.rate=",
+                        "d.peers_connected=",
+                        "d.peers_not_connected=",
+                        "d.peers_accounted=",
+                        "d.bytes_done=",
+                        "d.up.total=",
+                        "d.size_bytes=",
+                        "d.creation_date=",
+                        "d.left_bytes=",
+                        "d.complete=",
+                        "d.is_active=",
+                        "d.is_hash_checking=",
+                        "d.is_multi_file=",
+                        "d.base_filename=",
+                        "d.message=",
+                        "d.custom=addtime",
+                        "d.custom=seedingtime",
+                        "d.custom1=",
+                        "d.peers_complete=",
+                        "d.peers_accounted=",
+                        "d.is_open="},
+                row -> torrents.add(onTorrentRowRetrieved(row, labels)));
+        // @formatter:on
+
+        lastKnownLabels = new ArrayList<>();
+        for (Entry<String, Integer> pair : labels.entrySet()) {
+            if (pair.getKey() != null) {
+                lastKnownLabels.add(new Label(pair.getKey(), pair.getValue()));
+            }
+        }
+        return torrents;
 
-                // Determine the seeding time
-                Date finished = null;
-                Long seedingtime = null;
-                try {
-                    seedingtime = Long.valueOf(((String) info[20]).trim());
-                } catch (NumberFormatException e) {
-                    // Not a number (timestamp); ignore and fall back to using creationtime
-                }
-                if (seedingtime != null)
-                // Successfully received the seedingtime from rTorrent (which is a String like '1337089336\n')
-                {
-                    finished = new Date(seedingtime * 1000L);
-                }
+    }
 
-                // Determine the label
-                String label = null;
-                try {
-                    label = URLDecoder.decode((String) info[21], "UTF-8");
-                    if (labels.containsKey(label)) {
-                        labels.put(label, labels.get(label) + 1);
-                    } else {
-                        labels.put(label, 0);
-                    }
-                } catch (UnsupportedEncodingException e) {
-                    // Can't decode label name; ignore it
-                }
+    private Torrent onTorrentRowRetrieved(MulticallRow info, Map<String, Integer> labels) throws DaemonException {
 
-                String baseFilename = info[17] + "/";
+        try {
 
-                if (info[3] instanceof Long) {
+            String error = info.getString(18);
+            error = error.equals("") ? null : error;
 
-                    // rTorrent uses the i8 dialect which returns 64-bit integers
-                    long rateDownload = (Long) info[3];
+            // Determine the time added
+            Date added;
+            Long addtime = null;
+            try {
+                addtime = Long.valueOf(info.getString(19).trim());
+            } catch (NumberFormatException e) {
+                // Not a number (timestamp); ignore and fall back to using creationtime
+            }
+            if (addtime != null)
+            // Successfully received the addtime from rTorrent (which is a String like '1337089336\n')
+            {
+                added = new Date(addtime * 1000L);
+            } else {
+                // rTorrent didn't have the addtime (missing plugin?): base it on creationtime instead
+                added = new Date(info.getLong(11) * 1000L);
+            }
 
-                    // @formatter:off
-                    torrents.add(new Torrent(
-                            i,
-                            (String) info[0], // hash
-                            (String) info[1], // name
-                            convertTorrentStatus((Long) info[2], (Long) info[24], (Long) info[13], (Long) info[14], (Long) info[15]), // status
-                            (((Long) info[16]) == 1) ? baseFilename : "", // multi file? base_filename else ""
-                            ((Long) info[3]).intValue(), // rateDownload
-                            ((Long) info[4]).intValue(), // rateUpload
-                            ((Long) info[22]).intValue(), // seedersConnected
-                            ((Long) info[5]).intValue() + ((Long) info[6]).intValue(), // seedersKnown
-                            ((Long) info[23]).intValue(), // leechersConnected
-                            ((Long) info[5]).intValue() + ((Long) info[6]).intValue(), // leechersKnown
-                            (rateDownload > 0 ? (int) (((Long) info[12]) / rateDownload) : -1), // eta (bytes left / rate download, if rate > 0)
-                            (Long) info[8], // downloadedEver
-                            (Long) info[9], // uploadedEver
-                            (Long) info[10], // totalSize
-                            ((Long) info[8]).floatValue() / ((Long) info[10]).floatValue(), // partDone
-                            0f, // TODO: Add availability data
-                            label,
-                            added,
-                            finished,
-                            error,
-                            settings.getType()));
-                    // @formatter:on
+            // Determine the seeding time
+            Date finished = null;
+            Long seedingtime = null;
+            try {
+                seedingtime = Long.valueOf(info.getString(20).trim());
+            } catch (NumberFormatException e) {
+                // Not a number (timestamp); ignore and fall back to using creationtime
+            }
+            if (seedingtime != null)
+            // Successfully received the seedingtime from rTorrent (which is a String like '1337089336\n')
+            {
+                finished = new Date(seedingtime * 1000L);
+            }
 
+            // Determine the label
+            String label = null;
+            try {
+                label = URLDecoder.decode(info.getString(21), "UTF-8");
+                if (labels.containsKey(label)) {
+                    labels.put(label, labels.get(label) + 1);
                 } else {
-
-                    // rTorrent uses the default dialect with 32-bit integers
-                    int rateDownload = (Integer) info[3];
-
-                    // @formatter:off
-                    torrents.add(new Torrent(
-                            i,
-                            (String) info[0], // hash
-                            (String) info[1], // name
-                            convertTorrentStatus(((Integer) info[2]).longValue(), ((Integer) info[24]).longValue(), ((Integer) info[13]).longValue(), ((Integer) info[14]).longValue(), ((Integer) info[15]).longValue()), // status
-                            (((Integer) info[16]) == 1) ? baseFilename : "", // multi file? base_filename else ""
-                            rateDownload, // rateDownload
-                            (Integer) info[4], // rateUpload
-                            (Integer) info[22], // seedersConnected
-                            (Integer) info[5] + (Integer) info[6], // seedersKnown
-                            (Integer) info[23], // leechersConnected
-                            (Integer) info[5] + (Integer) info[6], // leechersKnown
-                            (rateDownload > 0 ? (Integer) info[12] / rateDownload : -1), // eta (bytes left / rate download, if rate > 0)
-                            (Integer) info[8], // downloadedEver
-                            (Integer) info[9], // uploadedEver
-                            (Integer) info[10], // totalSize
-                            ((Integer) info[8]).floatValue() / ((Integer) info[10]).floatValue(), // partDone
-                            0f, // TODO: Add availability data
-                            label,
-                            added,
-                            finished,
-                            error,
-                            settings.getType()));
-                    // @formatter:on
-
+                    labels.put(label, 0);
                 }
+            } catch (UnsupportedEncodingException e) {
+                // Can't decode label name; ignore it
             }
-            lastKnownLabels = new ArrayList<>();
-            for (Entry<String, Integer> pair : labels.entrySet()) {
-                if (pair.getKey() != null) {
-                    lastKnownLabels.add(new Label(pair.getKey(), pair.getValue()));
-                }
-            }
-            return torrents;
 
+            String baseFilename = info.getString(17) + "/";
+
+            // Integer values are read as long, whether rTorrent uses the i8 dialect (64-bit integers) or not
+            long rateDownload = info.getLong(3);
+
+            // @formatter:off
+            return new Torrent(
+                    info.getRowIndex(),
+                    info.getString(0), // hash
+                    info.getString(1), // name
+                    convertTorrentStatus(info.getLong(2), info.getLong(24), info.getLong(13), info.getLong(14), info.getLong(15)), // status
+                    (info.getLong(16) == 1) ? baseFilename : "", // multi file? base_filename else ""
+                    (int) rateDownload, // rateDownload
+                    info.getInt(4), // rateUpload
+                    info.getInt(22), // seedersConnected
+                    info.getInt(5) + info.getInt(6), // seedersKnown
+                    info.getInt(23), // leechersConnected
+                    info.getInt(5) + info.getInt(6), // leechersKnown
+                    (rateDownload > 0 ? (int) (info.getLong(12) / rateDownload) : -1), // eta (bytes left / rate download, if rate > 0)
+                    info.getLong(8), // downloadedEver
+                    info.getLong(9), // uploadedEver
+                    info.getLong(10), // totalSize
+                    (float) info.getLong(8) / (float) info.getLong(10), // partDone
+                    0f, // TODO: Add availability data
+                    label,
+                    added,
+                    finished,
+                    error,
+                    settings.getType());
+            // @formatter:on
+
+        } catch (IndexOutOfBoundsException | NumberFormatException e) {
+            throw new DaemonException(ExceptionType.ParsingFailed,
+                    "Response on retrieving torrents did not contain the expected values: " + e.toString());
         }
 
     }
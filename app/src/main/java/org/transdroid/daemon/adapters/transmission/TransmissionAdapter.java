@@ -62,7 +62,9 @@ import org.transdroid.daemon.task.SetDownloadLocationTask;
 import org.transdroid.daemon.task.SetFilePriorityTask;
 import org.transdroid.daemon.task.SetTransferRatesTask;
 import org.transdroid.daemon.util.HttpHelper;
+import org.transdroid.daemon.util.JsonStreamHelper;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -71,7 +73,9 @@ import java.io.StringWriter;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * The daemon adapter from the Transmission torrent client.
@@ -110,10 +114,21 @@ public class TransmissionAdapter implements IDaemonAdapter {
     private static final String RPC_FILE_COMPLETED = "bytesCompleted";
     private static final String RPC_FILESTAT_WANTED = "wanted";
     private static final String RPC_FILESTAT_PRIORITY = "priority";
-    private static String sessionToken;
+
+    // Transmission considers torrents 'recently active' for 60 seconds; we stay well within that window
+    private static final long RECENTLY_ACTIVE_WINDOW = 45 * 1000; // 45 seconds
+    private static final long FULL_RESYNC_INTERVAL = 5 * 60 * 1000; // 5 minutes
+    private static final int RECENTLY_ACTIVE_MIN_RPC_VERSION = 7;
+
     private DaemonSettings settings;
-    private DefaultHttpClient httpclient;
-    private long rpcVersion = -1;
+    private volatile DefaultHttpClient httpclient;
+    // Session token and RPC version are shared by concurrently executing requests
+    private volatile String sessionToken;
+    private volatile long rpcVersion = -1;
+    // All known torrents by their id, to merge recently-active updates into
+    private final Map<String, Torrent> torrentCache = new LinkedHashMap<>();
+    private long lastRetrieveTime = -1;
+    private long lastFullRetrieveTime = -1;
 
     public TransmissionAdapter(DaemonSettings settings) {
         this.settings = settings;
@@ -135,21 +150,8 @@ public class TransmissionAdapter implements IDaemonAdapter {
             switch (task.getMethod()) {
                 case Retrieve:
 
-                    // Request all torrents from server
-                    JSONArray fields = new JSONArray();
-                    final String[] fieldsArray =
-                            new String[]{RPC_ID, RPC_NAME, RPC_ERROR, RPC_ERRORSTRING, RPC_STATUS, RPC_DOWNLOADDIR,
-                                    RPC_RATEDOWNLOAD, RPC_RATEUPLOAD, RPC_PEERSGETTING, RPC_PEERSSENDING,
-                                    RPC_PEERSCONNECTED, RPC_ETA, RPC_DOWNLOADSIZE1, RPC_DOWNLOADSIZE2, RPC_UPLOADEDEVER,
-                                    RPC_TOTALSIZE, RPC_DATEADDED, RPC_DATEDONE, RPC_AVAILABLE, RPC_COMMENT};
-                    for (String field : fieldsArray) {
-                        fields.put(field);
-                    }
-                    request.put("fields", fields);
-
-                    JSONObject result = makeRequest(log, buildRequestObject("torrent-get", request));
-                    return new RetrieveTaskSuccessResult((RetrieveTask) task,
-                            parseJsonRetrieveTorrents(result.getJSONObject("arguments")), null);
+                    // Request all (or only the recently changed) torrents from server
+                    return new RetrieveTaskSuccessResult((RetrieveTask) task, retrieveTorrents(log), null);
 
                 case GetStats:
 
@@ -192,8 +194,8 @@ public class TransmissionAdapter implements IDaemonAdapter {
                     String file = ((AddByFileTask) task).getFile();
 
                     // Encode the .torrent file's data
-                    InputStream in =
-                            new InputStream(new FileInputStream(new File(URI.create(file))), Base64.ENCODE);
+                    InputStream in = new InputStream(
+                            new BufferedInputStream(new FileInputStream(new File(URI.create(file)))), Base64.ENCODE);
                     StringWriter writer = new StringWriter();
                     int c;
                     while ((c = in.read()) != -1) {
@@ -365,6 +367,101 @@ public class TransmissionAdapter implements IDaemonAdapter {
         }
     }
 
+    /**
+     * Retrieves the full torrent list. If the last retrieval was recent enough, only the recently-active torrents (and
+     * the ids of removed torrents) are requested and merged into the locally cached torrents. A full retrieval is done
+     * on first use, after a pause longer than Transmission's recently-active window and periodically to resync.
+     */
+    private synchronized List<Torrent> retrieveTorrents(Log log) throws JSONException, DaemonException {
+
+        long now = System.currentTimeMillis();
+        boolean incremental = rpcVersion >= RECENTLY_ACTIVE_MIN_RPC_VERSION && lastRetrieveTime > 0
+                && now - lastRetrieveTime < RECENTLY_ACTIVE_WINDOW && now - lastFullRetrieveTime < FULL_RESYNC_INTERVAL;
+
+        JSONObject request = new JSONObject();
+        JSONArray fields = new JSONArray();
+        final String[] fieldsArray =
+                new String[]{RPC_ID, RPC_NAME, RPC_ERROR, RPC_ERRORSTRING, RPC_STATUS, RPC_DOWNLOADDIR,
+                        RPC_RATEDOWNLOAD, RPC_RATEUPLOAD, RPC_PEERSGETTING, RPC_PEERSSENDING,
+                        RPC_PEERSCONNECTED, RPC_ETA, RPC_DOWNLOADSIZE1, RPC_DOWNLOADSIZE2, RPC_UPLOADEDEVER,
+                        RPC_TOTALSIZE, RPC_DATEADDED, RPC_DATEDONE, RPC_AVAILABLE, RPC_COMMENT};
+        for (String field : fieldsArray) {
+            fields.put(field);
+        }
+        request.put("fields", fields);
+        if (incremental) {
+            request.put("ids", "recently-active");
+        }
+
+        // Stream the response, mapping every torrent as soon as it is read
+        final List<Torrent> changed = new ArrayList<>();
+        final List<Long> removed = new ArrayList<>();
+        HttpEntity entity = executeRequest(log, buildRequestObject("torrent-get", request));
+        try {
+            JsonStreamHelper.read(entity.getContent(), reader -> {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (!reader.nextName().equals("arguments")) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String argument = reader.nextName();
+                        if (argument.equals("torrents")) {
+                            JsonStreamHelper.readRecords(reader,
+                                    (key, tor) -> changed.add(parseJsonRetrieveTorrent(tor)));
+                        } else if (argument.equals("removed")) {
+                            reader.beginArray();
+                            while (reader.hasNext()) {
+                                removed.add(reader.nextLong());
+                            }
+                            reader.endArray();
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                }
+                reader.endObject();
+                return null;
+            });
+        } catch (IOException e) {
+            resetRetrieveState();
+            throw new DaemonException(ExceptionType.ConnectionError, e.toString());
+        } catch (DaemonException | RuntimeException e) {
+            // Torrents that changed in this response might be missed by the next incremental retrieval
+            resetRetrieveState();
+            throw e;
+        }
+
+        if (!incremental) {
+            torrentCache.clear();
+            lastFullRetrieveTime = now;
+        }
+        for (Torrent torrent : changed) {
+            torrentCache.put(torrent.getUniqueID(), torrent);
+        }
+        for (Long removedId : removed) {
+            torrentCache.remove(Long.toString(removedId));
+        }
+        lastRetrieveTime = now;
+        log.d(LOG_NAME, (incremental ? "Merged " : "Retrieved ") + changed.size() + " torrents, " +
+                torrentCache.size() + " in total");
+
+        return new ArrayList<>(torrentCache.values());
+
+    }
+
+    /**
+     * Forgets the cached torrents, such that the next retrieval is a full one.
+     */
+    private synchronized void resetRetrieveState() {
+        torrentCache.clear();
+        lastRetrieveTime = -1;
+        lastFullRetrieveTime = -1;
+    }
+
     private JSONObject buildTorrentRequestObject(String torrentID, String extraKey, boolean extraValue)
             throws JSONException {
         return buildTorrentRequestObject(Long.parseLong(torrentID), extraKey, extraValue);
@@ -397,7 +494,41 @@ public class TransmissionAdapter implements IDaemonAdapter {
         return request;
     }
 
-    private synchronized JSONObject makeRequest(Log log, JSONObject data) throws DaemonException {
+    private JSONObject makeRequest(Log log, JSONObject data) throws DaemonException {
+
+        try {
+
+            // Read JSON response
+            HttpEntity entity = executeRequest(log, data);
+            java.io.InputStream instream = entity.getContent();
+            String result = HttpHelper.convertStreamToString(instream);
+            log.d(LOG_NAME, "Received content response starting with " +
+                    (result.length() > 100 ? result.substring(0, 100) + "..." : result));
+            JSONObject json = new JSONObject(result);
+            instream.close();
+
+            // Return the JSON object
+            return json;
+
+        } catch (DaemonException e) {
+            throw e;
+        } catch (JSONException e) {
+            log.d(LOG_NAME, "Error: " + e.toString());
+            throw new DaemonException(ExceptionType.ParsingFailed, e.toString());
+        } catch (Exception e) {
+            log.d(LOG_NAME, "Error: " + e.toString());
+            throw new DaemonException(ExceptionType.ConnectionError, e.toString());
+        }
+
+    }
+
+    /**
+     * Executes an RPC request, retrying once if the server hands out a new session token. Requests are not serialized,
+     * so multiple tasks can execute concurrently against the same server.
+     *
+     * @return The (non-null) entity of the HTTP response, of which the content is not read yet
+     */
+    private HttpEntity executeRequest(Log log, JSONObject data) throws DaemonException {
 
         try {
 
@@ -411,8 +542,9 @@ public class TransmissionAdapter implements IDaemonAdapter {
             httppost.setEntity(se);
 
             // Send the stored session token as a header
-            if (sessionToken != null) {
-                httppost.addHeader(sessionHeader, sessionToken);
+            String token = sessionToken;
+            if (token != null) {
+                httppost.addHeader(sessionHeader, token);
             }
 
             // Execute
@@ -430,28 +562,22 @@ public class TransmissionAdapter implements IDaemonAdapter {
 
                 // Retry post, but this time with the new session token that was encapsulated in the 409 response
                 log.d(LOG_NAME, "Receive HTTP 409 with new session code; now try again for the actual request");
-                sessionToken = response.getFirstHeader(sessionHeader).getValue();
-                httppost.addHeader(sessionHeader, sessionToken);
+                if (response.getEntity() != null) {
+                    response.getEntity().consumeContent();
+                }
+                token = response.getFirstHeader(sessionHeader).getValue();
+                sessionToken = token;
+                httppost.setHeader(sessionHeader, token);
                 log.d(LOG_NAME,
                         "Retry to execute " + data.getString("method") + " request, now with " + sessionHeader + ": " +
-                                sessionToken);
+                                token);
                 response = httpclient.execute(httppost);
 
             }
 
             HttpEntity entity = response.getEntity();
             if (entity != null) {
-
-                // Read JSON response
-                java.io.InputStream instream = entity.getContent();
-                String result = HttpHelper.convertStreamToString(instream);
-                log.d(LOG_NAME, "Received content response starting with " +
-                        (result.length() > 100 ? result.substring(0, 100) + "..." : result));
-                JSONObject json = new JSONObject(result);
-                instream.close();
-
-                // Return the JSON object
-                return json;
+                return entity;
             }
 
             log.d(LOG_NAME, "Error: No entity in HTTP response");
@@ -474,9 +600,14 @@ public class TransmissionAdapter implements IDaemonAdapter {
      *
      * @throws DaemonException On conflicting or missing settings
      */
-    private synchronized void initialise() throws DaemonException {
-        if(httpclient == null) {
-            httpclient = HttpHelper.createStandardHttpClient(settings, true);
+    private void initialise() throws DaemonException {
+        if (httpclient != null) {
+            return;
+        }
+        synchronized (this) {
+            if (httpclient == null) {
+                httpclient = HttpHelper.createStandardHttpClient(settings, true);
+            }
         }
     }
 
@@ -499,58 +630,49 @@ public class TransmissionAdapter implements IDaemonAdapter {
                 folder + "/rpc";
     }
 
-    private ArrayList<Torrent> parseJsonRetrieveTorrents(JSONObject response) throws JSONException {
-
-        // Parse response
-        ArrayList<Torrent> torrents = new ArrayList<>();
-        JSONArray rarray = response.getJSONArray("torrents");
-        for (int i = 0; i < rarray.length(); i++) {
-            JSONObject tor = rarray.getJSONObject(i);
-            // Add the parsed torrent to the list
-            float have = (float) (tor.getLong(RPC_DOWNLOADSIZE1) + tor.getLong(RPC_DOWNLOADSIZE2));
-            long total = tor.getLong(RPC_TOTALSIZE);
-            // Error is a number, see https://trac.transmissionbt.com/browser/trunk/libtransmission/transmission.h#L1747
-            // We only consider it a real error if it is local (blocking), which is error code 3
-            boolean hasError = tor.getInt(RPC_ERROR) == 3;
-            String errorString = tor.getString(RPC_ERRORSTRING).trim();
-            String commentString = tor.getString(RPC_COMMENT).trim();
-            if (!commentString.equals("")) {
-                errorString = errorString.equals("") ? commentString : errorString + "\n" + commentString;
-            }
-            String locationDir = tor.getString(RPC_DOWNLOADDIR);
-            if (!locationDir.endsWith(settings.getOS().getPathSeperator())) {
-                locationDir += settings.getOS().getPathSeperator();
-            }
-            // @formatter:off
-            torrents.add(new Torrent(
-                    tor.getInt(RPC_ID),
-                    null,
-                    tor.getString(RPC_NAME),
-                    hasError ? TorrentStatus.Error : getStatus(tor.getInt(RPC_STATUS)),
-                    locationDir,
-                    tor.getInt(RPC_RATEDOWNLOAD),
-                    tor.getInt(RPC_RATEUPLOAD),
-                    tor.getInt(RPC_PEERSSENDING),
-                    tor.getInt(RPC_PEERSCONNECTED),
-                    tor.getInt(RPC_PEERSGETTING),
-                    tor.getInt(RPC_PEERSCONNECTED),
-                    tor.getInt(RPC_ETA),
-                    tor.getLong(RPC_DOWNLOADSIZE1) + tor.getLong(RPC_DOWNLOADSIZE2),
-                    tor.getLong(RPC_UPLOADEDEVER),
-                    tor.getLong(RPC_TOTALSIZE),
-                    //(float) tor.getDouble(RPC_PERCENTDONE),
-                    (total == 0 ? 0 : have / (float) total),
-                    (total == 0 ? 0 : (have + (float) tor.getLong(RPC_AVAILABLE)) / (float) total),
-                    // No label/category/group support in the RPC API for now
-                    null,
-                    new Date(tor.getLong(RPC_DATEADDED) * 1000L),
-                    new Date(tor.getLong(RPC_DATEDONE) * 1000L),
-                    errorString, settings.getType()));
-            // @formatter:on
+    private Torrent parseJsonRetrieveTorrent(JSONObject tor) throws JSONException {
+
+        // Parse a single torrent record
+        float have = (float) (tor.getLong(RPC_DOWNLOADSIZE1) + tor.getLong(RPC_DOWNLOADSIZE2));
+        long total = tor.getLong(RPC_TOTALSIZE);
+        // Error is a number, see https://trac.transmissionbt.com/browser/trunk/libtransmission/transmission.h#L1747
+        // We only consider it a real error if it is local (blocking), which is error code 3
+        boolean hasError = tor.getInt(RPC_ERROR) == 3;
+        String errorString = tor.getString(RPC_ERRORSTRING).trim();
+        String commentString = tor.getString(RPC_COMMENT).trim();
+        if (!commentString.equals("")) {
+            errorString = errorString.equals("") ? commentString : errorString + "\n" + commentString;
         }
-
-        // Return the list
-        return torrents;
+        String locationDir = tor.getString(RPC_DOWNLOADDIR);
+        if (!locationDir.endsWith(settings.getOS().getPathSeperator())) {
+            locationDir += settings.getOS().getPathSeperator();
+        }
+        // @formatter:off
+        return new Torrent(
+                tor.getInt(RPC_ID),
+                null,
+                tor.getString(RPC_NAME),
+                hasError ? TorrentStatus.Error : getStatus(tor.getInt(RPC_STATUS)),
+                locationDir,
+                tor.getInt(RPC_RATEDOWNLOAD),
+                tor.getInt(RPC_RATEUPLOAD),
+                tor.getInt(RPC_PEERSSENDING),
+                tor.getInt(RPC_PEERSCONNECTED),
+                tor.getInt(RPC_PEERSGETTING),
+                tor.getInt(RPC_PEERSCONNECTED),
+                tor.getInt(RPC_ETA),
+                tor.getLong(RPC_DOWNLOADSIZE1) + tor.getLong(RPC_DOWNLOADSIZE2),
+                tor.getLong(RPC_UPLOADEDEVER),
+                tor.getLong(RPC_TOTALSIZE),
+                //(float) tor.getDouble(RPC_PERCENTDONE),
+                (total == 0 ? 0 : have / (float) total),
+                (total == 0 ? 0 : (have + (float) tor.getLong(RPC_AVAILABLE)) / (float) total),
+                // No label/category/group support in the RPC API for now
+                null,
+                new Date(tor.getLong(RPC_DATEADDED) * 1000L),
+                new Date(tor.getLong(RPC_DATEDONE) * 1000L),
+                errorString, settings.getType());
+        // @formatter:on
 
     }
 
@@ -74,7 +74,9 @@ import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * An adapter that allows for easy access to uTorrent torrent data. Communication is handled via authenticated JSON-RPC
@@ -118,6 +120,11 @@ public class UTorrentAdapter implements IDaemonAdapter, RemoteRssSupplier {
     private static ArrayList<RemoteRssChannel> remoteRssChannels = new ArrayList<>();
     private DaemonSettings settings;
     private DefaultHttpClient httpclient;
+    // Incremental listing: the last cache id (cid) and the raw torrent rows by hash and rss feed rows by id
+    private String cacheId;
+    private final Map<String, JSONArray> torrentRows = new LinkedHashMap<>();
+    private final Map<Integer, JSONArray> rssFeedRows = new LinkedHashMap<>();
+    private JSONArray labelRows = new JSONArray();
 
     /**
      * Initialises an adapter that provides operations to the uTorrent web daemon
@@ -133,17 +140,14 @@ public class UTorrentAdapter implements IDaemonAdapter, RemoteRssSupplier {
             switch (task.getMethod()) {
                 case Retrieve:
 
-                    // Request all torrents from server
-                    JSONObject result = makeUtorrentRequest(log, "&list=1");
-
-                    if (result.has("rssfeeds")) {
-                        parseJsonRemoteRssLists(result.getJSONArray("rssfeeds"));
+                    // Request the torrents that changed since the last listing from server
+                    synchronized (this) {
+                        updateTorrentList(log);
+                        return new RetrieveTaskSuccessResult((RetrieveTask) task,
+                                parseJsonRetrieveTorrents(new JSONArray(torrentRows.values())),
+                                parseJsonRetrieveGetLabels(labelRows));
                     }
 
-                    return new RetrieveTaskSuccessResult((RetrieveTask) task,
-                            parseJsonRetrieveTorrents(result.getJSONArray("torrents")),
-                            parseJsonRetrieveGetLabels(result.getJSONArray("label")));
-
                 case GetTorrentDetails:
 
                     // Request fine details of a specific torrent
@@ -321,6 +325,84 @@ public class UTorrentAdapter implements IDaemonAdapter, RemoteRssSupplier {
         }
     }
 
+    /**
+     * Requests the torrent list, passing the cache id (cid) of the last listing so that uTorrent only returns the
+     * changed (torrentp) and removed (torrentm) torrents, which are merged into the locally kept rows. The first request
+     * (or one after a failure) has no cid and returns the full torrents list.
+     */
+    private synchronized void updateTorrentList(Log log) throws DaemonException, JSONException {
+
+        JSONObject result;
+        try {
+            result = makeUtorrentRequest(log, "&list=1" + (cacheId == null ? "" : "&cid=" + cacheId));
+        } catch (DaemonException e) {
+            // Start over with a full listing next time
+            cacheId = null;
+            throw e;
+        }
+
+        try {
+            if (result.has("torrents")) {
+                torrentRows.clear();
+                putTorrentRows(result.getJSONArray("torrents"));
+            }
+            if (result.has("torrentp")) {
+                putTorrentRows(result.getJSONArray("torrentp"));
+            }
+            if (result.has("torrentm")) {
+                JSONArray removed = result.getJSONArray("torrentm");
+                for (int i = 0; i < removed.length(); i++) {
+                    torrentRows.remove(removed.getString(i));
+                }
+            }
+            if (result.has("label")) {
+                labelRows = result.getJSONArray("label");
+            }
+
+            // RSS feeds are sent in the same full or incremental fashion
+            boolean rssChanged = false;
+            if (result.has("rssfeeds")) {
+                rssFeedRows.clear();
+                putRssFeedRows(result.getJSONArray("rssfeeds"));
+                rssChanged = true;
+            }
+            if (result.has("rssfeedp")) {
+                putRssFeedRows(result.getJSONArray("rssfeedp"));
+                rssChanged = true;
+            }
+            if (result.has("rssfeedm")) {
+                JSONArray removed = result.getJSONArray("rssfeedm");
+                for (int i = 0; i < removed.length(); i++) {
+                    rssFeedRows.remove(removed.getInt(i));
+                }
+                rssChanged = true;
+            }
+            if (rssChanged) {
+                parseJsonRemoteRssLists(new JSONArray(rssFeedRows.values()));
+            }
+
+            cacheId = result.optString("torrentc", null);
+        } catch (JSONException e) {
+            cacheId = null;
+            throw e;
+        }
+
+    }
+
+    private void putTorrentRows(JSONArray rows) throws JSONException {
+        for (int i = 0; i < rows.length(); i++) {
+            JSONArray row = rows.getJSONArray(i);
+            torrentRows.put(row.getString(RPC_HASH_IDX), row);
+        }
+    }
+
+    private void putRssFeedRows(JSONArray rows) throws JSONException {
+        for (int i = 0; i < rows.length(); i++) {
+            JSONArray row = rows.getJSONArray(i);
+            rssFeedRows.put(row.getInt(0), row);
+        }
+    }
+
     private synchronized void parseJsonRemoteRssLists(JSONArray results) {
         remoteRssChannels = new ArrayList<>();
         RemoteRssChannel item;
@@ -622,16 +704,17 @@ public class UTorrentAdapter implements IDaemonAdapter, RemoteRssSupplier {
 
     }
 
-    private String getAllHashes(Log log) throws DaemonException, JSONException {
+    private synchronized String getAllHashes(Log log) throws DaemonException, JSONException {
 
-        // Make a retrieve torrents call first to gather all hashes
-        JSONObject result = makeUtorrentRequest(log, "&list=1");
-        ArrayList<Torrent> torrents = parseJsonRetrieveTorrents(result.getJSONArray("torrents"));
+        // Only if we never listed the torrents yet we need a retrieve call first to gather all hashes
+        if (cacheId == null) {
+            updateTorrentList(log);
+        }
 
         // Build a string of hashes of all the torrents
         StringBuilder hashes = new StringBuilder();
-        for (Torrent torrent : torrents) {
-            hashes.append(RPC_URL_HASH).append(torrent.getUniqueID());
+        for (String hash : torrentRows.keySet()) {
+            hashes.append(RPC_URL_HASH).append(hash);
         }
         return hashes.toString();
 
@@ -66,14 +66,15 @@ public class VuzeAdapter implements IDaemonAdapter {
 
     private static final String RPC_URL = "/process.cgi";
 
-    private VuzeXmlOverHttpClient rpcclient;
+    private volatile VuzeXmlOverHttpClient rpcclient;
     private DaemonSettings settings;
 
-    private Long savedConnectionID;
-    private Long savedPluginID;
-    private Long savedDownloadManagerID;
-    private Long savedTorrentManagerID;
-    private Long savedPluginConfigID;
+    // Object IDs are requested once, under the adapter lock, and then used by concurrently executing calls
+    private volatile Long savedConnectionID;
+    private volatile Long savedPluginID;
+    private volatile Long savedDownloadManagerID;
+    private volatile Long savedTorrentManagerID;
+    private volatile Long savedPluginConfigID;
 
     public VuzeAdapter(DaemonSettings settings) {
         this.settings = settings;
@@ -221,7 +222,7 @@ public class VuzeAdapter implements IDaemonAdapter {
         return makeVuzeCall(method, serverMethod, null, new Object[]{}, null);
     }
 
-    private synchronized Map<String, Object> makeVuzeCall(DaemonMethod method, String serverMethod, Long actOnObject, Object[] params, TorrentStatus torrentStatus) throws DaemonException {
+    private Map<String, Object> makeVuzeCall(DaemonMethod method, String serverMethod, Long actOnObject, Object[] params, TorrentStatus torrentStatus) throws DaemonException {
 
         // TODO: It would be nicer to now split each of these steps into separate makeVuzeCalls when there are multiple logical steps such as stopping a torrent before removing it
 
@@ -231,15 +232,8 @@ public class VuzeAdapter implements IDaemonAdapter {
             throw new DaemonException(DaemonException.ExceptionType.AuthenticationFailure, "No host name specified.");
         }
 
-        if (savedConnectionID == null || savedPluginID == null) {
-            // Get plug-in interface (for connection and plug-in object IDs)
-            Map<String, Object> plugin = rpcclient.callXMLRPC(null, "getSingleton", null, null, false);
-            if (!plugin.containsKey("_connection_id")) {
-                throw new DaemonException(ExceptionType.UnexpectedResponse, "No connection ID returned on getSingleton request.");
-            }
-            savedConnectionID = (Long) plugin.get("_connection_id");
-            savedPluginID = (Long) plugin.get("_object_id");
-        }
+        // Get plug-in interface (for connection and plug-in object IDs)
+        ensureConnection();
 
         // If no specific torrent was provided, get the download manager or plugin config to execute the method against
         long vuzeObjectID;
@@ -247,54 +241,20 @@ public class VuzeAdapter implements IDaemonAdapter {
             if (method == DaemonMethod.SetTransferRates) {
 
                 // Execute this method against the plugin config (setParameter)
-                if (savedPluginConfigID == null) {
-                    // Plugin config needed, but we don't know it's ID yet
-                    Map<String, Object> config = rpcclient.callXMLRPC(savedPluginID, "getPluginconfig", null, savedConnectionID, false);
-                    if (!config.containsKey("_object_id")) {
-                        throw new DaemonException(ExceptionType.UnexpectedResponse, "No plugin config ID returned on getPluginconfig");
-                    }
-                    savedPluginConfigID = (Long) config.get("_object_id");
-                }
-                // We stored the plugin config ID, so no need to ask for it again
-                vuzeObjectID = savedPluginConfigID;
+                vuzeObjectID = getPluginConfigID();
 
             } else if (serverMethod.equals("createFromBEncodedData[byte[]]")) {
 
                 // Execute this method against the torrent manager (createFromBEncodedData)
-                if (savedTorrentManagerID == null) {
-                    // Download manager needed, but we don't know it's ID yet
-                    Map<String, Object> manager = rpcclient.callXMLRPC(savedPluginID, "getTorrentManager", null, savedConnectionID, false);
-                    if (!manager.containsKey("_object_id")) {
-                        throw new DaemonException(ExceptionType.UnexpectedResponse, "No torrent manager ID returned on getTorrentManager");
-                    }
-                    savedTorrentManagerID = (Long) manager.get("_object_id");
-                }
-                // We stored the torrent manager ID, so no need to ask for it again
-                vuzeObjectID = savedTorrentManagerID;
+                vuzeObjectID = getTorrentManagerID();
 
                 // And we will need the download manager as well later on (for addDownload after createFromBEncodedData)
-                if (savedDownloadManagerID == null) {
-                    // Download manager needed, but we don't know it's ID yet
-                    Map<String, Object> manager = rpcclient.callXMLRPC(savedPluginID, "getDownloadManager", null, savedConnectionID, false);
-                    if (!manager.containsKey("_object_id")) {
-                        throw new DaemonException(ExceptionType.UnexpectedResponse, "No download manager ID returned on getDownloadManager");
-                    }
-                    savedDownloadManagerID = (Long) manager.get("_object_id");
-                }
+                getDownloadManagerID();
 
             } else {
 
                 // Execute this method against download manager (addDownload, startAllDownloads, etc.)
-                if (savedDownloadManagerID == null) {
-                    // Download manager needed, but we don't know it's ID yet
-                    Map<String, Object> manager = rpcclient.callXMLRPC(savedPluginID, "getDownloadManager", null, savedConnectionID, false);
-                    if (!manager.containsKey("_object_id")) {
-                        throw new DaemonException(ExceptionType.UnexpectedResponse, "No download manager ID returned on getDownloadManager");
-                    }
-                    savedDownloadManagerID = (Long) manager.get("_object_id");
-                }
-                // We stored the download manager ID, so no need to ask for it again
-                vuzeObjectID = savedDownloadManagerID;
+                vuzeObjectID = getDownloadManagerID();
 
             }
         } else {
@@ -312,7 +272,7 @@ public class VuzeAdapter implements IDaemonAdapter {
             // We first do the createFromBEncodedData call and next actually add it
             Map<String, Object> torrentData = rpcclient.callXMLRPC(vuzeObjectID, serverMethod, params, savedConnectionID, false);
             serverMethod = "addDownload[Torrent]";
-            vuzeObjectID = savedDownloadManagerID;
+            vuzeObjectID = getDownloadManagerID();
             params = new String[]{torrentData.get("_object_id").toString()};
             paramsAreVuzeObjects = true;
         }
@@ -322,14 +282,73 @@ public class VuzeAdapter implements IDaemonAdapter {
 
     }
 
+    /**
+     * Requests the connection and plug-in object IDs, if these are not known yet. Concurrent calls wait for the first
+     * to complete, after which calls to the server may execute concurrently.
+     */
+    private synchronized void ensureConnection() throws DaemonException {
+        if (savedConnectionID == null || savedPluginID == null) {
+            Map<String, Object> plugin = rpcclient.callXMLRPC(null, "getSingleton", null, null, false);
+            if (!plugin.containsKey("_connection_id")) {
+                throw new DaemonException(ExceptionType.UnexpectedResponse, "No connection ID returned on getSingleton request.");
+            }
+            savedPluginID = (Long) plugin.get("_object_id");
+            savedConnectionID = (Long) plugin.get("_connection_id");
+        }
+    }
+
+    private synchronized long getPluginConfigID() throws DaemonException {
+        if (savedPluginConfigID == null) {
+            // Plugin config needed, but we don't know it's ID yet
+            Map<String, Object> config = rpcclient.callXMLRPC(savedPluginID, "getPluginconfig", null, savedConnectionID, false);
+            if (!config.containsKey("_object_id")) {
+                throw new DaemonException(ExceptionType.UnexpectedResponse, "No plugin config ID returned on getPluginconfig");
+            }
+            savedPluginConfigID = (Long) config.get("_object_id");
+        }
+        // We stored the plugin config ID, so no need to ask for it again
+        return savedPluginConfigID;
+    }
+
+    private synchronized long getTorrentManagerID() throws DaemonException {
+        if (savedTorrentManagerID == null) {
+            // Torrent manager needed, but we don't know it's ID yet
+            Map<String, Object> manager = rpcclient.callXMLRPC(savedPluginID, "getTorrentManager", null, savedConnectionID, false);
+            if (!manager.containsKey("_object_id")) {
+                throw new DaemonException(ExceptionType.UnexpectedResponse, "No torrent manager ID returned on getTorrentManager");
+            }
+            savedTorrentManagerID = (Long) manager.get("_object_id");
+        }
+        // We stored the torrent manager ID, so no need to ask for it again
+        return savedTorrentManagerID;
+    }
+
+    private synchronized long getDownloadManagerID() throws DaemonException {
+        if (savedDownloadManagerID == null) {
+            // Download manager needed, but we don't know it's ID yet
+            Map<String, Object> manager = rpcclient.callXMLRPC(savedPluginID, "getDownloadManager", null, savedConnectionID, false);
+            if (!manager.containsKey("_object_id")) {
+                throw new DaemonException(ExceptionType.UnexpectedResponse, "No download manager ID returned on getDownloadManager");
+            }
+            savedDownloadManagerID = (Long) manager.get("_object_id");
+        }
+        // We stored the download manager ID, so no need to ask for it again
+        return savedDownloadManagerID;
+    }
+
     /**
      * Instantiates a Vuze XML over HTTP client with proper credentials.
      *
      * @throws DaemonException On conflicting settings (i.e. user authentication but no password or username provided)
      */
-    private synchronized void initialise() throws DaemonException {
-        if(rpcclient == null) {
-            rpcclient = new VuzeXmlOverHttpClient(settings, buildWebUIUrl());
+    private void initialise() throws DaemonException {
+        if (rpcclient != null) {
+            return;
+        }
+        synchronized (this) {
+            if (rpcclient == null) {
+                rpcclient = new VuzeXmlOverHttpClient(settings, buildWebUIUrl());
+            }
         }
     }
 
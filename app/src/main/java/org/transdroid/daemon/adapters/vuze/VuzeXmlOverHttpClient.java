@@ -27,20 +27,18 @@ import org.apache.http.HttpStatus;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.methods.HttpPost;
-import org.apache.http.conn.scheme.PlainSocketFactory;
-import org.apache.http.conn.scheme.Scheme;
-import org.apache.http.conn.scheme.SchemeRegistry;
-import org.apache.http.conn.scheme.SocketFactory;
+import org.apache.http.conn.params.ConnManagerParams;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
 import org.apache.http.params.HttpProtocolParams;
 import org.transdroid.daemon.DaemonException;
 import org.transdroid.daemon.DaemonException.ExceptionType;
 import org.transdroid.daemon.DaemonSettings;
-import org.transdroid.daemon.util.TlsSniSocketFactory;
+import org.transdroid.daemon.util.HttpTransport;
+import org.transdroid.daemon.util.RequestAborter;
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlPullParserFactory;
@@ -88,7 +86,7 @@ public class VuzeXmlOverHttpClient {
     private final static String TAG_CACHED_PROPERTY_NAMES = "cached_property_names";
 
     private DefaultHttpClient client;
-    private HttpPost postMethod;
+    private URI uri;
     private Random random;
     private String username;
     private String password;
@@ -101,31 +99,21 @@ public class VuzeXmlOverHttpClient {
      * @throws DaemonException Thrown when settings are missing or conflicting
      */
     public VuzeXmlOverHttpClient(DaemonSettings settings, URI uri) throws DaemonException {
-        postMethod = new HttpPost(uri);
-        postMethod.addHeader("Content-Type", "text/xml");
+        this.uri = uri;
 
         // WARNING
         // I had to disable "Expect: 100-Continue" header since I had
         // two second delay between sending http POST request and POST body
-        HttpParams httpParams = postMethod.getParams();
+        HttpParams httpParams = new BasicHttpParams();
         HttpProtocolParams.setUseExpectContinue(httpParams, false);
 
         HttpConnectionParams.setConnectionTimeout(httpParams, settings.getTimeoutInMilliseconds());
         HttpConnectionParams.setSoTimeout(httpParams, settings.getTimeoutInMilliseconds());
+        ConnManagerParams.setTimeout(httpParams, settings.getTimeoutInMilliseconds());
 
-        SchemeRegistry registry = new SchemeRegistry();
-        SocketFactory httpsSocketFactory;
-        if (settings.getSslTrustKey() != null) {
-            httpsSocketFactory = new TlsSniSocketFactory(settings.getSslTrustKey());
-        } else if (settings.getSslTrustAll()) {
-            httpsSocketFactory = new TlsSniSocketFactory(true);
-        } else {
-            httpsSocketFactory = new TlsSniSocketFactory();
-        }
-        registry.register(new Scheme("http", new PlainSocketFactory(), 80));
-        registry.register(new Scheme("https", httpsSocketFactory, 443));
-
-        client = new DefaultHttpClient(new ThreadSafeClientConnManager(httpParams, registry), httpParams);
+        client = new DefaultHttpClient(
+                HttpTransport.getConnectionManager(settings.getSslTrustAll(), settings.getSslTrustKey()), httpParams);
+        client.addRequestInterceptor(RequestAborter.INTERCEPTOR);
         if (settings.shouldUseAuthentication()) {
             if (settings.getUsername() == null || settings.getPassword() == null) {
                 throw new DaemonException(DaemonException.ExceptionType.AuthenticationFailure, "No username or password set, while authentication was enabled.");
@@ -133,7 +121,7 @@ public class VuzeXmlOverHttpClient {
                 username = settings.getUsername();
                 password = settings.getPassword();
                 client.getCredentialsProvider().setCredentials(
-                        new AuthScope(postMethod.getURI().getHost(), postMethod.getURI().getPort(), AuthScope.ANY_REALM),
+                        new AuthScope(uri.getHost(), uri.getPort(), AuthScope.ANY_REALM),
                         new UsernamePasswordCredentials(username, password));
             }
         }
@@ -236,7 +224,9 @@ public class VuzeXmlOverHttpClient {
             serializer.endTag(null, TAG_REQUEST);
             serializer.endDocument();
 
-            // set POST body
+            // set POST body, using a new request object so that calls can execute concurrently
+            HttpPost postMethod = new HttpPost(uri);
+            postMethod.addHeader("Content-Type", "text/xml");
             HttpEntity entity = new StringEntity(bodyWriter.toString());
             postMethod.setEntity(entity);
 
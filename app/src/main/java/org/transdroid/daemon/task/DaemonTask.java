@@ -78,7 +78,27 @@ public class DaemonTask implements Parcelable {
      * @param log The logger to use when writing exceptions and debug information
      */
     public DaemonTaskResult execute(Log log) {
-        return adapter.executeTask(log, this);
+        DaemonTaskResult result = adapter.executeTask(log, this);
+        if (changesTorrents()) {
+            // Make sure the next retrieval will show the effect of this task
+            RetrieveTaskBroker.invalidate(adapter);
+        }
+        return result;
+    }
+
+    /**
+     * Whether executing this task may change the torrents on the server, as opposed to only reading data from it
+     */
+    private boolean changesTorrents() {
+        switch (method) {
+            case Retrieve:
+            case GetFileList:
+            case GetTorrentDetails:
+            case GetStats:
+                return false;
+            default:
+                return true;
+        }
     }
 
     public DaemonMethod getMethod() {
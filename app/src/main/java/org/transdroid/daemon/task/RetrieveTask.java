@@ -17,6 +17,7 @@
  */
 package org.transdroid.daemon.task;
 
+import org.transdroid.core.gui.log.Log;
 import org.transdroid.daemon.DaemonMethod;
 import org.transdroid.daemon.IDaemonAdapter;
 
@@ -28,4 +29,15 @@ public class RetrieveTask extends DaemonTask {
     public static RetrieveTask create(IDaemonAdapter adapter) {
         return new RetrieveTask(adapter);
     }
+
+    /**
+     * Execute the retrieval on the appropriate daemon adapter, sharing the result with identical retrievals for the
+     * same server that are in-flight or just completed
+     *
+     * @param log The logger to use when writing exceptions and debug information
+     */
+    @Override
+    public DaemonTaskResult execute(Log log) {
+        return RetrieveTaskBroker.execute(log, this);
+    }
 }
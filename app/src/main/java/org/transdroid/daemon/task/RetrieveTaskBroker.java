@@ -0,0 +1,169 @@
+/*
+ *	This file is part of Transdroid <http://www.transdroid.org>
+ *
+ *	Transdroid is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+ *
+ *	Transdroid is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU General Public License for more details.
+ *
+ *	You should have received a copy of the GNU General Public License
+ *	along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.transdroid.daemon.task;
+
+import org.transdroid.core.gui.log.Log;
+import org.transdroid.daemon.DaemonException;
+import org.transdroid.daemon.DaemonException.ExceptionType;
+import org.transdroid.daemon.IDaemonAdapter;
+import org.transdroid.daemon.Torrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Coalesces retrievals of the torrent list of the same server, as requested by the torrents screen, widgets and
+ * background jobs. Concurrent requests wait for a single call to the daemon adapter and share its result, while
+ * requests that arrive shortly after it completed get the same result without another call. Any task that may change
+ * the server's torrents invalidates the shared result.
+ */
+class RetrieveTaskBroker {
+
+    private static final String LOG_NAME = "Retrieve broker";
+    private static final long RESULT_TTL = 2000; // 2 seconds
+
+    // Adapters are cached per server by the DaemonFactory, so they identify the server to retrieve from
+    private static final Map<IDaemonAdapter, Retrieval> retrievals = new WeakHashMap<>();
+    private static int hits = 0;
+    private static int joins = 0;
+    private static int misses = 0;
+
+    /**
+     * Executes the retrieve task, or returns the result of the identical in-flight or very recent retrieval.
+     *
+     * @param log  The logger to use when writing exceptions and debug information
+     * @param task The retrieve task to execute
+     * @return The result of the retrieval, with a private copy of the torrent list
+     */
+    static DaemonTaskResult execute(Log log, RetrieveTask task) {
+
+        IDaemonAdapter adapter = task.adapter;
+        Retrieval retrieval;
+        boolean execute = false;
+        String outcome;
+        synchronized (retrievals) {
+            retrieval = retrievals.get(adapter);
+            if (retrieval != null && !retrieval.isDone()) {
+                joins++;
+                outcome = "Joined in-flight retrieval";
+            } else if (retrieval != null && System.currentTimeMillis() - retrieval.completedAt < RESULT_TTL) {
+                hits++;
+                outcome = "Cache hit";
+            } else {
+                retrieval = new Retrieval();
+                retrievals.put(adapter, retrieval);
+                execute = true;
+                misses++;
+                outcome = "Cache miss";
+            }
+            log.d(LOG_NAME, outcome + " for " + adapter.getType() + " (hits " + hits + ", joins " + joins +
+                    ", misses " + misses + ")");
+        }
+
+        if (execute) {
+            DaemonTaskResult result = new DaemonTaskFailureResult(task,
+                    new DaemonException(ExceptionType.UnexpectedResponse, "Retrieval did not complete"));
+            try {
+                result = adapter.executeTask(log, task);
+            } finally {
+                retrieval.complete(result);
+                if (!result.wasSuccessful()) {
+                    // Never serve a failure to late arrivals; they should simply try again
+                    synchronized (retrievals) {
+                        if (retrievals.get(adapter) == retrieval) {
+                            retrievals.remove(adapter);
+                        }
+                    }
+                }
+            }
+            return retrieval.resultFor(task);
+        }
+
+        return retrieval.await(task);
+
+    }
+
+    /**
+     * Forgets any in-flight or recent result for the server, so that the next retrieval is fresh. Should be called
+     * whenever a task was executed that may change the torrents on the server.
+     *
+     * @param adapter The adapter of the server to invalidate the retrieval for
+     */
+    static void invalidate(IDaemonAdapter adapter) {
+        synchronized (retrievals) {
+            retrievals.remove(adapter);
+        }
+    }
+
+    private static class Retrieval {
+
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile DaemonTaskResult result;
+        private volatile long completedAt = -1;
+
+        boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        void complete(DaemonTaskResult result) {
+            this.result = result;
+            this.completedAt = System.currentTimeMillis();
+            done.countDown();
+        }
+
+        DaemonTaskResult await(RetrieveTask task) {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return new DaemonTaskFailureResult(task,
+                        new DaemonException(ExceptionType.ConnectionError, "Interrupted while waiting for retrieval"));
+            }
+            return resultFor(task);
+        }
+
+        DaemonTaskResult resultFor(RetrieveTask task) {
+            // Hand out the result as if our own task was executed, with lists and torrents that the caller is free to
+            // modify, since screens change their torrents in place (and adapters may reuse torrents between refreshes)
+            if (result instanceof RetrieveTaskSuccessResult) {
+                RetrieveTaskSuccessResult success = (RetrieveTaskSuccessResult) result;
+                return new RetrieveTaskSuccessResult(task, copyTorrents(success.getTorrents()),
+                        success.getLabels() == null ? null : new ArrayList<>(success.getLabels()));
+            } else if (result instanceof DaemonTaskFailureResult) {
+                return new DaemonTaskFailureResult(task, ((DaemonTaskFailureResult) result).getException());
+            }
+            return result;
+        }
+
+        private ArrayList<Torrent> copyTorrents(List<Torrent> torrents) {
+            if (torrents == null) {
+                return null;
+            }
+            ArrayList<Torrent> copies = new ArrayList<>(torrents.size());
+            for (Torrent torrent : torrents) {
+                copies.add(torrent.copy());
+            }
+            return copies;
+        }
+
+    }
+
+}
@@ -27,13 +27,9 @@ import org.apache.http.HttpRequestInterceptor;
 import org.apache.http.HttpResponseInterceptor;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.conn.scheme.PlainSocketFactory;
-import org.apache.http.conn.scheme.Scheme;
-import org.apache.http.conn.scheme.SchemeRegistry;
-import org.apache.http.conn.scheme.SocketFactory;
+import org.apache.http.conn.params.ConnManagerParams;
 import org.apache.http.entity.HttpEntityWrapper;
 import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
@@ -61,6 +57,10 @@ import java.util.zip.GZIPInputStream;
 public class HttpHelper {
 
     public static final int DEFAULT_CONNECTION_TIMEOUT = 8000;
+    /**
+     * The number of connections to keep per server, allowing independent requests to execute concurrently
+     */
+    public static final int MAX_CONNECTIONS_PER_ROUTE = 4;
 
     /**
      * The 'User-Agent' name to send to the server
@@ -124,29 +124,21 @@ public class HttpHelper {
                                                              boolean sslTrustAll, String sslTrustKey, int timeout,
                                                              String authAddress, int authPort) throws DaemonException {
 
-        // Register http and https sockets
-        SchemeRegistry registry = new SchemeRegistry();
-        SocketFactory httpsSocketFactory;
-        if (sslTrustKey != null && sslTrustKey.length() != 0) {
-            httpsSocketFactory = new TlsSniSocketFactory(sslTrustKey);
-        } else if (sslTrustAll) {
-            httpsSocketFactory = new TlsSniSocketFactory(true);
-        } else {
-            httpsSocketFactory = new TlsSniSocketFactory();
-        }
-        registry.register(new Scheme("http", new PlainSocketFactory(), 80));
-        registry.register(new Scheme("https", httpsSocketFactory, 443));
-
         // Standard parameters
         HttpParams httpparams = new BasicHttpParams();
         HttpConnectionParams.setConnectionTimeout(httpparams, timeout);
         HttpConnectionParams.setSoTimeout(httpparams, timeout);
+        // Do not wait forever when all shared connections to the server are in use
+        ConnManagerParams.setTimeout(httpparams, timeout);
         if (userAgent != null) {
             HttpProtocolParams.setUserAgent(httpparams, userAgent);
         }
 
+        // Connections (and TLS sessions) are shared with all other clients with the same certificate validation
         DefaultHttpClient httpclient =
-                new DefaultHttpClient(new ThreadSafeClientConnManager(httpparams, registry), httpparams);
+                new DefaultHttpClient(HttpTransport.getConnectionManager(sslTrustAll, sslTrustKey), httpparams);
+        // Allow a thread to have its running requests aborted, even if blocked on socket I/O
+        httpclient.addRequestInterceptor(RequestAborter.INTERCEPTOR);
 
         // Authentication credentials
         if (userBasicAuth) {
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2010-2024 Eric Kok et al.
+ *
+ * Transdroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Transdroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.transdroid.daemon.util;
+
+import android.content.Context;
+import android.net.SSLSessionCache;
+
+import androidx.annotation.VisibleForTesting;
+
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpParams;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The process-wide HTTP transport, which all HTTP clients and TLS sockets are built upon. Connections are pooled per
+ * server (route) and kept alive across adapter instances, while TLS sessions are resumed rather than renegotiated.
+ * Since the certificate validation is part of a TLS connection, a separate pool is used for every way of validating
+ * certificates (the default, trusting all or trusting one specific self-signed certificate). Idle connections are
+ * closed periodically in the background.
+ */
+public class HttpTransport {
+
+    public static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 20;
+    public static final long DEFAULT_IDLE_TIMEOUT = 30 * 1000; // 30 seconds
+
+    private static final String DEFAULT_VALIDATION = "default";
+    private static final String TRUST_ALL = "trustall";
+    private static final String TRUST_KEY = "key:";
+
+    private static final Map<String, TlsSniSocketFactory> socketFactories = new HashMap<>();
+    private static final Map<String, ThreadSafeClientConnManager> connectionManagers = new HashMap<>();
+    private static int maxTotalConnections = DEFAULT_MAX_TOTAL_CONNECTIONS;
+    private static int maxConnectionsPerRoute = HttpHelper.MAX_CONNECTIONS_PER_ROUTE;
+    private static long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private static ScheduledExecutorService evictor;
+
+    /**
+     * Enables the persistent TLS session cache, such that TLS sessions can be resumed even after an app restart. Should
+     * be called once when the app starts.
+     *
+     * @param context The application context
+     */
+    public static void initialise(Context context) {
+        TlsSniSocketFactory.setSessionCache(new SSLSessionCache(context));
+    }
+
+    /**
+     * Configures the connection pools. Only applies to the pools that are created after this call, so should be called
+     * before any connection is made.
+     *
+     * @param maxTotal    The maximum number of connections per pool, over all servers
+     * @param maxPerRoute The maximum number of connections per pool to a single server
+     * @param idleTime    The time in milliseconds after which idle connections are closed
+     */
+    public static synchronized void configure(int maxTotal, int maxPerRoute, long idleTime) {
+        maxTotalConnections = maxTotal;
+        maxConnectionsPerRoute = maxPerRoute;
+        idleTimeout = idleTime;
+    }
+
+    /**
+     * Returns the shared socket factory for TLS connections with the given way of certificate validation.
+     *
+     * @param sslTrustAll Whether to trust all SSL certificates
+     * @param sslTrustKey A specific SSL key to accept exclusively, or null
+     * @return A socket factory that resumes the TLS sessions of earlier connections it made
+     */
+    public static synchronized TlsSniSocketFactory getSocketFactory(boolean sslTrustAll, String sslTrustKey) {
+        String validation = getValidation(sslTrustAll, sslTrustKey);
+        TlsSniSocketFactory socketFactory = socketFactories.get(validation);
+        if (socketFactory == null) {
+            if (validation.startsWith(TRUST_KEY)) {
+                socketFactory = new TlsSniSocketFactory(sslTrustKey);
+            } else if (validation.equals(TRUST_ALL)) {
+                socketFactory = new TlsSniSocketFactory(true);
+            } else {
+                socketFactory = new TlsSniSocketFactory();
+            }
+            socketFactories.put(validation, socketFactory);
+        }
+        return socketFactory;
+    }
+
+    /**
+     * Returns the shared, thread safe connection manager for http and https connections with the given way of
+     * certificate validation. The manager should never be shut down.
+     *
+     * @param sslTrustAll Whether to trust all SSL certificates
+     * @param sslTrustKey A specific SSL key to accept exclusively, or null
+     * @return A connection manager that pools the connections per server
+     */
+    public static synchronized ClientConnectionManager getConnectionManager(boolean sslTrustAll, String sslTrustKey) {
+        String validation = getValidation(sslTrustAll, sslTrustKey);
+        ThreadSafeClientConnManager connectionManager = connectionManagers.get(validation);
+        if (connectionManager == null) {
+            SchemeRegistry registry = new SchemeRegistry();
+            registry.register(new Scheme("http", new PlainSocketFactory(), 80));
+            registry.register(new Scheme("https", getSocketFactory(sslTrustAll, sslTrustKey), 443));
+            HttpParams params = new BasicHttpParams();
+            ConnManagerParams.setMaxTotalConnections(params, maxTotalConnections);
+            ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(maxConnectionsPerRoute));
+            connectionManager = new ThreadSafeClientConnManager(params, registry);
+            connectionManagers.put(validation, connectionManager);
+            startEvictor();
+        }
+        return connectionManager;
+    }
+
+    /**
+     * Shuts down and forgets all connection pools, such that new pools are created with the current configuration.
+     * Only for tests, since clients that are still using the old pools can no longer make requests.
+     */
+    @VisibleForTesting
+    public static synchronized void resetConnectionManagers() {
+        for (ThreadSafeClientConnManager connectionManager : connectionManagers.values()) {
+            connectionManager.shutdown();
+        }
+        connectionManagers.clear();
+    }
+
+    private static String getValidation(boolean sslTrustAll, String sslTrustKey) {
+        if (sslTrustKey != null && sslTrustKey.length() != 0) {
+            return TRUST_KEY + sslTrustKey;
+        } else if (sslTrustAll) {
+            return TRUST_ALL;
+        }
+        return DEFAULT_VALIDATION;
+    }
+
+    private static void startEvictor() {
+        if (evictor != null) {
+            return;
+        }
+        evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "HttpIdleEvictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(idleTimeout / 2, 1000);
+        evictor.scheduleWithFixedDelay(HttpTransport::closeIdleConnections, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    private static synchronized void closeIdleConnections() {
+        for (ThreadSafeClientConnManager connectionManager : connectionManagers.values()) {
+            connectionManager.closeExpiredConnections();
+            connectionManager.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Returns the current use of the shared transport.
+     */
+    public static synchronized Statistics getStatistics() {
+        int pooled = 0;
+        for (ThreadSafeClientConnManager connectionManager : connectionManagers.values()) {
+            pooled += connectionManager.getConnectionsInPool();
+        }
+        return new Statistics(connectionManagers.size(), pooled, TlsSniSocketFactory.getHandshakes(),
+                TlsSniSocketFactory.getResumedHandshakes());
+    }
+
+    public static class Statistics {
+
+        private final int pools;
+        private final int connections;
+        private final int handshakes;
+        private final int resumedHandshakes;
+
+        Statistics(int pools, int connections, int handshakes, int resumedHandshakes) {
+            this.pools = pools;
+            this.connections = connections;
+            this.handshakes = handshakes;
+            this.resumedHandshakes = resumedHandshakes;
+        }
+
+        /**
+         * Returns the number of connection pools, one for every way of certificate validation in use.
+         */
+        public int getPools() {
+            return pools;
+        }
+
+        /**
+         * Returns the number of open connections, both in use and idle, over all pools.
+         */
+        public int getConnections() {
+            return connections;
+        }
+
+        /**
+         * Returns the number of TLS handshakes made since the app started.
+         */
+        public int getHandshakes() {
+            return handshakes;
+        }
+
+        /**
+         * Returns the number of TLS handshakes that resumed an earlier session.
+         */
+        public int getResumedHandshakes() {
+            return resumedHandshakes;
+        }
+
+        @Override
+        public String toString() {
+            return connections + " connections in " + pools + " pools; " + resumedHandshakes + " of " + handshakes +
+                    " TLS handshakes resumed";
+        }
+
+    }
+
+}
@@ -0,0 +1,193 @@
+/*
+ *	This file is part of Transdroid <http://www.transdroid.org>
+ *
+ *	Transdroid is free software: you can redistribute it and/or modify
+ *	it under the terms of the GNU General Public License as published by
+ *	the Free Software Foundation, either version 3 of the License, or
+ *	(at your option) any later version.
+ *
+ *	Transdroid is distributed in the hope that it will be useful,
+ *	but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *	MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *	GNU General Public License for more details.
+ *
+ *	You should have received a copy of the GNU General Public License
+ *	along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package org.transdroid.daemon.util;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.transdroid.daemon.DaemonException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * Provides pull-based decoding of (large) JSON responses straight from an HTTP response stream. Instead of reading the
+ * full response into a String and parsing that into one org.json tree, callers walk the document and only materialise
+ * the individual records they need, which can be mapped (to Torrent objects) as soon as they are read.
+ */
+public class JsonStreamHelper {
+
+    /**
+     * Callback that receives the records of a streamed JSON array or object one at a time
+     */
+    public interface RecordHandler {
+
+        /**
+         * @param key    The key of the record if it was a member of a JSON object, or null if it was an array element
+         * @param record The fully read record
+         */
+        void onRecord(String key, JSONObject record) throws JSONException, DaemonException;
+
+    }
+
+    /**
+     * Reads a full response document from an open JSON reader
+     */
+    public interface DocumentReader<T> {
+
+        T read(JsonReader reader) throws IOException, JSONException, DaemonException;
+
+    }
+
+    /**
+     * Decodes a response stream (in UTF-8) using the supplied document reader and closes the stream afterwards.
+     *
+     * @param in             The raw response stream
+     * @param documentReader The reader that walks the JSON document
+     * @return The result of the document reader
+     * @throws DaemonException Thrown when the stream could not be read or was not valid JSON
+     */
+    public static <T> T read(InputStream in, DocumentReader<T> documentReader) throws DaemonException {
+        JsonReader reader = null;
+        try {
+            reader = new JsonReader(new BufferedReader(new InputStreamReader(in, "UTF-8")));
+            return documentReader.read(reader);
+        } catch (JSONException | IllegalStateException | NumberFormatException e) {
+            throw new DaemonException(DaemonException.ExceptionType.ParsingFailed, e.toString());
+        } catch (IOException e) {
+            throw new DaemonException(DaemonException.ExceptionType.ConnectionError, e.toString());
+        } finally {
+            try {
+                if (reader != null) {
+                    reader.close();
+                }
+                // Also closed directly, such that the (pooled) connection is released whatever the reader did
+                in.close();
+            } catch (IOException e) {
+                // Ignore; the response was already handled
+            }
+        }
+    }
+
+    /**
+     * Reads the records of the next value, which may be a JSON array of objects or a JSON object with objects as
+     * members, and hands them to the record handler one by one. JSON null values (for the set or a record) are
+     * skipped.
+     */
+    public static void readRecords(JsonReader reader, RecordHandler handler)
+            throws IOException, JSONException, DaemonException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.BEGIN_ARRAY) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                JSONObject record = readObject(reader);
+                if (record != null) {
+                    handler.onRecord(null, record);
+                }
+            }
+            reader.endArray();
+        } else if (token == JsonToken.BEGIN_OBJECT) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String key = reader.nextName();
+                JSONObject record = readObject(reader);
+                if (record != null) {
+                    handler.onRecord(key, record);
+                }
+            }
+            reader.endObject();
+        } else if (token == JsonToken.NULL) {
+            reader.nextNull();
+        } else {
+            throw new JSONException("Expected an array or object of records but found " + token);
+        }
+    }
+
+    /**
+     * Reads the next value as a JSON object, or returns null if it was a JSON null value.
+     */
+    public static JSONObject readObject(JsonReader reader) throws IOException, JSONException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        JSONObject object = new JSONObject();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            object.put(name, readValue(reader));
+        }
+        reader.endObject();
+        return object;
+    }
+
+    /**
+     * Reads the next value as a JSON array, or returns null if it was a JSON null value.
+     */
+    public static JSONArray readArray(JsonReader reader) throws IOException, JSONException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        JSONArray array = new JSONArray();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            array.put(readValue(reader));
+        }
+        reader.endArray();
+        return array;
+    }
+
+    /**
+     * Reads the next value as the same type org.json would use: a JSONObject, JSONArray, String, Boolean, Long or
+     * Double, or JSONObject.NULL.
+     */
+    public static Object readValue(JsonReader reader) throws IOException, JSONException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                return readObject(reader);
+            case BEGIN_ARRAY:
+                return readArray(reader);
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NUMBER:
+                String number = reader.nextString();
+                if (number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0) {
+                    try {
+                        return Long.parseLong(number);
+                    } catch (NumberFormatException e) {
+                        // Too big for a long; fall back to a double
+                    }
+                }
+                return Double.parseDouble(number);
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+            case STRING:
+                return reader.nextString();
+            default:
+                throw new JSONException("Unexpected JSON token " + reader.peek());
+        }
+    }
+
+}
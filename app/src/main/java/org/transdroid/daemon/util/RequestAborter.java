@@ -0,0 +1,98 @@
+/*
+ * Copyright 2010-2024 Eric Kok et al.
+ *
+ * Transdroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Transdroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.transdroid.daemon.util;
+
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.client.methods.AbortableHttpRequest;
+import org.apache.http.impl.client.RequestWrapper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tracks the HTTP requests that a thread executes, such that another thread can abort them. Interrupting a thread does
+ * not stop it from blocking on socket I/O, while aborting a request shuts down its connection. Clients only report
+ * their requests if they have the {@link #INTERCEPTOR} installed, as all clients created by {@link HttpHelper} do.
+ */
+public class RequestAborter {
+
+    private static final ThreadLocal<RequestAborter> current = new ThreadLocal<>();
+
+    /**
+     * Reports every executed request to the aborter of the executing thread, if there is one.
+     */
+    public static final HttpRequestInterceptor INTERCEPTOR = (request, context) -> {
+        RequestAborter aborter = current.get();
+        if (aborter != null) {
+            aborter.track(request);
+        }
+    };
+
+    private final List<AbortableHttpRequest> requests = new ArrayList<>();
+    private boolean aborted = false;
+
+    /**
+     * Starts tracking the requests that the calling thread executes, until {@link #end()} is called on that thread.
+     */
+    public void begin() {
+        current.set(this);
+    }
+
+    /**
+     * Stops tracking the requests of the calling thread.
+     */
+    public void end() {
+        current.remove();
+        synchronized (this) {
+            requests.clear();
+        }
+    }
+
+    /**
+     * Aborts all tracked requests, as well as any request that the tracked thread executes from now on.
+     */
+    public void abort() {
+        List<AbortableHttpRequest> running;
+        synchronized (this) {
+            aborted = true;
+            running = new ArrayList<>(requests);
+            requests.clear();
+        }
+        for (AbortableHttpRequest request : running) {
+            request.abort();
+        }
+    }
+
+    private void track(HttpRequest request) {
+        if (request instanceof RequestWrapper) {
+            // Clients execute a copy of the request, but the connection is released through the original one
+            request = ((RequestWrapper) request).getOriginal();
+        }
+        if (!(request instanceof AbortableHttpRequest)) {
+            return;
+        }
+        synchronized (this) {
+            if (!aborted) {
+                requests.add((AbortableHttpRequest) request);
+                return;
+            }
+        }
+        ((AbortableHttpRequest) request).abort();
+    }
+
+}
@@ -18,6 +18,7 @@ package org.transdroid.daemon.util;
 
 import android.annotation.TargetApi;
 import android.net.SSLCertificateSocketFactory;
+import android.net.SSLSessionCache;
 import android.os.Build;
 import android.util.Log;
 
@@ -28,6 +29,7 @@ import org.apache.http.params.HttpParams;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLPeerUnverifiedException;
@@ -53,13 +55,23 @@ import javax.net.ssl.TrustManager;
  * server certificate is given, such that the correct SHA-1 hash to use can be foudn in the log.
  * <p/>
  * Finally, the ignoring of all SSL certificates (and hostname) is possible (which is obviously very insecure!).
+ * <p/>
+ * Every factory instance keeps its own SSL context, such that TLS sessions are resumed on new connections made through
+ * the same instance; hence instances should be shared, as is done by {@link HttpTransport}. Sessions of the default
+ * (strict) configuration may additionally be persisted in a {@link SSLSessionCache}. Sessions established while
+ * accepting all or self-signed certificates are never persisted, so they can not be resumed by a factory that would
+ * have rejected the server certificate.
  */
 public class TlsSniSocketFactory implements LayeredSocketFactory {
 
     private final static HostnameVerifier hostnameVerifier = new StrictHostnameVerifier();
+    private final static AtomicInteger handshakes = new AtomicInteger();
+    private final static AtomicInteger resumedHandshakes = new AtomicInteger();
+    private static SSLSessionCache sessionCache;
 
     private final boolean acceptAllCertificates;
     private final String selfSignedCertificateKey;
+    private SSLCertificateSocketFactory sslSocketFactory;
 
     public TlsSniSocketFactory() {
         this.acceptAllCertificates = false;
@@ -76,6 +88,48 @@ public class TlsSniSocketFactory implements LayeredSocketFactory {
         this.selfSignedCertificateKey = null;
     }
 
+    /**
+     * Sets the persistent cache of TLS sessions to use for (new factories of) the default certificate validation.
+     *
+     * @param cache The cache to store TLS sessions in, or null to only keep sessions in memory
+     */
+    static synchronized void setSessionCache(SSLSessionCache cache) {
+        sessionCache = cache;
+    }
+
+    private static synchronized SSLSessionCache getSessionCache() {
+        return sessionCache;
+    }
+
+    /**
+     * Returns the number of TLS handshakes that were made by all factories.
+     */
+    static int getHandshakes() {
+        return handshakes.get();
+    }
+
+    /**
+     * Returns the number of TLS handshakes that resumed an earlier session rather than doing a full handshake.
+     */
+    static int getResumedHandshakes() {
+        return resumedHandshakes.get();
+    }
+
+    private synchronized SSLCertificateSocketFactory getSslSocketFactory() {
+        if (sslSocketFactory == null) {
+            boolean strict = !acceptAllCertificates && selfSignedCertificateKey == null;
+            sslSocketFactory =
+                    (SSLCertificateSocketFactory) SSLCertificateSocketFactory.getDefault(0, strict ? getSessionCache() : null);
+            // For self-signed certificates use a custom trust manager
+            if (acceptAllCertificates) {
+                sslSocketFactory.setTrustManagers(new TrustManager[]{new IgnoreSSLTrustManager()});
+            } else if (selfSignedCertificateKey != null) {
+                sslSocketFactory.setTrustManagers(new TrustManager[]{new SelfSignedTrustManager(selfSignedCertificateKey)});
+            }
+        }
+        return sslSocketFactory;
+    }
+
     // Plain TCP/IP (layer below TLS)
 
     @Override
@@ -106,15 +160,8 @@ public class TlsSniSocketFactory implements LayeredSocketFactory {
             plainSocket.close();
         }
 
-        SSLCertificateSocketFactory sslSocketFactory =
-                (SSLCertificateSocketFactory) SSLCertificateSocketFactory.getDefault(0);
-
-        // For self-signed certificates use a custom trust manager
-        if (acceptAllCertificates) {
-            sslSocketFactory.setTrustManagers(new TrustManager[]{new IgnoreSSLTrustManager()});
-        } else if (selfSignedCertificateKey != null) {
-            sslSocketFactory.setTrustManagers(new TrustManager[]{new SelfSignedTrustManager(selfSignedCertificateKey)});
-        }
+        // Reuse the same SSL context (with its trust managers and TLS session cache) for every connection
+        SSLCertificateSocketFactory sslSocketFactory = getSslSocketFactory();
 
         // create and connect SSL socket, but don't do hostname/certificate verification yet
         SSLSocket ssl = (SSLSocket) sslSocketFactory.createSocket(InetAddress.getByName(host), port);
@@ -134,8 +181,16 @@ public class TlsSniSocketFactory implements LayeredSocketFactory {
             }
         }
 
-        // verify hostname and certificate
+        // verify hostname and certificate; a session that existed before the handshake started was resumed
+        long handshakeStart = System.currentTimeMillis();
         SSLSession session = ssl.getSession();
+        // a failed handshake gives an invalid (null) session, which is not counted
+        if (session != null && session.isValid()) {
+            handshakes.incrementAndGet();
+            if (session.getCreationTime() < handshakeStart) {
+                resumedHandshakes.incrementAndGet();
+            }
+        }
         if (!(acceptAllCertificates || selfSignedCertificateKey != null) && !hostnameVerifier.verify(host, session)) {
             throw new SSLPeerUnverifiedException("Cannot verify hostname: " + host);
         }
@@ -3,6 +3,7 @@ package se.dimovski.rencode;
 import java.io.DataOutput;
 import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.Array;
 import java.nio.ByteBuffer;
@@ -112,6 +113,14 @@ public class RencodeOutputStream extends FilterOutputStream implements DataOutpu
         write(value, offset, length);
     }
 
+    /**
+     * Writes a chunk of raw bytes at once, rather than byte by byte
+     */
+    @Override
+    public void write(byte[] value, int offset, int length) throws IOException {
+        out.write(value, offset, length);
+    }
+
     /**
      * Writes a boolean
      */
@@ -224,6 +233,31 @@ public class RencodeOutputStream extends FilterOutputStream implements DataOutpu
         writeBytes(value.getBytes(charset));
     }
 
+    /**
+     * Writes a {@link String} of the given length in bytes, of which the content is read from the given stream rather
+     * than held in memory
+     */
+    public void writeString(long length, InputStream content) throws IOException {
+        if (length < TypeCode.EMBEDDED.STR_COUNT) {
+            write(TypeCode.EMBEDDED.STR_START + (int) length);
+        } else {
+            String lenString = Long.toString(length);
+            writeBytes(lenString.getBytes(charset));
+            write(TypeCode.LENGTH_DELIM);
+        }
+
+        byte[] buffer = new byte[8192];
+        long remaining = length;
+        int read;
+        while (remaining > 0 && (read = content.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+            write(buffer, 0, read);
+            remaining -= read;
+        }
+        if (remaining > 0 || content.read() != -1) {
+            throw new IOException("String content does not have the expected length of " + length + " bytes");
+        }
+    }
+
     /**
      * Writes a {@link Collection}.
      */
@@ -0,0 +1,460 @@
+package se.dimovski.rencode;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Decodes rencoded data directly from a (reusable) byte buffer. Unlike {@link RencodeInputStream}, which always builds
+ * the full object graph, values can be pulled one at a time: dictionaries and lists are walked with a visitor, which
+ * reads only the values it is interested in as primitives. Values that a visitor does not read are skipped without
+ * being decoded. Dictionary keys are interned, so repeated keys (such as the field names of many similar dictionaries)
+ * are only decoded once.
+ */
+public class RencodeReader {
+
+    /**
+     * Receives the entries of a dictionary. The visitor may read the value (once) or leave it, in which case it is
+     * skipped.
+     */
+    public interface DictionaryVisitor {
+        void visitEntry(String key, RencodeReader reader) throws IOException;
+    }
+
+    /**
+     * Receives the elements of a list. The visitor may read the value (once) or leave it, in which case it is skipped.
+     */
+    public interface ListVisitor {
+        void visitElement(int index, RencodeReader reader) throws IOException;
+    }
+
+    private static final int KEY_CACHE_SIZE = 256;
+
+    private final String[] keyCache = new String[KEY_CACHE_SIZE];
+    private final byte[][] keyCacheBytes = new byte[KEY_CACHE_SIZE][];
+    private byte[] data = new byte[0];
+    private int position = 0;
+    private int limit = 0;
+
+    public RencodeReader() {
+    }
+
+    public RencodeReader(ByteBuffer buffer) {
+        reset(buffer);
+    }
+
+    /**
+     * Starts reading from the remaining bytes of the supplied buffer. The buffer contents are not copied (if it is
+     * backed by an array), so the buffer should not be changed while reading. Interned keys are kept between resets.
+     */
+    public void reset(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            data = buffer.array();
+            position = buffer.arrayOffset() + buffer.position();
+            limit = buffer.arrayOffset() + buffer.limit();
+        } else {
+            data = new byte[buffer.remaining()];
+            buffer.duplicate().get(data);
+            position = 0;
+            limit = data.length;
+        }
+    }
+
+    public boolean hasRemaining() {
+        return position < limit;
+    }
+
+    /**
+     * Returns the type code of the next value, without consuming it.
+     */
+    public int peekToken() throws IOException {
+        if (position >= limit) {
+            throw new EOFException();
+        }
+        return data[position] & 0xFF;
+    }
+
+    private int readToken() throws IOException {
+        int token = peekToken();
+        position++;
+        return token;
+    }
+
+    /**
+     * Whether the next value is null, without consuming it.
+     */
+    public boolean isNull() throws IOException {
+        return peekToken() == TypeCode.NULL;
+    }
+
+    /**
+     * Reads the next value as the same object graph that {@link RencodeInputStream#readObject()} would return.
+     */
+    public Object readObject() throws IOException {
+        int token = readToken();
+        if (token == TypeCode.DICTIONARY || Utils.isFixedDictionary(token)) {
+            final Map<String, Object> map = new TreeMap<>();
+            readDictionary(token, (key, reader) -> map.put(key, reader.readObject()));
+            return map;
+        } else if (token == TypeCode.LIST || Utils.isFixedList(token)) {
+            final List<Object> list = new ArrayList<>();
+            readList(token, (index, reader) -> list.add(reader.readObject()));
+            return list;
+        } else if (Utils.isNumber(token)) {
+            return readNumber(token);
+        } else if (token == TypeCode.FALSE || token == TypeCode.TRUE) {
+            return token == TypeCode.TRUE;
+        } else if (token == TypeCode.NULL) {
+            return null;
+        } else if (Utils.isDigit(token) || Utils.isFixedString(token)) {
+            return readString(token);
+        }
+        throw new IOException("Not implemented: " + token);
+    }
+
+    /**
+     * Skips the next value without decoding it.
+     */
+    public void skipValue() throws IOException {
+        int token = readToken();
+        if (token == TypeCode.DICTIONARY) {
+            while (peekToken() != TypeCode.END) {
+                skipValue();
+                skipValue();
+            }
+            position++;
+        } else if (Utils.isFixedDictionary(token)) {
+            int count = token - TypeCode.EMBEDDED.DICT_START;
+            for (int i = 0; i < count; i++) {
+                skipValue();
+                skipValue();
+            }
+        } else if (token == TypeCode.LIST) {
+            while (peekToken() != TypeCode.END) {
+                skipValue();
+            }
+            position++;
+        } else if (Utils.isFixedList(token)) {
+            int count = token - TypeCode.EMBEDDED.LIST_START;
+            for (int i = 0; i < count; i++) {
+                skipValue();
+            }
+        } else if (token == TypeCode.NUMBER) {
+            while (readToken() != TypeCode.END) {
+                // Skip the digits
+            }
+        } else if (token == TypeCode.BYTE) {
+            skip(1);
+        } else if (token == TypeCode.SHORT) {
+            skip(Utils.SHORT_BYTES);
+        } else if (token == TypeCode.INT || token == TypeCode.FLOAT) {
+            skip(Utils.INTEGER_BYTES);
+        } else if (token == TypeCode.LONG || token == TypeCode.DOUBLE) {
+            skip(Utils.LONG_BYTES);
+        } else if (Utils.isFixedString(token)) {
+            skip(token - TypeCode.EMBEDDED.STR_START);
+        } else if (Utils.isDigit(token)) {
+            skip(readLength(token));
+        } else if (!Utils.isFixedNumber(token) && token != TypeCode.TRUE && token != TypeCode.FALSE
+                && token != TypeCode.NULL) {
+            throw new IOException("Not implemented: " + token);
+        }
+    }
+
+    private void skip(int count) throws IOException {
+        if (count < 0 || position + count > limit) {
+            throw new EOFException();
+        }
+        position += count;
+    }
+
+    /**
+     * Reads the next value as dictionary, handing every entry to the visitor.
+     *
+     * @return False if the value was null instead of a dictionary
+     */
+    public boolean readDictionary(DictionaryVisitor visitor) throws IOException {
+        int token = readToken();
+        if (token == TypeCode.NULL) {
+            return false;
+        }
+        if (token != TypeCode.DICTIONARY && !Utils.isFixedDictionary(token)) {
+            throw new IOException("Expected a dictionary but found " + token);
+        }
+        readDictionary(token, visitor);
+        return true;
+    }
+
+    private void readDictionary(int token, DictionaryVisitor visitor) throws IOException {
+        if (token == TypeCode.DICTIONARY) {
+            while (peekToken() != TypeCode.END) {
+                visitEntry(visitor);
+            }
+            position++;
+        } else {
+            int count = token - TypeCode.EMBEDDED.DICT_START;
+            for (int i = 0; i < count; i++) {
+                visitEntry(visitor);
+            }
+        }
+    }
+
+    private void visitEntry(DictionaryVisitor visitor) throws IOException {
+        String key = readKey();
+        int start = position;
+        visitor.visitEntry(key, this);
+        if (position == start) {
+            skipValue();
+        }
+    }
+
+    /**
+     * Reads the next value as list, handing every element to the visitor.
+     *
+     * @return False if the value was null instead of a list
+     */
+    public boolean readList(ListVisitor visitor) throws IOException {
+        int token = readToken();
+        if (token == TypeCode.NULL) {
+            return false;
+        }
+        if (token != TypeCode.LIST && !Utils.isFixedList(token)) {
+            throw new IOException("Expected a list but found " + token);
+        }
+        readList(token, visitor);
+        return true;
+    }
+
+    private void readList(int token, ListVisitor visitor) throws IOException {
+        if (token == TypeCode.LIST) {
+            int index = 0;
+            while (peekToken() != TypeCode.END) {
+                visitElement(visitor, index++);
+            }
+            position++;
+        } else {
+            int count = token - TypeCode.EMBEDDED.LIST_START;
+            for (int i = 0; i < count; i++) {
+                visitElement(visitor, i);
+            }
+        }
+    }
+
+    private void visitElement(ListVisitor visitor, int index) throws IOException {
+        int start = position;
+        visitor.visitElement(index, this);
+        if (position == start) {
+            skipValue();
+        }
+    }
+
+    /**
+     * Reads the next value as (not interned) string, or returns null if it was null.
+     */
+    public String readString() throws IOException {
+        int token = readToken();
+        if (token == TypeCode.NULL) {
+            return null;
+        }
+        return readString(token);
+    }
+
+    private String readString(int token) throws IOException {
+        int length = readStringLength(token);
+        String string = new String(data, position, length, Utils.UTF_8);
+        position += length;
+        return string;
+    }
+
+    /**
+     * Reads the next value as string, returning the same String instance for the same bytes as was returned earlier.
+     */
+    public String readKey() throws IOException {
+        int length = readStringLength(readToken());
+        int start = position;
+        position += length;
+
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + data[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & (KEY_CACHE_SIZE - 1);
+        byte[] cachedBytes = keyCacheBytes[slot];
+        if (cachedBytes != null && cachedBytes.length == length) {
+            boolean equal = true;
+            for (int i = 0; i < length; i++) {
+                if (cachedBytes[i] != data[start + i]) {
+                    equal = false;
+                    break;
+                }
+            }
+            if (equal) {
+                return keyCache[slot];
+            }
+        }
+        byte[] bytes = new byte[length];
+        System.arraycopy(data, start, bytes, 0, length);
+        String key = new String(bytes, Utils.UTF_8);
+        keyCacheBytes[slot] = bytes;
+        keyCache[slot] = key;
+        return key;
+    }
+
+    private int readStringLength(int token) throws IOException {
+        int length;
+        if (Utils.isFixedString(token)) {
+            length = token - TypeCode.EMBEDDED.STR_START;
+        } else if (Utils.isDigit(token)) {
+            length = readLength(token);
+        } else {
+            throw new IOException("Expected a string but found " + token);
+        }
+        if (position + length > limit) {
+            throw new EOFException();
+        }
+        return length;
+    }
+
+    private int readLength(int token) throws IOException {
+        int length = token - '0';
+        while ((token = readToken()) != TypeCode.LENGTH_DELIM) {
+            if (!Utils.isDigit(token)) {
+                throw new IOException("Invalid string length");
+            }
+            length = length * 10 + (token - '0');
+        }
+        return length;
+    }
+
+    public boolean readBoolean() throws IOException {
+        int token = readToken();
+        if (token == TypeCode.FALSE) {
+            return false;
+        } else if (token == TypeCode.TRUE) {
+            return true;
+        }
+        throw new IOException("Expected a boolean but found " + token);
+    }
+
+    /**
+     * Reads the next value as number, truncating any decimals. Null is read as 0.
+     */
+    public long readLong() throws IOException {
+        int token = readToken();
+        switch (token) {
+            case TypeCode.BYTE:
+                return readBytes(1);
+            case TypeCode.SHORT:
+                return readBytes(Utils.SHORT_BYTES);
+            case TypeCode.INT:
+                return readBytes(Utils.INTEGER_BYTES);
+            case TypeCode.LONG:
+                return readBytes(Utils.LONG_BYTES);
+            case TypeCode.FLOAT:
+                return (long) Float.intBitsToFloat((int) readBytes(Utils.INTEGER_BYTES));
+            case TypeCode.DOUBLE:
+                return (long) Double.longBitsToDouble(readBytes(Utils.LONG_BYTES));
+            case TypeCode.NUMBER:
+                return readNumber(token).longValue();
+            case TypeCode.NULL:
+                return 0;
+        }
+        return readFixedNumber(token);
+    }
+
+    public int readInt() throws IOException {
+        return (int) readLong();
+    }
+
+    /**
+     * Reads the next value as floating point number. Null is read as 0.
+     */
+    public double readDouble() throws IOException {
+        int token = peekToken();
+        if (token == TypeCode.FLOAT) {
+            position++;
+            return Float.intBitsToFloat((int) readBytes(Utils.INTEGER_BYTES));
+        } else if (token == TypeCode.DOUBLE) {
+            position++;
+            return Double.longBitsToDouble(readBytes(Utils.LONG_BYTES));
+        } else if (token == TypeCode.NUMBER) {
+            position++;
+            return readNumber(token).doubleValue();
+        }
+        return readLong();
+    }
+
+    public float readFloat() throws IOException {
+        return (float) readDouble();
+    }
+
+    private long readFixedNumber(int token) throws IOException {
+        if (Utils.isNegativeFixedNumber(token)) {
+            return TypeCode.EMBEDDED.INT_NEG_START - 1 - token;
+        } else if (Utils.isPositiveFixedNumber(token)) {
+            return TypeCode.EMBEDDED.INT_POS_START + token;
+        }
+        throw new IOException("Expected a number but found " + token);
+    }
+
+    /**
+     * Reads a big-endian signed number of the given byte count.
+     */
+    private long readBytes(int count) throws IOException {
+        if (position + count > limit) {
+            throw new EOFException();
+        }
+        long value = data[position++];
+        for (int i = 1; i < count; i++) {
+            value = (value << 8) | (data[position++] & 0xFF);
+        }
+        return value;
+    }
+
+    private Number readNumber(int token) throws IOException {
+        switch (token) {
+            case TypeCode.BYTE:
+                return (int) readBytes(1);
+            case TypeCode.SHORT:
+                return (int) readBytes(Utils.SHORT_BYTES);
+            case TypeCode.INT:
+                return (int) readBytes(Utils.INTEGER_BYTES);
+            case TypeCode.LONG:
+                return readBytes(Utils.LONG_BYTES);
+            case TypeCode.FLOAT:
+                return Float.intBitsToFloat((int) readBytes(Utils.INTEGER_BYTES));
+            case TypeCode.DOUBLE:
+                return Double.longBitsToDouble(readBytes(Utils.LONG_BYTES));
+            case TypeCode.NUMBER:
+                int start = position;
+                boolean decimal = false;
+                while (peekToken() != TypeCode.END) {
+                    if (data[position] == '.') {
+                        decimal = true;
+                    }
+                    position++;
+                }
+                String number;
+                try {
+                    number = new String(data, start, position - start, Utils.ISO_8859);
+                } catch (UnsupportedEncodingException e) {
+                    throw new IOException(e);
+                }
+                position++;
+                try {
+                    return decimal ? new BigDecimal(number) : new BigInteger(number);
+                } catch (NumberFormatException err) {
+                    throw new IOException("NumberFormatException", err);
+                }
+        }
+        return (int) readFixedNumber(token);
+    }
+
+}
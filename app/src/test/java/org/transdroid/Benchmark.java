@@ -0,0 +1,68 @@
+/*
+ * Copyright 2010-2024 Eric Kok et al.
+ *
+ * Transdroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Transdroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.transdroid;
+
+import org.junit.Assume;
+
+import java.util.Locale;
+import java.util.concurrent.Callable;
+
+/**
+ * Minimal micro-benchmark harness for the unit test source set, in the spirit of JMH: an operation is run for a number
+ * of warm-up iterations (to let the JIT compile it) and then timed over a number of measured iterations. Results are
+ * consumed so that the JIT cannot eliminate the measured work. Benchmarks are skipped unless requested, using
+ * {@code ./gradlew test -Pbenchmarks}, to keep the regular unit test runs fast.
+ */
+public final class Benchmark {
+
+    private static final String ENABLED_PROPERTY = "benchmarks";
+    private static volatile Object sink;
+
+    private Benchmark() {
+    }
+
+    /**
+     * Skips the calling test (or test class, if called from a {@code @BeforeClass} method) unless benchmarks were
+     * requested.
+     */
+    public static void assumeEnabled() {
+        Assume.assumeTrue("Benchmarks only run with -Pbenchmarks", Boolean.getBoolean(ENABLED_PROPERTY));
+    }
+
+    /**
+     * Runs and times an operation, printing the average time per operation.
+     *
+     * @param name       The name to report the result under
+     * @param warmups    The number of untimed iterations to run first
+     * @param iterations The number of timed iterations
+     * @param operation  The operation to time; its result is consumed
+     * @return The average time per operation in nanoseconds
+     */
+    public static double run(String name, int warmups, int iterations, Callable<?> operation) throws Exception {
+        for (int i = 0; i < warmups; i++) {
+            sink = operation.call();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink = operation.call();
+        }
+        double nanosPerOperation = (System.nanoTime() - start) / (double) iterations;
+        System.out.println(String.format(Locale.US, "%s: %.1f us/op", name, nanosPerOperation / 1000));
+        return nanosPerOperation;
+    }
+
+}
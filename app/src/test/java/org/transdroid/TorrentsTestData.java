@@ -0,0 +1,72 @@
+/*
+ * Copyright 2010-2024 Eric Kok et al.
+ *
+ * Transdroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Transdroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.transdroid;
+
+import org.transdroid.daemon.Daemon;
+import org.transdroid.daemon.Torrent;
+import org.transdroid.daemon.TorrentStatus;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Random;
+
+/**
+ * Builds (reproducible) lists of torrents to test and benchmark with.
+ */
+public final class TorrentsTestData {
+
+    private static final TorrentStatus[] STATUSES = {TorrentStatus.Downloading, TorrentStatus.Seeding,
+            TorrentStatus.Paused, TorrentStatus.Queued, TorrentStatus.Error};
+
+    private TorrentsTestData() {
+    }
+
+    /**
+     * Creates a list of torrents with varying names, states, sizes and rates.
+     *
+     * @param count The number of torrents to create
+     * @param seed  The seed for the random values, such that the same list can be created again
+     */
+    public static ArrayList<Torrent> create(int count, long seed) {
+        Random random = new Random(seed);
+        ArrayList<Torrent> torrents = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long size = 1 + random.nextInt(Integer.MAX_VALUE);
+            float done = random.nextFloat();
+            torrents.add(new Torrent(i, String.format("%040x", i), "Torrent " + random.nextInt(count),
+                    STATUSES[random.nextInt(STATUSES.length)], "/downloads/", random.nextInt(1000000),
+                    random.nextInt(1000000), random.nextInt(50), random.nextInt(500), random.nextInt(50),
+                    random.nextInt(500), random.nextInt(100000), (long) (size * done), random.nextInt(Integer.MAX_VALUE),
+                    size, done, 1f, random.nextBoolean() ? "label" + random.nextInt(10) : null,
+                    new Date(1000000000000L + random.nextInt(Integer.MAX_VALUE)), null, null, Daemon.Transmission));
+        }
+        return torrents;
+    }
+
+    /**
+     * Creates a copy of a torrent with new transfer rates, as a refresh from the server would.
+     */
+    public static Torrent withRates(Torrent torrent, int rateDownload, int rateUpload) {
+        return new Torrent(torrent.getId(), torrent.getUniqueID(), torrent.getName(), torrent.getStatusCode(),
+                torrent.getLocationDir(), rateDownload, rateUpload, torrent.getSeedersConnected(),
+                torrent.getSeedersKnown(), torrent.getLeechersConnected(), torrent.getLeechersKnown(), torrent.getEta(),
+                torrent.getDownloadedEver(), torrent.getUploadedEver(), torrent.getTotalSize(), torrent.getPartDone(),
+                torrent.getAvailability(), torrent.getLabelName(), torrent.getDateAdded(), torrent.getDateDone(),
+                torrent.getError(), torrent.getDaemon());
+    }
+
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2010-2024 Eric Kok et al.
+ *
+ * Transdroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Transdroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.transdroid.core.gui.lists;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.transdroid.Benchmark;
+import org.transdroid.TorrentsTestData;
+import org.transdroid.daemon.Torrent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * Times the diff of a refreshed list of 10,000 torrents against the shown list, as done on every auto-refresh.
+ */
+public class TorrentsDiffBenchmark {
+
+    private static final int TORRENTS = 10000;
+    private static final int WARMUPS = 50;
+    private static final int ITERATIONS = 200;
+
+    @BeforeClass
+    public static void assumeEnabled() {
+        Benchmark.assumeEnabled();
+    }
+
+    @Test
+    public void diffRefreshedList() throws Exception {
+        ArrayList<Torrent> shown = TorrentsTestData.create(TORRENTS, 1);
+        TorrentsDiff bound = TorrentsDiff.compute(new TorrentsDiff.BoundState[0], Collections.emptyMap(), shown);
+
+        // A refresh in which about a tenth of the torrents report new transfer rates
+        Random random = new Random(2);
+        ArrayList<Torrent> refreshed = new ArrayList<>(shown);
+        for (int i = 0; i < TORRENTS / 10; i++) {
+            int position = random.nextInt(TORRENTS);
+            refreshed.set(position, TorrentsTestData.withRates(shown.get(position), random.nextInt(), 0));
+        }
+
+        Benchmark.run("TorrentsDiff.compute (" + TORRENTS + " torrents)", WARMUPS, ITERATIONS,
+                () -> TorrentsDiff.compute(bound.getNewStates(), bound.getNewPositions(), refreshed));
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2010-2024 Eric Kok et al.
+ *
+ * Transdroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Transdroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.transdroid.core.gui.lists;
+
+import org.junit.Test;
+import org.transdroid.TorrentsTestData;
+import org.transdroid.daemon.Torrent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TorrentsDiffTest {
+
+    @Test
+    public void reportsNewListAsStructural() {
+        ArrayList<Torrent> torrents = TorrentsTestData.create(10, 1);
+        TorrentsDiff diff = TorrentsDiff.compute(new TorrentsDiff.BoundState[0], Collections.emptyMap(), torrents);
+        assertTrue(diff.isStructural());
+        assertEquals(torrents.size(), diff.getNewStates().length);
+    }
+
+    @Test
+    public void reportsChangedContentInPlace() {
+        ArrayList<Torrent> torrents = TorrentsTestData.create(10, 1);
+        TorrentsDiff first = bind(torrents);
+        ArrayList<Torrent> refreshed = new ArrayList<>(torrents);
+        refreshed.set(3, TorrentsTestData.withRates(torrents.get(3), 1, 2));
+
+        TorrentsDiff diff = TorrentsDiff.compute(first.getNewStates(), first.getNewPositions(), refreshed);
+        assertFalse(diff.isStructural());
+        assertTrue(diff.isChanged(3));
+        assertFalse(diff.isChanged(4));
+    }
+
+    @Test
+    public void reportsRefreshedRatesOfALargeListInPlace() {
+        ArrayList<Torrent> torrents = TorrentsTestData.create(1000, 1);
+        TorrentsDiff first = bind(torrents);
+
+        // A refresh in which about a tenth of the torrents report new transfer rates
+        Random random = new Random(2);
+        Set<Integer> changed = new HashSet<>();
+        ArrayList<Torrent> refreshed = new ArrayList<>(torrents);
+        for (int i = 0; i < torrents.size() / 10; i++) {
+            int position = random.nextInt(torrents.size());
+            refreshed.set(position, TorrentsTestData.withRates(torrents.get(position), -1 - i, 0));
+            changed.add(position);
+        }
+
+        TorrentsDiff diff = TorrentsDiff.compute(first.getNewStates(), first.getNewPositions(), refreshed);
+        assertFalse(diff.isStructural());
+        for (int position = 0; position < refreshed.size(); position++) {
+            assertEquals(changed.contains(position), diff.isChanged(position));
+        }
+    }
+
+    @Test
+    public void reportsTorrentsChangedInPlaceAfterBinding() {
+        // The same torrent instances are shown again, but one of them was updated in the mean time
+        ArrayList<Torrent> torrents = TorrentsTestData.create(10, 1);
+        TorrentsDiff first = bind(torrents);
+        torrents.get(5).mimicNewLabel("another label");
+
+        TorrentsDiff diff = TorrentsDiff.compute(first.getNewStates(), first.getNewPositions(), torrents);
+        assertFalse(diff.isStructural());
+        assertTrue(diff.isChanged(5));
+        assertFalse(diff.isChanged(6));
+    }
+
+    @Test
+    public void reportsMovedAndRemovedTorrentsAsStructural() {
+        ArrayList<Torrent> torrents = TorrentsTestData.create(10, 1);
+        TorrentsDiff first = bind(torrents);
+
+        ArrayList<Torrent> reversed = new ArrayList<>(torrents);
+        Collections.reverse(reversed);
+        assertTrue(TorrentsDiff.compute(first.getNewStates(), first.getNewPositions(), reversed).isStructural());
+
+        ArrayList<Torrent> removed = new ArrayList<>(torrents.subList(0, 9));
+        Map<String, Integer> positions = first.getNewPositions();
+        TorrentsDiff diff = TorrentsDiff.compute(first.getNewStates(), positions, removed);
+        assertTrue(diff.isStructural());
+        assertEquals(9, diff.getNewPositions().size());
+    }
+
+    private static TorrentsDiff bind(ArrayList<Torrent> torrents) {
+        return TorrentsDiff.compute(new TorrentsDiff.BoundState[0], Collections.emptyMap(), torrents);
+    }
+
+}
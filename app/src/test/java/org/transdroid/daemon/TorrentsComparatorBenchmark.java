@@ -0,0 +1,78 @@
+/*
+ * Copyright 2010-2024 Eric Kok et al.
+ *
+ * Transdroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Transdroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.transdroid.daemon;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.transdroid.Benchmark;
+import org.transdroid.TorrentsTestData;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Times sorting 5,000 torrents on their precomputed sort keys against sorting them with a comparator that computes its
+ * keys in every comparison, as TorrentsComparator did before.
+ */
+public class TorrentsComparatorBenchmark {
+
+    private static final int TORRENTS = 5000;
+    private static final int WARMUPS = 50;
+    private static final int ITERATIONS = 200;
+
+    @BeforeClass
+    public static void assumeEnabled() {
+        Benchmark.assumeEnabled();
+    }
+
+    private static final Comparator<String> alphanumComparator = new AlphanumComparator();
+    private static final Comparator<Torrent> byName =
+            (tor1, tor2) -> alphanumComparator.compare(tor1.getName().toLowerCase(), tor2.getName().toLowerCase());
+    private static final Comparator<Torrent> byPercent =
+            (tor1, tor2) -> Float.compare(tor1.getDownloadedPercentage(), tor2.getDownloadedPercentage());
+
+    @Test
+    public void sortByName() throws Exception {
+        compare(TorrentsSortBy.Alphanumeric, byName);
+    }
+
+    @Test
+    public void sortByPercent() throws Exception {
+        compare(TorrentsSortBy.Percent, byPercent);
+    }
+
+    private void compare(TorrentsSortBy sortBy, Comparator<Torrent> perComparison) throws Exception {
+        ArrayList<Torrent> torrents = TorrentsTestData.create(TORRENTS, 1);
+        Collections.shuffle(torrents, new Random(2));
+        TorrentsComparator comparator = new TorrentsComparator(Daemon.Transmission, sortBy, false);
+        Benchmark.run("Comparator by " + sortBy + " (" + TORRENTS + " torrents)", WARMUPS, ITERATIONS, () -> {
+            List<Torrent> sorted = new ArrayList<>(torrents);
+            sorted.sort(perComparison);
+            return sorted;
+        });
+        Benchmark.run("TorrentsComparator.sort by " + sortBy + " (" + TORRENTS + " torrents)", WARMUPS, ITERATIONS,
+                () -> {
+                    List<Torrent> sorted = new ArrayList<>(torrents);
+                    comparator.sort(sorted);
+                    return sorted;
+                });
+    }
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2010-2024 Eric Kok et al.
+ *
+ * Transdroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Transdroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.transdroid.daemon;
+
+import org.junit.Test;
+import org.transdroid.TorrentsTestData;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class TorrentsComparatorTest {
+
+    @Test
+    public void sortsInTheSameOrderAsComparing() {
+        ArrayList<Torrent> torrents = TorrentsTestData.create(1000, 1);
+        Collections.shuffle(torrents, new Random(2));
+        for (TorrentsSortBy sortBy : TorrentsSortBy.values()) {
+            for (boolean reversed : new boolean[]{false, true}) {
+                TorrentsComparator comparator = new TorrentsComparator(Daemon.Transmission, sortBy, reversed);
+                // Both sorts are stable, so they give exactly the same order
+                List<Torrent> expected = new ArrayList<>(torrents);
+                expected.sort(comparator);
+                List<Torrent> actual = new ArrayList<>(torrents);
+                comparator.sort(actual);
+                assertEquals(sortBy + (reversed ? " reversed" : ""), expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void sortsNamesLikeTheAlphanumComparator() {
+        ArrayList<Torrent> torrents = TorrentsTestData.create(1000, 1);
+        Collections.shuffle(torrents, new Random(2));
+        Comparator<String> alphanumComparator = new AlphanumComparator();
+        List<Torrent> expected = new ArrayList<>(torrents);
+        expected.sort((tor1, tor2) ->
+                alphanumComparator.compare(tor1.getName().toLowerCase(), tor2.getName().toLowerCase()));
+        List<Torrent> actual = new ArrayList<>(torrents);
+        new TorrentsComparator(Daemon.Transmission, TorrentsSortBy.Alphanumeric, false).sort(actual);
+        assertEquals(expected, actual);
+    }
+
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2010-2024 Eric Kok et al.
+ *
+ * Transdroid is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Transdroid is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Transdroid.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.transdroid.daemon.adapters.transmission;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.transdroid.core.gui.log.Log;
+import org.transdroid.daemon.Daemon;
+import org.transdroid.daemon.DaemonSettings;
+import org.transdroid.daemon.OS;
+import org.transdroid.daemon.Torrent;
+import org.transdroid.daemon.TorrentStatus;
+import org.transdroid.daemon.task.DaemonTask;
+import org.transdroid.daemon.task.DaemonTaskResult;
+import org.transdroid.daemon.task.GetStatsTask;
+import org.transdroid.daemon.task.GetStatsTaskSuccessResult;
+import org.transdroid.daemon.task.GetTorrentDetailsTask;
+import org.transdroid.daemon.task.GetTorrentDetailsTaskSuccessResult;
+import org.transdroid.daemon.task.RetrieveTask;
+import org.transdroid.daemon.util.HttpHelper;
+import org.transdroid.daemon.util.HttpTransport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Executes tasks from many threads at the same time on a single adapter, against a local server that (like
+ * Transmission) rejects requests without a valid session token with a 409 response.
+ */
+public class TransmissionAdapterTest {
+
+    private static final String SESSION_HEADER = "X-Transmission-Session-Id";
+    private static final int MAX_PER_ROUTE = 4;
+    private static final int THREADS = 8;
+    private static final int TASKS_PER_THREAD = 12;
+    private static final long RESPONSE_DELAY = 20;
+
+    private static final String SESSION_RESPONSE =
+            "{\"arguments\":{\"rpc-version\":17,\"alt-speed-enabled\":true,\"download-dir-free-space\":1024}," +
+                    "\"result\":\"success\"}";
+    private static final String DETAILS_RESPONSE =
+            "{\"arguments\":{\"torrents\":[{\"trackers\":[{\"announce\":\"http://tracker/announce\"}]," +
+                    "\"trackerStats\":[{\"lastAnnounceResult\":\"Success\"}]}]},\"result\":\"success\"}";
+    private static final String TORRENTS_RESPONSE = "{\"arguments\":{\"torrents\":[]},\"result\":\"success\"}";
+
+    private final Log log = new Log() {
+        @Override
+        protected void log(String logName, int priority, String message) {
+            // Nothing is stored while testing
+        }
+    };
+    private final AtomicReference<String> sessionToken = new AtomicReference<>("token-1");
+    private final AtomicInteger accepted = new AtomicInteger();
+    private final AtomicInteger staleTokens = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private volatile int rotateTokenAfter = -1;
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+
+    @BeforeClass
+    public static void disableNagle() {
+        // Otherwise the server's small writes wait for delayed acknowledgements, which dwarfs the response delay
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    @Before
+    public void startServer() throws IOException {
+        // Pools are shared process-wide, so start with a fresh one that uses the configuration of this test
+        HttpTransport.configure(HttpTransport.DEFAULT_MAX_TOTAL_CONNECTIONS, MAX_PER_ROUTE,
+                HttpTransport.DEFAULT_IDLE_TIMEOUT);
+        HttpTransport.resetConnectionManagers();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/transmission/rpc", this::handle);
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+        HttpTransport.configure(HttpTransport.DEFAULT_MAX_TOTAL_CONNECTIONS, HttpHelper.MAX_CONNECTIONS_PER_ROUTE,
+                HttpTransport.DEFAULT_IDLE_TIMEOUT);
+        HttpTransport.resetConnectionManagers();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String request = readFully(exchange.getRequestBody());
+        String token = sessionToken.get();
+        String sent = exchange.getRequestHeaders().getFirst(SESSION_HEADER);
+        if (!token.equals(sent)) {
+            if (sent != null) {
+                staleTokens.incrementAndGet();
+            }
+            exchange.getResponseHeaders().add(SESSION_HEADER, token);
+            exchange.sendResponseHeaders(409, -1);
+            exchange.close();
+            return;
+        }
+        if (accepted.incrementAndGet() == rotateTokenAfter) {
+            // Transmission hands out a new token every now and then, for example after a restart
+            sessionToken.set("token-2");
+        }
+
+        int concurrent = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(concurrent, Math::max);
+        try {
+            Thread.sleep(RESPONSE_DELAY);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        String response = request.contains("session-get") ? SESSION_RESPONSE
+                : request.contains("trackerStats") ? DETAILS_RESPONSE : TORRENTS_RESPONSE;
+        byte[] body = response.getBytes("UTF-8");
+        // No longer counted as in flight before the client can see the response and reuse the connection
+        inFlight.decrementAndGet();
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @Test
+    public void concurrentTasksRenegotiateTheSessionToken() throws Exception {
+        rotateTokenAfter = THREADS * TASKS_PER_THREAD / 2;
+        TransmissionAdapter adapter = createAdapter();
+
+        List<DaemonTaskResult> results = runConcurrently(adapter, THREADS);
+
+        assertEquals(THREADS * TASKS_PER_THREAD, results.size());
+        for (DaemonTaskResult result : results) {
+            assertTrue(result.toString(), result.wasSuccessful());
+            if (result instanceof GetStatsTaskSuccessResult) {
+                assertTrue(((GetStatsTaskSuccessResult) result).isAlternativeModeEnabled());
+            } else if (result instanceof GetTorrentDetailsTaskSuccessResult) {
+                assertEquals(Collections.singletonList("http://tracker/announce"),
+                        ((GetTorrentDetailsTaskSuccessResult) result).getTorrentDetails().getTrackers());
+            }
+        }
+        // Requests that were sent with the old token were retried with the new one
+        assertTrue("Token was not renegotiated", staleTokens.get() > 0);
+        // Never more connections to the server than the route limit, however many threads use the adapter
+        assertTrue("Max in flight " + maxInFlight.get(), maxInFlight.get() <= MAX_PER_ROUTE);
+        assertTrue("Requests were not executed concurrently", maxInFlight.get() > 1);
+    }
+
+    @Test
+    public void concurrentTasksFinishFasterThanSerialOnes() throws Exception {
+        long serialStart = System.nanoTime();
+        List<DaemonTaskResult> serial = runConcurrently(createAdapter(), 1);
+        long serialTime = System.nanoTime() - serialStart;
+
+        long concurrentStart = System.nanoTime();
+        List<DaemonTaskResult> concurrent = runConcurrently(createAdapter(), THREADS);
+        long concurrentTime = System.nanoTime() - concurrentStart;
+
+        for (DaemonTaskResult result : serial) {
+            assertTrue(result.toString(), result.wasSuccessful());
+        }
+        for (DaemonTaskResult result : concurrent) {
+            assertTrue(result.toString(), result.wasSuccessful());
+        }
+        // Retrievals are still serialized by the adapter, but other tasks are not
+        assertTrue("Serial " + TimeUnit.NANOSECONDS.toMillis(serialTime) + " ms, concurrent " +
+                        TimeUnit.NANOSECONDS.toMillis(concurrentTime) + " ms",
+                concurrentTime * 2 < serialTime);
+    }
+
+    /**
+     * Executes a mix of retrieve, details and statistics tasks on the given number of threads, where every thread
+     * executes the same tasks.
+     */
+    private List<DaemonTaskResult> runConcurrently(TransmissionAdapter adapter, int threadCount)
+            throws InterruptedException {
+        List<DaemonTaskResult> results = Collections.synchronizedList(new ArrayList<>());
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService threads = Executors.newFixedThreadPool(threadCount);
+        int tasksPerThread = TASKS_PER_THREAD * THREADS / threadCount;
+        for (int t = 0; t < threadCount; t++) {
+            threads.execute(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < tasksPerThread; i++) {
+                        results.add(adapter.executeTask(log, createTask(adapter, i)));
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            });
+        }
+        start.countDown();
+        threads.shutdown();
+        assertTrue("Tasks did not complete in time", threads.awaitTermination(60, TimeUnit.SECONDS));
+        assertTrue("Tasks failed: " + errors, errors.isEmpty());
+        return results;
+    }
+
+    private DaemonTask createTask(TransmissionAdapter adapter, int index) {
+        switch (index % 3) {
+            case 0:
+                return RetrieveTask.create(adapter);
+            case 1:
+                Torrent torrent = new Torrent(index, Integer.toString(index), "Torrent " + index,
+                        TorrentStatus.Downloading, "/downloads/", 0, 0, 0, 0, 0, 0, -1, 0, 0, 1024, 0f, 1f, null,
+                        new Date(), null, null, Daemon.Transmission);
+                return GetTorrentDetailsTask.create(adapter, torrent);
+            default:
+                return GetStatsTask.create(adapter);
+        }
+    }
+
+    private TransmissionAdapter createAdapter() {
+        InetSocketAddress address = server.getAddress();
+        return new TransmissionAdapter(new DaemonSettings("Test", Daemon.Transmission, address.getHostString(),
+                address.getPort(), false, false, null, null, false, null, null, null, null, OS.Linux, "/downloads/",
+                null, null, 10, false, false, "0", false));
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toString("UTF-8");
+    }
+
+}